@@ -0,0 +1,150 @@
+package io.jitstatic;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Measures anonymous reads of one open key. Each client thread issues requests back to back for the given duration and records the
+ * latency of every request, the result is requests per second and the 99th percentile.
+ */
+public class ReadBenchmarkRunner {
+    private static final Logger LOG = LoggerFactory.getLogger(ReadBenchmarkRunner.class);
+    private static final String KEY = "benchmark";
+    private static final byte[] DATA = "{\"data\":[\"one\",\"two\",\"three\"]}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] METADATA = "{\"users\":[],\"contentType\":\"application/json\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final DropwizardProcess process;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    public ReadBenchmarkRunner(DropwizardProcess process) {
+        this.process = process;
+    }
+
+    public void initRepo() throws GitAPIException, IOException {
+        File workingFolder = process.getFolderFile();
+        UsernamePasswordCredentialsProvider provider = new UsernamePasswordCredentialsProvider(process.getUser(), process.getPassword());
+        try (Git git = Git.cloneRepository().setDirectory(workingFolder).setURI(process.getGitAddress()).setCredentialsProvider(provider).call()) {
+            Path path = workingFolder.toPath();
+            Files.write(path.resolve(KEY), DATA, CREATE_NEW);
+            Files.write(path.resolve(KEY + ".metadata"), METADATA, CREATE_NEW);
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("benchmark").call();
+            Status status = git.push().setCredentialsProvider(provider).call().iterator().next().getRemoteUpdate("refs/heads/master").getStatus();
+            assertEquals(Status.OK, status);
+        }
+    }
+
+    public Result run(String query, int threads, Duration duration) throws Exception {
+        URI uri = URI.create(String.format("http://localhost:%d/application/storage/%s%s", process.getLocalPort(), KEY, query));
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long end = System.nanoTime() + duration.toNanos();
+            List<Future<long[]>> jobs = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                jobs.add(pool.submit(() -> measure(request, end)));
+            }
+            List<long[]> latencies = new ArrayList<>(threads);
+            for (Future<long[]> job : jobs) {
+                latencies.add(job.get());
+            }
+            return Result.of(latencies, duration);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private long[] measure(HttpRequest request, long end) throws IOException, InterruptedException {
+        long[] latencies = new long[1024];
+        int cnt = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            HttpResponse<byte[]> response = client.send(request, BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Got " + response.statusCode() + " for " + request.uri());
+            }
+            if (cnt == latencies.length) {
+                latencies = Arrays.copyOf(latencies, cnt * 2);
+            }
+            latencies[cnt++] = System.nanoTime() - now;
+        }
+        return Arrays.copyOf(latencies, cnt);
+    }
+
+    public static class Result {
+        final long requests;
+        final double requestsPerSecond;
+        final long p99Micros;
+
+        private Result(long requests, double requestsPerSecond, long p99Micros) {
+            this.requests = requests;
+            this.requestsPerSecond = requestsPerSecond;
+            this.p99Micros = p99Micros;
+        }
+
+        static Result of(List<long[]> latencies, Duration duration) {
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            if (all.length == 0) {
+                return new Result(0, 0, 0);
+            }
+            long p99 = all[Math.min(all.length - 1, (int) Math.ceil(all.length * 0.99) - 1)];
+            return new Result(all.length, all.length / (duration.toMillis() / 1000d), TimeUnit.NANOSECONDS.toMicros(p99));
+        }
+
+        public void log(String name) {
+            LOG.info("{}: {} requests, {} req/s, p99 {} us", name, requests, String.format("%.0f", requestsPerSecond), p99Micros);
+        }
+
+        @Override
+        public String toString() {
+            return "Result [requests=" + requests + ", requestsPerSecond=" + requestsPerSecond + ", p99Micros=" + p99Micros + "]";
+        }
+    }
+}
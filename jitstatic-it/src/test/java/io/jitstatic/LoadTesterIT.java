@@ -50,7 +50,8 @@ public class LoadTesterIT {
 
     private TemporaryFolder tmpfolder;
     private DropwizardAppExtension<JitstaticConfiguration> DW = new DropwizardAppExtension<>(JitstaticApplication.class,
-            ResourceHelpers.resourceFilePath("simpleserver_silent.yaml"), ConfigOverride.config("hosted.basePath", getFolder()));
+            ResourceHelpers.resourceFilePath("simpleserver_silent.yaml"), ConfigOverride.config("hosted.basePath", getFolder()),
+            ConfigOverride.config("executors.virtualThreads", System.getProperty("jitstatic.virtualThreads", "false")));
 
     @ParameterizedTest
     @ArgumentsSource(WriteArgumentsProvider.class)
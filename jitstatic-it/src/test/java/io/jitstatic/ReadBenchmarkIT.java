@@ -0,0 +1,77 @@
+package io.jitstatic;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.dropwizard.testing.ConfigOverride;
+import io.dropwizard.testing.ResourceHelpers;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import io.jitstatic.test.TemporaryFolder;
+import io.jitstatic.test.TemporaryFolderExtension;
+
+/*
+ * Compares anonymous reads served by the AnonymousReadFilter against the same reads going through Jersey. Only one application can run
+ * per JVM, so the Jersey path is taken by naming the default ref explicitly, the filter passes on every request with a query string.
+ */
+@ExtendWith({ TemporaryFolderExtension.class, DropwizardExtensionsSupport.class })
+@Tag("slow")
+public class ReadBenchmarkIT {
+
+    private static final String JERSEY = "?ref=refs/heads/master";
+    private static final String FILTER = "";
+    private static final int THREADS = Integer.getInteger("jitstatic.benchmark.threads", 8);
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final Duration DURATION = Duration.ofSeconds(Integer.getInteger("jitstatic.benchmark.seconds", 20));
+
+    private TemporaryFolder tmpfolder;
+    private DropwizardAppExtension<JitstaticConfiguration> DW = new DropwizardAppExtension<>(JitstaticApplication.class,
+            ResourceHelpers.resourceFilePath("simpleserver_silent.yaml"), ConfigOverride.config("hosted.basePath", getFolder()),
+            ConfigOverride.config("storage.anonymousReadFilter", "true"));
+
+    @Test
+    public void testAnonymousReads() throws Exception {
+        ReadBenchmarkRunner runner = new ReadBenchmarkRunner(new DropwizardTestProcess(DW, tmpfolder));
+        runner.initRepo();
+        runner.run(JERSEY, THREADS, WARMUP);
+        runner.run(FILTER, THREADS, WARMUP);
+        runner.run(JERSEY, THREADS, DURATION).log("Jersey");
+        runner.run(FILTER, THREADS, DURATION).log("AnonymousReadFilter");
+    }
+
+    private Supplier<String> getFolder() {
+        return () -> {
+            try {
+                return tmpfolder.createTemporaryDirectory().toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
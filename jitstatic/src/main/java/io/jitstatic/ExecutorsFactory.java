@@ -0,0 +1,126 @@
+package io.jitstatic;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ExecutorService;
+
+import javax.validation.constraints.Min;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.jitstatic.storage.ExecutorFactory;
+import io.jitstatic.utils.VirtualThreadExecutor;
+import io.jitstatic.utils.VirtualThreads;
+
+/*
+ * Sizes the pools for each stage. Request parsing and response writing run on the Jetty threads configured under server. With virtualThreads on
+ * JDK 21 or later the API and key loader stages start a virtual thread per task instead and their thread counts are not used.
+ */
+public class ExecutorsFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorsFactory.class);
+
+    @JsonProperty
+    @Min(1)
+    private int apiThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    @JsonProperty
+    @Min(1)
+    private int keyLoaderThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    @JsonProperty
+    @Min(1)
+    private int packThreads = Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    private boolean virtualThreads = false;
+
+    public ExecutorFactory build(final MetricRegistry registry) {
+        final ExecutorFactory pools = (name, threads) -> new InstrumentedExecutorService(ExecutorFactory.DEFAULT.create(name, threads), registry, name);
+        if (!runsOnVirtualThreads()) {
+            return pools;
+        }
+        return new ExecutorFactory() {
+            @Override
+            public ExecutorService create(final String name, final int threads) {
+                return pools.create(name, threads);
+            }
+
+            @Override
+            public ExecutorService createBlocking(final String name, final int threads) {
+                return new InstrumentedExecutorService(VirtualThreads.newThreadPerTaskExecutor(name), registry, name);
+            }
+        };
+    }
+
+    /*
+     * With virtual threads each request gets its own virtual thread and the async stages of the request run on it without switching threads.
+     */
+    public ExecutorService buildApiExecutor(final MetricRegistry registry) {
+        final ExecutorService apiExecutor = build(registry).createBlocking("Api", getApiThreads());
+        return runsOnVirtualThreads() ? new VirtualThreadExecutor(apiExecutor) : apiExecutor;
+    }
+
+    public boolean runsOnVirtualThreads() {
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            LOG.warn("Virtual threads need JDK 21 or later, running on {}. Using thread pools", Runtime.version());
+            return false;
+        }
+        return virtualThreads;
+    }
+
+    public int getApiThreads() {
+        return apiThreads;
+    }
+
+    public void setApiThreads(final int apiThreads) {
+        this.apiThreads = apiThreads;
+    }
+
+    public int getKeyLoaderThreads() {
+        return keyLoaderThreads;
+    }
+
+    public void setKeyLoaderThreads(final int keyLoaderThreads) {
+        this.keyLoaderThreads = keyLoaderThreads;
+    }
+
+    public int getPackThreads() {
+        return packThreads;
+    }
+
+    public void setPackThreads(final int packThreads) {
+        this.packThreads = packThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+}
@@ -41,7 +41,6 @@ import io.jitstatic.hosted.HostedFactory;
 import io.jitstatic.hosted.LoginService;
 import io.jitstatic.source.Source;
 import io.jitstatic.storage.HashService;
-import io.jitstatic.storage.LocalRefLockService;
 import io.jitstatic.storage.RefLockService;
 import io.jitstatic.storage.Storage;
 
@@ -62,26 +61,29 @@ public class JitstaticApplication extends Application<JitstaticConfiguration> {
         try {
             SystemReader.setInstance(new OverridingSystemReader());
             final HostedFactory hostedFactory = config.getHostedFactory();
-            refLockService = new LocalRefLockService();
+            refLockService = config.buildRefLockService(env);
             source = config.build(env, GIT_REALM, refLockService.getRepoWriter());
             final String defaultBranch = hostedFactory.getBranch();
             final LoginService loginService = env.getApplicationContext().getBean(LoginService.class);
             final HashService hashService = env.getApplicationContext().getBean(HashService.class);
-            storage = config.getStorageFactory().build(source, env, JITSTATIC_KEYADMIN_REALM, hashService, hostedFactory.getUserName(), refLockService);
+            storage = config.getStorageFactory().build(source, env, JITSTATIC_KEYADMIN_REALM, hashService, hostedFactory.getUserName(), refLockService,
+                    hostedFactory.getThreshold());
             loginService.setUserStorage(storage);
             source.readAllRefs();
             env.lifecycle().manage(new ManagedObject<>(source));
             env.lifecycle().manage(new AutoCloseableLifeCycleManager<>(storage));
             env.lifecycle().manage(new AutoCloseableLifeCycleManager<>(refLockService));
 
+            config.buildApiExecutor(env);
             env.healthChecks().register("storagechecker", new HealthChecker(storage));
             env.healthChecks().register("sourcechecker", new HealthChecker(source));
             final KeyAdminAuthenticator authenticator = config.getKeyAdminAuthenticator(storage, hashService);
+            final int streamMaxInFlight = config.getStorageFactory().getStreamMaxInFlight();
             env.jersey().register(new KeyResource(storage, authenticator, config.getHostedFactory().getCors() != null, defaultBranch, env.getObjectMapper(),
-                    env.getValidator(), hashService));
+                    env.getValidator(), hashService, streamMaxInFlight));
             env.jersey().register(new JitstaticInfoResource());
             env.jersey().register(new MetaKeyResource(storage, authenticator, defaultBranch, hashService));
-            env.jersey().register(new BulkResource(storage, authenticator, defaultBranch, hashService));
+            env.jersey().register(new BulkResource(storage, authenticator, defaultBranch, hashService, env.getObjectMapper(), streamMaxInFlight));
             env.jersey().register(new UsersResource(storage, authenticator, loginService, defaultBranch, hashService));
         } catch (final RuntimeException e) {
             closeSilently(refLockService);
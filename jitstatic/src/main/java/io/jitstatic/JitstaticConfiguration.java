@@ -27,10 +27,14 @@ import java.util.concurrent.ExecutorService;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.dropwizard.Configuration;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 import io.jitstatic.auth.KeyAdminAuthenticator;
 import io.jitstatic.auth.KeyAdminAuthenticatorImpl;
 import io.jitstatic.auth.User;
@@ -39,11 +43,14 @@ import io.jitstatic.hosted.HostedFactory;
 import io.jitstatic.reporting.ReportingFactory;
 import io.jitstatic.source.Source;
 import io.jitstatic.storage.HashService;
+import io.jitstatic.storage.RefLockService;
 import io.jitstatic.storage.Storage;
 import io.jitstatic.storage.StorageFactory;
 
 public class JitstaticConfiguration extends Configuration {
 
+    @Valid
+    @JsonProperty
     private StorageFactory storage = new StorageFactory();
 
     @Valid
@@ -55,6 +62,19 @@ public class JitstaticConfiguration extends Configuration {
     @JsonProperty
     private ReportingFactory reporting = new ReportingFactory();
 
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ExecutorsFactory executors = new ExecutorsFactory();
+
+    public ExecutorsFactory getExecutorsFactory() {
+        return executors;
+    }
+
+    public void setExecutorsFactory(final ExecutorsFactory executors) {
+        this.executors = executors;
+    }
+
     public ReportingFactory getReportingFactory() {
         return reporting;
     }
@@ -83,7 +103,31 @@ public class JitstaticConfiguration extends Configuration {
         Objects.requireNonNull(repoWriter);
         final HostedFactory hostedFactory = getHostedFactory();
         getReportingFactory().build(Objects.requireNonNull(env));
-        return hostedFactory.build(env, Objects.requireNonNull(gitRealm), repoWriter);
+        final ExecutorsFactory executorsFactory = getExecutorsFactory();
+        final ExecutorService packExecutor = manage(env, "UploadPack", executorsFactory.build(env.metrics()).create("UploadPack", executorsFactory
+                .getPackThreads()));
+        return hostedFactory.build(env, Objects.requireNonNull(gitRealm), repoWriter, packExecutor, executorsFactory.getPackThreads());
+    }
+
+    public RefLockService buildRefLockService(final Environment env) {
+        final ExecutorsFactory executorsFactory = getExecutorsFactory();
+        return getStorageFactory().buildRefLockService(executorsFactory.build(env.metrics()), executorsFactory.getKeyLoaderThreads());
+    }
+
+    public ExecutorService buildApiExecutor(final Environment env) {
+        final ExecutorService apiExecutor = manage(env, "Api", getExecutorsFactory().buildApiExecutor(env.metrics()));
+        env.jersey().register(new AbstractBinder() {
+            @Override
+            protected void configure() {
+                bind(apiExecutor).to(ExecutorService.class).ranked(1);
+            }
+        });
+        return apiExecutor;
+    }
+
+    private static ExecutorService manage(final Environment env, final String name, final ExecutorService executor) {
+        env.lifecycle().manage(new ExecutorServiceManager(executor, Duration.seconds(10), name));
+        return executor;
     }
 
     public KeyAdminAuthenticator getKeyAdminAuthenticator(final Storage storage, HashService hashService) {
@@ -21,14 +21,22 @@ package io.jitstatic.api;
  */
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
@@ -50,11 +58,14 @@ import io.jitstatic.storage.HashService;
 import io.jitstatic.storage.KeyAlreadyExist;
 import io.jitstatic.storage.Storage;
 import io.jitstatic.utils.VersionIsNotSame;
+import io.jitstatic.utils.VirtualThreadExecutor;
 import io.jitstatic.utils.WrappingAPIException;
 
 class APIHelper {
 
     private static final String UNHANDLED_ERROR = "Unhandled error";
+    private static final String WEAK = "W/";
+    private static final String GZIP_TAG = "-gzip";
     private final Logger log;
 
     public APIHelper(final Logger log) {
@@ -196,19 +207,156 @@ class APIHelper {
 
     static Response checkETag(final HttpHeaders headers,
             final EntityTag tag) {
+        return checkETag(headers, tag, () -> 0);
+    }
+
+    /*
+     * A matching If-Match is still answered with 304, as it always has been, for the clients relying on it. Otherwise the standard
+     * If-None-Match and If-Modified-Since are checked.
+     */
+    static Response checkETag(final HttpHeaders headers,
+            final EntityTag tag,
+            final LongSupplier lastModified) {
         final List<String> requestHeaders = headers.getRequestHeader(HttpHeaders.IF_MATCH);
-        if (requestHeaders == null) {
-            return null;
+        if (requestHeaders != null) {
+            if (requestHeaders.size() > 1) {
+                throw new WebApplicationException(Status.BAD_REQUEST);
+            }
+            for (final String header : requestHeaders) {
+                if (header.equals("\"" + tag.getValue() + "\"")) {
+                    return Response.notModified().tag(tag).build();
+                }
+            }
         }
-        if (requestHeaders.size() > 1) {
-            throw new WebApplicationException(Status.BAD_REQUEST);
+        if (isNotModified(headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH), headers.getHeaderString(HttpHeaders.IF_MODIFIED_SINCE), tag
+                .getValue(), lastModified)) {
+            return Response.notModified().tag(tag).build();
         }
-        for (final String header : requestHeaders) {
-            if (header.equals("\"" + tag.getValue() + "\"")) {
-                return Response.notModified().tag(tag).build();
+        return null;
+    }
+
+    /*
+     * If-Modified-Since is only used when there's no If-None-Match. Tags are compared weakly, a W/ prefix is ignored. The last modified time
+     * is only asked for when it's compared.
+     */
+    static boolean isNotModified(@Nullable final List<String> ifNoneMatch,
+            @Nullable final String ifModifiedSince,
+            final String tag,
+            final LongSupplier lastModified) {
+        if (ifNoneMatch != null && !ifNoneMatch.isEmpty()) {
+            for (final String header : ifNoneMatch) {
+                for (final String value : header.split(",")) {
+                    final String candidate = value.trim();
+                    if ("*".equals(candidate) || matchesTag(candidate.startsWith(WEAK) ? candidate.substring(WEAK.length()) : candidate, tag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince != null) {
+            final long since = parseHttpDate(ifModifiedSince);
+            if (since >= 0) {
+                final long modified = lastModified.getAsLong();
+                return modified > 0 && modified / 1000 <= since / 1000;
             }
         }
-        return null;
+        return false;
+    }
+
+    /*
+     * A Range is only applied when If-Range is missing, or names the identity content by its strong tag or its exact Last-Modified. Ranges are
+     * cut from the identity content, so the gzip variant's tag must not match or a client resuming a gzip download would get identity bytes.
+     */
+    static boolean isRangeFresh(@Nullable final String ifRange,
+            final String version,
+            final LongSupplier lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        final String candidate = ifRange.trim();
+        if (candidate.startsWith(WEAK)) {
+            return false;
+        }
+        if (candidate.startsWith("\"")) {
+            return candidate.equals("\"" + version + "\"");
+        }
+        final long date = parseHttpDate(candidate);
+        if (date < 0) {
+            return false;
+        }
+        final long modified = lastModified.getAsLong();
+        return modified > 0 && modified / 1000 == date / 1000;
+    }
+
+    /*
+     * The gzip variant of a key is a representation of its own and gets a strong tag of its own, as RFC 7232 requires.
+     */
+    static String contentTag(final String version, final boolean gzip) {
+        return gzip ? version + GZIP_TAG : version;
+    }
+
+    /*
+     * Whether a quoted tag from a request names the same version as the tag, for either content coding. Only for If-None-Match, where a
+     * client that has either variant doesn't need the body again.
+     */
+    static boolean matchesTag(final String quoted, final String tag) {
+        return quoted.length() > 1 && quoted.startsWith("\"") && quoted.endsWith("\"")
+                && withoutCoding(quoted.substring(1, quoted.length() - 1)).equals(withoutCoding(tag));
+    }
+
+    private static String withoutCoding(final String tag) {
+        return tag.endsWith(GZIP_TAG) ? tag.substring(0, tag.length() - GZIP_TAG.length()) : tag;
+    }
+
+    private static long parseHttpDate(final String date) {
+        try {
+            return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /*
+     * Whether the Accept-Encoding allows the given coding, either by name or by *, with a q above 0.
+     */
+    static boolean acceptsEncoding(@Nullable final String acceptEncoding,
+            final String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean accepted = false;
+        for (final String part : acceptEncoding.split(",")) {
+            final String[] params = part.split(";");
+            final String name = params[0].trim();
+            final boolean named = name.equalsIgnoreCase(coding);
+            if (named || "*".equals(name)) {
+                final boolean allowed = qualityOf(params) > 0;
+                if (named) {
+                    return allowed;
+                }
+                accepted = allowed;
+            }
+        }
+        return accepted;
+    }
+
+    private static double qualityOf(final String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            final String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    static String formatHttpDate(final long epochMillis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC));
     }
 
     static WebApplicationException createAuthenticationChallenge(final String realm) {
@@ -224,6 +372,25 @@ class APIHelper {
                 .thenApply(storeInfo -> storeInfo.orElseThrow(() -> new WebApplicationException(key, Status.NOT_FOUND)));
     }
 
+    StoreInfo getExistingKey(final String key,
+            final String ref,
+            final Storage storage) {
+        Optional<StoreInfo> storeInfo;
+        try {
+            storeInfo = storage.getKeySync(key, ref);
+        } catch (final RuntimeException e) {
+            storeInfo = this.<Optional<StoreInfo>>keyExceptionHandler(Optional::empty).apply(e);
+        }
+        return storeInfo.orElseThrow(() -> new WebApplicationException(key, Status.NOT_FOUND));
+    }
+
+    /*
+     * On virtual threads a request is handled as plain blocking code on its own virtual thread instead of as a chain of async stages.
+     */
+    static boolean runsOnVirtualThreads(final Executor executor) {
+        return executor instanceof VirtualThreadExecutor;
+    }
+
     static String setToDefaultRefIfNull(final String ref,
             final String defaultRef) {
         return ref == null ? defaultRef : ref;
@@ -0,0 +1,167 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.jitstatic.HeaderPair;
+import io.jitstatic.MetaData;
+import io.jitstatic.Role;
+import io.jitstatic.auth.User;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.GzipObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.storage.Storage;
+
+/*
+ * Answers anonymous reads of open keys already in the cache before they reach Jersey, with the same headers and ETag handling as
+ * KeyResource. Everything else, misses, protected keys, other refs, lists, CORS requests, range requests and requests with credentials, goes on
+ * to Jersey.
+ */
+public class AnonymousReadFilter implements Filter {
+
+    private static final String UTF_8 = "utf-8";
+    private static final String ORIGIN = "Origin";
+    private static final String RANGE = "Range";
+    private final Storage storage;
+    private final String defaultRef;
+    private final String basePath;
+    private final Timer timer;
+
+    public AnonymousReadFilter(final Storage storage, final String defaultRef, final String basePath, final MetricRegistry registry) {
+        this.storage = Objects.requireNonNull(storage);
+        this.defaultRef = Objects.requireNonNull(defaultRef);
+        this.basePath = Objects.requireNonNull(basePath);
+        this.timer = registry.timer(MetricRegistry.name(AnonymousReadFilter.class, "get_storage_time"));
+    }
+
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+        // NOOP
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+        final HttpServletRequest httpRequest = (HttpServletRequest) request;
+        final StoreInfo storeInfo = findOpenKey(httpRequest);
+        if (storeInfo == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        try (Timer.Context ignored = timer.time()) {
+            write(storeInfo, httpRequest, (HttpServletResponse) response);
+        }
+    }
+
+    private StoreInfo findOpenKey(final HttpServletRequest request) {
+        if (!HttpMethod.GET.equals(request.getMethod()) || request.getQueryString() != null || request.getHeader(HttpHeaders.AUTHORIZATION) != null
+                || request.getHeader(ORIGIN) != null || request.getHeader(RANGE) != null) {
+            return null;
+        }
+        final String path = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        if (!path.startsWith(basePath) || path.length() == basePath.length() || path.endsWith("/")) {
+            return null;
+        }
+        final StoreInfo storeInfo = storage.peekKey(path.substring(basePath.length()), defaultRef);
+        return storeInfo != null && isOpen(storeInfo.getMetaData()) ? storeInfo : null;
+    }
+
+    private static boolean isOpen(final MetaData metaData) {
+        final Set<User> users = metaData.getUsers();
+        final Set<Role> roles = metaData.getRead();
+        return users.isEmpty() && (roles == null || roles.isEmpty());
+    }
+
+    private static void write(final StoreInfo storeInfo, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final ObjectStreamProvider gzip = storeInfo.getStreamProvider().getEncoded(GzipObjectStreamProvider.GZIP);
+        final boolean sendGzip = gzip != null && APIHelper.acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), GzipObjectStreamProvider.GZIP);
+        final String tag = "\"" + APIHelper.contentTag(storeInfo.getVersion(), sendGzip) + "\"";
+        final Enumeration<String> ifMatch = request.getHeaders(HttpHeaders.IF_MATCH);
+        if (ifMatch != null && ifMatch.hasMoreElements()) {
+            final String header = ifMatch.nextElement();
+            if (ifMatch.hasMoreElements()) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            if (header.equals(tag)) {
+                notModified(response, tag);
+                return;
+            }
+        }
+        final Enumeration<String> ifNoneMatch = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        if (APIHelper.isNotModified(ifNoneMatch == null ? null : Collections.list(ifNoneMatch), request.getHeader(HttpHeaders.IF_MODIFIED_SINCE),
+                storeInfo.getVersion(), storeInfo::getLastModified)) {
+            notModified(response, tag);
+            return;
+        }
+        final MetaData metaData = storeInfo.getMetaData();
+        final ObjectStreamProvider content = sendGzip ? gzip : storeInfo.getStreamProvider();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(metaData.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, sendGzip ? GzipObjectStreamProvider.GZIP : UTF_8);
+        if (gzip != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        response.setHeader(HttpHeaders.ETAG, tag);
+        response.setHeader("Accept-Ranges", "bytes");
+        final long lastModified = storeInfo.peekLastModified();
+        if (lastModified > 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        final List<HeaderPair> headers = metaData.getHeaders();
+        if (headers != null) {
+            for (HeaderPair headerPair : headers) {
+                response.addHeader(headerPair.getHeader(), headerPair.getValue());
+            }
+        }
+        response.setContentLengthLong(content.getSize());
+        content.writeTo(response.getOutputStream());
+    }
+
+    private static void notModified(final HttpServletResponse response, final String tag) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        response.setHeader(HttpHeaders.ETAG, tag);
+    }
+
+    @Override
+    public void destroy() {
+        // NOOP
+    }
+}
@@ -23,7 +23,6 @@ package io.jitstatic.api;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
@@ -40,6 +39,7 @@ import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.hibernate.validator.constraints.NotEmpty;
 import org.slf4j.Logger;
@@ -48,10 +48,10 @@ import org.slf4j.LoggerFactory;
 import com.codahale.metrics.annotation.ExceptionMetered;
 import com.codahale.metrics.annotation.Metered;
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.dropwizard.auth.Auth;
-import io.jitstatic.MetaData;
-import io.jitstatic.Role;
+import io.dropwizard.jackson.Jackson;
 import io.jitstatic.auth.KeyAdminAuthenticator;
 import io.jitstatic.auth.User;
 import io.jitstatic.storage.HashService;
@@ -66,14 +66,23 @@ public class BulkResource {
     private final Storage storage;
     private final KeyAdminAuthenticator addKeyAuthenticator;
     private final HashService hashService;
+    private final ObjectMapper mapper;
+    private final int streamMaxInFlight;
     @Inject
     private ExecutorService executor;
 
     public BulkResource(final Storage storage, KeyAdminAuthenticator adminKeyAuthenticator, String defaultBranch, HashService hashService) {
+        this(storage, adminKeyAuthenticator, defaultBranch, hashService, Jackson.newObjectMapper(), NdJsonWriter.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public BulkResource(final Storage storage, KeyAdminAuthenticator adminKeyAuthenticator, String defaultBranch, HashService hashService,
+            final ObjectMapper mapper, final int streamMaxInFlight) {
         this.storage = Objects.requireNonNull(storage);
         this.addKeyAuthenticator = Objects.requireNonNull(adminKeyAuthenticator);
         this.defaultRef = Objects.requireNonNull(defaultBranch);
         this.hashService = Objects.requireNonNull(hashService);
+        this.mapper = Objects.requireNonNull(mapper);
+        this.streamMaxInFlight = streamMaxInFlight;
     }
 
     @POST
@@ -86,6 +95,7 @@ public class BulkResource {
     public void fetch(@Suspended AsyncResponse asyncResponse,
             final @NotNull @NotEmpty @Valid List<BulkSearch> searches,
             final @Auth Optional<User> userHolder) {
+        final ReadAccess readAccess = new ReadAccess(storage, hashService, addKeyAuthenticator, userHolder);
         CompletableFuture.supplyAsync(() -> searches.stream()
                 .filter(bs -> APIHelper.isRef(bs.getRef()))
                 .map(bs -> Pair.of(bs.getPaths().stream()
@@ -97,27 +107,48 @@ public class BulkResource {
                         .map(p -> p.getKey().stream()
                                 .filter(data -> {
                                     final String ref = APIHelper.setToDefaultRefIfNull(p.getRight(), defaultRef);
-                                    final MetaData storageData = data.getRight().getMetaData();
-                                    final Set<User> allowedUsers = storageData.getUsers();
-                                    final Set<Role> keyRoles = storageData.getRead();
-                                    if (allowedUsers.isEmpty() && (keyRoles == null || keyRoles.isEmpty())) {
+                                    if (readAccess.isAllowed(data.getRight().getMetaData(), ref)) {
                                         LOG.info("{} logged in and accessed key {} in {}", userHolder.orElse(new User("anonymous", null)), data.getLeft(), ref);
                                         return true;
                                     }
-                                    if (!userHolder.isPresent()) {
-                                        return false;
-                                    }
-                                    final User user = userHolder.get();
-                                    if (allowedUsers.contains(user) || APIHelper.isKeyUserAllowed(storage, hashService, user, ref, keyRoles)
-                                            || addKeyAuthenticator.authenticate(user, ref)) {
-                                        LOG.info("{} logged in and accessed key {} in {}", user, p.getLeft().stream()
-                                                .map(Pair::getLeft)
-                                                .collect(Collectors.toList()), ref);
-                                        return true;
-                                    }
                                     return false;
                                 }).map(ps -> new SearchResult(ps, p.getRight())))
                         .flatMap(Function.identity()).collect(Collectors.toList()))
                 .thenApplyAsync(result -> Response.ok(new SearchResultWrapper(result)).build()).thenAcceptAsync(asyncResponse::resume, executor);
     }
+
+    /*
+     * The same search as newline delimited JSON, one result per line written as soon as its key has loaded. The searches are run one after
+     * the other, the keys within each of them concurrently.
+     */
+    @POST
+    @Path("fetch")
+    @Timed(name = "stream_fetch_storage_time")
+    @Metered(name = "stream_fetch_storage_counter")
+    @ExceptionMetered(name = "stream_fetch_storage_exception")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces(NdJsonWriter.APPLICATION_NDJSON_QS)
+    public Response streamFetch(final @NotNull @NotEmpty @Valid List<BulkSearch> searches,
+            final @Auth Optional<User> userHolder) {
+        final ReadAccess readAccess = new ReadAccess(storage, hashService, addKeyAuthenticator, userHolder);
+        final StreamingOutput so = output -> {
+            try (NdJsonWriter writer = new NdJsonWriter(mapper, output)) {
+                for (final BulkSearch search : searches) {
+                    if (!APIHelper.isRef(search.getRef())) {
+                        continue;
+                    }
+                    final String ref = APIHelper.setToDefaultRefIfNull(search.getRef(), defaultRef);
+                    storage.streamListForRef(search.getPaths().stream()
+                            .map(sp -> Pair.of(sp.getPath(), sp.isRecursively()))
+                            .collect(Collectors.toList()), search.getRef(), streamMaxInFlight, data -> {
+                                if (readAccess.isAllowed(data.getRight().getMetaData(), ref)) {
+                                    LOG.info("{} logged in and accessed key {} in {}", userHolder.orElse(new User("anonymous", null)), data.getLeft(), ref);
+                                    writer.write(new SearchResult(data, search.getRef()));
+                                }
+                            });
+                }
+            }
+        };
+        return Response.ok(so, NdJsonWriter.APPLICATION_NDJSON).build();
+    }
 }
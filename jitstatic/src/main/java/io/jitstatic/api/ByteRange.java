@@ -0,0 +1,104 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/*
+ * One byte range of a Range header, resolved against the size of the content. End is inclusive.
+ */
+final class ByteRange {
+
+    static final int MAX_RANGES = 16;
+    private static final String BYTES = "bytes=";
+    private final long start;
+    private final long end;
+
+    ByteRange(final long start, final long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /*
+     * The satisfiable ranges of the header, an empty list if none of them are. Null if the header should be ignored, because it's malformed,
+     * isn't in bytes or asks for too many ranges.
+     */
+    @Nullable
+    static List<ByteRange> parse(final String header, final long size) {
+        if (!header.regionMatches(true, 0, BYTES, 0, BYTES.length())) {
+            return null;
+        }
+        final String[] specs = header.substring(BYTES.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        final List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for (final String raw : specs) {
+            final String spec = raw.trim();
+            final int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                if (dash == 0) {
+                    final long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && size > 0) {
+                        ranges.add(new ByteRange(Math.max(0, size - suffix), size - 1));
+                    }
+                } else {
+                    final long first = Long.parseLong(spec.substring(0, dash));
+                    final long last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (first < 0 || last < first) {
+                        return null;
+                    }
+                    if (first < size) {
+                        ranges.add(new ByteRange(first, Math.min(last, size - 1)));
+                    }
+                }
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getLength() {
+        return end - start + 1;
+    }
+
+    String toContentRange(final long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    static String unsatisfied(final long size) {
+        return "bytes */" + size;
+    }
+}
@@ -28,8 +28,9 @@ import static io.jitstatic.JitStaticConstants.X_JITSTATIC_MESSAGE;
 import static io.jitstatic.JitStaticConstants.X_JITSTATIC_NAME;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -39,9 +40,11 @@ import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -75,6 +78,8 @@ import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,6 +99,8 @@ import io.jitstatic.Role;
 import io.jitstatic.auth.KeyAdminAuthenticator;
 import io.jitstatic.auth.User;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.GzipObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.storage.HashService;
 import io.jitstatic.storage.Storage;
 import io.jitstatic.utils.Pair;
@@ -109,6 +116,12 @@ public class KeyResource {
     private static final String LOGGED_IN_AND_ACCESSED_KEY = "{} logged in and accessed key {} in {}";
     private static final String RESOURCE_IS_DENIED_FOR_USER = "Resource {} in {} is denied for user {}";
     private static final String UTF_8 = "utf-8";
+    private static final String RANGE = "Range";
+    private static final String IF_RANGE = "If-Range";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String BYTES = "bytes";
+    private static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
     private static final Logger LOG = LoggerFactory.getLogger(KeyResource.class);
     private final String defaultRef;
     private final Storage storage;
@@ -118,12 +131,19 @@ public class KeyResource {
     private final ObjectMapper mapper;
     private final Validator validator;
     private final HashService hashService;
+    private final int streamMaxInFlight;
     @Inject
     private ExecutorService executor;
 
     public KeyResource(final Storage storage, final KeyAdminAuthenticator adminKeyAuthenticator, final boolean cors,
             final String defaultBranch, final ObjectMapper mapper, final Validator validator,
             final HashService hashService) {
+        this(storage, adminKeyAuthenticator, cors, defaultBranch, mapper, validator, hashService, NdJsonWriter.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public KeyResource(final Storage storage, final KeyAdminAuthenticator adminKeyAuthenticator, final boolean cors,
+            final String defaultBranch, final ObjectMapper mapper, final Validator validator,
+            final HashService hashService, final int streamMaxInFlight) {
         this.storage = Objects.requireNonNull(storage);
         this.addKeyAuthenticator = Objects.requireNonNull(adminKeyAuthenticator);
         this.helper = new APIHelper(LOG);
@@ -132,6 +152,7 @@ public class KeyResource {
         this.mapper = Objects.requireNonNull(mapper);
         this.validator = Objects.requireNonNull(validator);
         this.hashService = Objects.requireNonNull(hashService);
+        this.streamMaxInFlight = streamMaxInFlight;
     }
 
     @GET
@@ -147,31 +168,68 @@ public class KeyResource {
             final @Context HttpServletResponse response) {
         APIHelper.checkRef(askedRef);
         final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        final StoreInfo cached = storage.peekKey(key, ref);
+        if (cached != null) {
+            if (needsNoLookup(cached.getMetaData(), userHolder)) {
+                asyncResponse.resume(getKey(() -> cached, key, ref, userHolder, headers, response));
+            } else {
+                CompletableFuture.runAsync(() -> asyncResponse.resume(getKey(() -> cached, key, ref, userHolder, headers, response)), executor);
+            }
+            return;
+        }
+        if (APIHelper.runsOnVirtualThreads(executor)) {
+            CompletableFuture.runAsync(
+                    () -> asyncResponse.resume(getKey(() -> helper.getExistingKey(key, ref, storage), key, ref, userHolder, headers, response)), executor);
+            return;
+        }
         CompletableFuture.supplyAsync(() -> helper.checkIfKeyExist(key, ref, storage), executor)
                 .thenCompose(s -> s)
-                .thenApplyAsync(storeInfo -> {
-                    final EntityTag tag = new EntityTag(storeInfo.getVersion());
-                    final Response noChange = APIHelper.checkETag(headers, tag);
-                    final MetaData data = storeInfo.getMetaData();
-                    final Set<User> allowedUsers = data.getUsers();
-                    final Set<Role> roles = data.getRead();
-                    if (allowedUsers.isEmpty() && (roles == null || roles.isEmpty())) {
-                        if (noChange != null) {
-                            return noChange;
-                        }
-                        return buildResponse(storeInfo, tag, data, response);
-                    }
-                    final User user = userHolder.orElseThrow(() -> {
-                        LOG.info("Resource {} in {} needs a user", key, ref);
-                        return APIHelper.createAuthenticationChallenge(JITSTATIC_KEYUSER_REALM);
-                    });
-                    checkIfAllowed(key, user, allowedUsers, ref, storeInfo.getMetaData().getRead());
-                    if (noChange != null) {
-                        return noChange;
-                    }
-                    LOG.info(LOGGED_IN_AND_ACCESSED_KEY, user, key, ref);
-                    return buildResponse(storeInfo, tag, data, response);
-                }, executor).exceptionally(helper::execptionHandler).thenAcceptAsync(asyncResponse::resume, executor);
+                .thenApplyAsync(storeInfo -> keyResponse(storeInfo, key, ref, userHolder, headers, response), executor)
+                .exceptionally(helper::execptionHandler).thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    private Response getKey(final Supplier<StoreInfo> storeInfo, final String key, final String ref, final Optional<User> userHolder,
+            final HttpHeaders headers, final HttpServletResponse response) {
+        try {
+            return keyResponse(storeInfo.get(), key, ref, userHolder, headers, response);
+        } catch (final RuntimeException e) {
+            return helper.execptionHandler(e);
+        }
+    }
+
+    /*
+     * Open keys and keys naming the user can be checked without reading users or hashing passwords, so a cached hit is answered on the
+     * request thread.
+     */
+    private static boolean needsNoLookup(final MetaData data, final Optional<User> userHolder) {
+        final Set<User> allowedUsers = data.getUsers();
+        final Set<Role> roles = data.getRead();
+        return (allowedUsers.isEmpty() && (roles == null || roles.isEmpty())) || userHolder.map(allowedUsers::contains).orElse(false);
+    }
+
+    private Response keyResponse(final StoreInfo storeInfo, final String key, final String ref, final Optional<User> userHolder,
+            final HttpHeaders headers, final HttpServletResponse response) {
+        final EntityTag tag = new EntityTag(APIHelper.contentTag(storeInfo.getVersion(), sendsGzip(storeInfo, headers)));
+        final Response noChange = APIHelper.checkETag(headers, tag, storeInfo::getLastModified);
+        final MetaData data = storeInfo.getMetaData();
+        final Set<User> allowedUsers = data.getUsers();
+        final Set<Role> roles = data.getRead();
+        if (allowedUsers.isEmpty() && (roles == null || roles.isEmpty())) {
+            if (noChange != null) {
+                return noChange;
+            }
+            return buildResponse(storeInfo, tag, data, headers, response);
+        }
+        final User user = userHolder.orElseThrow(() -> {
+            LOG.info("Resource {} in {} needs a user", key, ref);
+            return APIHelper.createAuthenticationChallenge(JITSTATIC_KEYUSER_REALM);
+        });
+        checkIfAllowed(key, user, allowedUsers, ref, storeInfo.getMetaData().getRead());
+        if (noChange != null) {
+            return noChange;
+        }
+        LOG.info(LOGGED_IN_AND_ACCESSED_KEY, user, key, ref);
+        return buildResponse(storeInfo, tag, data, headers, response);
     }
 
     @GET
@@ -180,8 +238,9 @@ public class KeyResource {
             final @QueryParam("ref") String ref,
             @QueryParam("recursive") boolean recursive,
             @QueryParam("light") final boolean light,
-            final @Auth Optional<User> user) {
-        getList(asyncResponse, "/", ref, recursive, light, user);
+            final @Auth Optional<User> user,
+            final @Context HttpHeaders headers) {
+        getList(asyncResponse, "/", ref, recursive, light, user, headers);
     }
 
     @GET
@@ -195,38 +254,107 @@ public class KeyResource {
             final @QueryParam("ref") String askedRef,
             @QueryParam("recursive") boolean recursive,
             @QueryParam("light") final boolean light,
-            final @Auth Optional<User> userHolder) {
+            final @Auth Optional<User> userHolder,
+            final @Context HttpHeaders headers) {
         APIHelper.checkRef(askedRef);
         final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        final ReadAccess readAccess = new ReadAccess(storage, hashService, addKeyAuthenticator, userHolder);
+        if (APIHelper.runsOnVirtualThreads(executor)) {
+            CompletableFuture.runAsync(() -> asyncResponse.resume(getList(key, ref, recursive, light, userHolder, readAccess, headers)), executor);
+            return;
+        }
         storage.getListForRef(List.of(Pair.of(key, recursive)), ref)
-                .thenApplyAsync(list -> list.stream()
-                        .filter(data -> {
-                            final MetaData storageData = data.getRight().getMetaData();
-                            final Set<User> allowedUsers = storageData.getUsers();
-                            final Set<Role> keyRoles = storageData.getRead();
-                            if (allowedUsers.isEmpty() && (keyRoles == null || keyRoles.isEmpty())) {
-                                LOG.info(LOGGED_IN_AND_ACCESSED_KEY, userHolder.orElse(ANONYMOUS), data.getLeft(), ref);
-                                return true;
-                            }
-                            if (!userHolder.isPresent()) {
-                                return false;
-                            }
-                            final User user = userHolder.get();
-                            if (isUserAllowed(ref, user, allowedUsers, keyRoles)) {
-                                LOG.info(LOGGED_IN_AND_ACCESSED_KEY, user, data.getLeft(), ref);
-                                return true;
-                            }
-                            return false;
-                        }).collect(Collectors.toList()), executor)
-                .thenApplyAsync(list -> {
-                    if (list.isEmpty()) {
-                        return Response.status(Status.NOT_FOUND).build();
+                .thenApplyAsync(list -> listResponse(list, ref, light, userHolder, readAccess, headers), executor)
+                .exceptionally(helper::execptionHandler).thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    @GET
+    @Produces(NdJsonWriter.APPLICATION_NDJSON_QS)
+    public Response streamRootList(final @QueryParam("ref") String ref,
+            @QueryParam("recursive") boolean recursive,
+            @QueryParam("light") final boolean light,
+            final @Auth Optional<User> user) {
+        return streamList("/", ref, recursive, light, user);
+    }
+
+    /*
+     * The same list as newline delimited JSON, each key written as soon as it has loaded. There's no ETag, and nothing matching gives an empty
+     * body rather than a 404, since the status is sent before the keys are known.
+     */
+    @GET
+    @Timed(name = "stream_list_time")
+    @Metered(name = "stream_list_counter")
+    @ExceptionMetered(name = "stream_list_exception")
+    @Path("{key : .+/}")
+    @Produces(NdJsonWriter.APPLICATION_NDJSON_QS)
+    public Response streamList(final @PathParam("key") String key,
+            final @QueryParam("ref") String askedRef,
+            @QueryParam("recursive") boolean recursive,
+            @QueryParam("light") final boolean light,
+            final @Auth Optional<User> userHolder) {
+        APIHelper.checkRef(askedRef);
+        final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        final ReadAccess readAccess = new ReadAccess(storage, hashService, addKeyAuthenticator, userHolder);
+        final StreamingOutput so = output -> {
+            try (NdJsonWriter writer = new NdJsonWriter(mapper, output)) {
+                storage.streamListForRef(List.of(Pair.of(key, recursive)), ref, streamMaxInFlight, data -> {
+                    if (readAccess.isAllowed(data.getRight().getMetaData(), ref)) {
+                        LOG.info(LOGGED_IN_AND_ACCESSED_KEY, userHolder.orElse(ANONYMOUS), data.getLeft(), ref);
+                        writer.write(light ? new KeyData(data.getLeft(), data.getRight()) : new KeyData(data));
                     }
-                    return Response.ok(new KeyDataWrapper(list.stream()
-                            .map(p -> light ? new KeyData(p.getLeft(), p.getRight()) : new KeyData(p))
-                            .collect(Collectors.toList())))
-                            .build();
-                }, executor).exceptionally(helper::execptionHandler).thenAcceptAsync(asyncResponse::resume, executor);
+                });
+            }
+        };
+        return Response.ok(so, NdJsonWriter.APPLICATION_NDJSON).build();
+    }
+
+    private Response getList(final String key, final String ref, final boolean recursive, final boolean light, final Optional<User> userHolder,
+            final ReadAccess readAccess, final HttpHeaders headers) {
+        try {
+            return listResponse(storage.getListForRefSync(List.of(Pair.of(key, recursive)), ref), ref, light, userHolder, readAccess, headers);
+        } catch (final RuntimeException e) {
+            return helper.execptionHandler(e);
+        }
+    }
+
+    private Response listResponse(final List<Pair<String, StoreInfo>> keys, final String ref, final boolean light, final Optional<User> userHolder,
+            final ReadAccess readAccess, final HttpHeaders headers) {
+        final List<Pair<String, StoreInfo>> list = keys.stream()
+                .filter(data -> {
+                    if (readAccess.isAllowed(data.getRight().getMetaData(), ref)) {
+                        LOG.info(LOGGED_IN_AND_ACCESSED_KEY, userHolder.orElse(ANONYMOUS), data.getLeft(), ref);
+                        return true;
+                    }
+                    return false;
+                }).collect(Collectors.toList());
+        if (list.isEmpty()) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        final EntityTag tag = listTag(list, light);
+        final Response noChange = APIHelper.checkETag(headers, tag);
+        if (noChange != null) {
+            return noChange;
+        }
+        return Response.ok(new KeyDataWrapper(list.stream()
+                .map(p -> light ? new KeyData(p.getLeft(), p.getRight()) : new KeyData(p))
+                .collect(Collectors.toList())))
+                .tag(tag)
+                .build();
+    }
+
+    /*
+     * A list changes when any of its keys or their metadata do. The tag is weak since the body can be either JSON or XML.
+     */
+    private static EntityTag listTag(final List<Pair<String, StoreInfo>> list, final boolean light) {
+        final MessageDigest digest = Constants.newMessageDigest();
+        digest.update((byte) (light ? 1 : 0));
+        for (Pair<String, StoreInfo> p : list) {
+            digest.update(Constants.encode(p.getLeft()));
+            digest.update((byte) 0);
+            digest.update(Constants.encodeASCII(p.getRight().getVersion()));
+            digest.update(Constants.encodeASCII(p.getRight().getMetaDataVersion()));
+        }
+        return new EntityTag(ObjectId.fromRaw(digest.digest()).name(), true);
     }
 
     @PUT
@@ -415,20 +543,87 @@ public class KeyResource {
     private Response buildResponse(final StoreInfo storeInfo,
             final EntityTag tag,
             final MetaData data,
+            final HttpHeaders headers,
             final HttpServletResponse response) {
-        final StreamingOutput so = output -> {
-            try (InputStream is = storeInfo.getStreamProvider().getInputStream()) {
-                is.transferTo(output);
+        final ObjectStreamProvider gzip = storeInfo.getStreamProvider().getEncoded(GzipObjectStreamProvider.GZIP);
+        final String range = headers.getHeaderString(RANGE);
+        if (range != null && APIHelper.isRangeFresh(headers.getHeaderString(IF_RANGE), storeInfo.getVersion(), storeInfo::getLastModified)) {
+            final List<ByteRange> ranges = ByteRange.parse(range, storeInfo.getStreamProvider().getSize());
+            if (ranges != null) {
+                final ResponseBuilder responseBuilder = rangeResponse(storeInfo.getStreamProvider(), data, ranges)
+                        .tag(new EntityTag(storeInfo.getVersion()));
+                finishContentResponse(storeInfo, data, gzip, response, responseBuilder);
+                return responseBuilder.build();
             }
-        };
+        }
+        final boolean sendGzip = sendsGzip(storeInfo, headers);
+        final ObjectStreamProvider content = sendGzip ? gzip : storeInfo.getStreamProvider();
+        final StreamingOutput so = content::writeTo;
         final ResponseBuilder responseBuilder = Response.ok(so)
                 .header(HttpHeaders.CONTENT_TYPE, data.getContentType())
-                .header(HttpHeaders.CONTENT_ENCODING, UTF_8)
+                .header(HttpHeaders.CONTENT_ENCODING, sendGzip ? GzipObjectStreamProvider.GZIP : UTF_8)
                 .tag(tag);
-        extractResponseHeaders(data, response, responseBuilder);
+        finishContentResponse(storeInfo, data, gzip, response, responseBuilder);
         return responseBuilder.build();
     }
 
+    private static boolean sendsGzip(final StoreInfo storeInfo, final HttpHeaders headers) {
+        return storeInfo.getStreamProvider().getEncoded(GzipObjectStreamProvider.GZIP) != null
+                && APIHelper.acceptsEncoding(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING), GzipObjectStreamProvider.GZIP);
+    }
+
+    private void finishContentResponse(final StoreInfo storeInfo,
+            final MetaData data,
+            final ObjectStreamProvider gzip,
+            final HttpServletResponse response,
+            final ResponseBuilder responseBuilder) {
+        responseBuilder.header(ACCEPT_RANGES, BYTES);
+        if (gzip != null) {
+            responseBuilder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        final long lastModified = storeInfo.peekLastModified();
+        if (lastModified > 0) {
+            responseBuilder.header(HttpHeaders.LAST_MODIFIED, APIHelper.formatHttpDate(lastModified));
+        }
+        extractResponseHeaders(data, response, responseBuilder);
+    }
+
+    /*
+     * Ranges are always cut from the identity content. One range is sent as is, several as multipart/byteranges.
+     */
+    private ResponseBuilder rangeResponse(final ObjectStreamProvider content,
+            final MetaData data,
+            final List<ByteRange> ranges) {
+        final long size = content.getSize();
+        if (ranges.isEmpty()) {
+            return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE).header(CONTENT_RANGE, ByteRange.unsatisfied(size));
+        }
+        if (ranges.size() == 1) {
+            final ByteRange range = ranges.get(0);
+            final StreamingOutput so = output -> content.writeTo(output, range.getStart(), range.getLength());
+            return Response.status(Status.PARTIAL_CONTENT).entity(so)
+                    .header(HttpHeaders.CONTENT_TYPE, data.getContentType())
+                    .header(HttpHeaders.CONTENT_ENCODING, UTF_8)
+                    .header(CONTENT_RANGE, range.toContentRange(size))
+                    .header(HttpHeaders.CONTENT_LENGTH, range.getLength());
+        }
+        final String boundary = UUID.randomUUID().toString().replace("-", "");
+        final StreamingOutput so = output -> {
+            for (final ByteRange range : ranges) {
+                final StringBuilder part = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+                if (data.getContentType() != null) {
+                    part.append(HttpHeaders.CONTENT_TYPE).append(": ").append(data.getContentType()).append("\r\n");
+                }
+                part.append(CONTENT_RANGE).append(": ").append(range.toContentRange(size)).append("\r\n\r\n");
+                output.write(part.toString().getBytes(StandardCharsets.ISO_8859_1));
+                content.writeTo(output, range.getStart(), range.getLength());
+            }
+            output.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        };
+        return Response.status(Status.PARTIAL_CONTENT).entity(so)
+                .header(HttpHeaders.CONTENT_TYPE, MULTIPART_BYTERANGES + boundary);
+    }
+
     void checkIfAllowed(final String key,
             final User user,
             final Set<User> allowedUsers,
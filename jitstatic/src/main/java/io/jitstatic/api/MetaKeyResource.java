@@ -108,25 +108,47 @@ public class MetaKeyResource {
         final User user = userHolder.orElseThrow(() -> APIHelper.createAuthenticationChallenge(JITSTATIC_KEYADMIN_REALM));
         APIHelper.checkRef(askedRef);
         final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        if (APIHelper.runsOnVirtualThreads(executor)) {
+            CompletableFuture.runAsync(() -> asyncResponse.resume(getMetaKey(key, ref, user, headers)), executor);
+            return;
+        }
         CompletableFuture.supplyAsync(() -> storage.getMetaKey(key, ref).exceptionally(helper.keyExceptionHandler(Pair::ofNothing)), executor)
                 .thenCompose(c -> c)
                 .thenApplyAsync(metaDataInfo -> metaDataInfo.orElseThrow(() -> new WebApplicationException(Status.NOT_FOUND)), executor)
-                .thenApplyAsync(metaDataInfo -> {
-                    final MetaData metaData = metaDataInfo.getLeft();
-                    authorize(user, ref, metaData.getRead());
-
-                    final EntityTag tag = new EntityTag(metaDataInfo.getRight());
-                    final Response noChange = APIHelper.checkETag(headers, tag);
-                    if (noChange != null) {
-                        return noChange;
-                    }
-                    LOG.info("{} logged in and accessed key {} in {}", user, key, ref);
-                    return Response.ok(metaData)
-                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
-                            .header(HttpHeaders.CONTENT_ENCODING, UTF_8)
-                            .tag(tag)
-                            .build();
-                }, executor).exceptionally(helper::execptionHandler).thenAcceptAsync(asyncResponse::resume, executor);
+                .thenApplyAsync(metaDataInfo -> metaKeyResponse(metaDataInfo, key, ref, user, headers), executor)
+                .exceptionally(helper::execptionHandler).thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    private Response getMetaKey(final String key, final String ref, final User user, final HttpHeaders headers) {
+        try {
+            Pair<MetaData, String> metaDataInfo;
+            try {
+                metaDataInfo = storage.getMetaKeySync(key, ref);
+            } catch (final RuntimeException e) {
+                metaDataInfo = helper.<Pair<MetaData, String>>keyExceptionHandler(Pair::ofNothing).apply(e);
+            }
+            return metaKeyResponse(metaDataInfo.orElseThrow(() -> new WebApplicationException(Status.NOT_FOUND)), key, ref, user, headers);
+        } catch (final RuntimeException e) {
+            return helper.execptionHandler(e);
+        }
+    }
+
+    private Response metaKeyResponse(final Pair<MetaData, String> metaDataInfo, final String key, final String ref, final User user,
+            final HttpHeaders headers) {
+        final MetaData metaData = metaDataInfo.getLeft();
+        authorize(user, ref, metaData.getRead());
+
+        final EntityTag tag = new EntityTag(metaDataInfo.getRight());
+        final Response noChange = APIHelper.checkETag(headers, tag);
+        if (noChange != null) {
+            return noChange;
+        }
+        LOG.info("{} logged in and accessed key {} in {}", user, key, ref);
+        return Response.ok(metaData)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, UTF_8)
+                .tag(tag)
+                .build();
     }
 
     @PUT
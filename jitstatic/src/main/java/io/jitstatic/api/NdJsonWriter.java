@@ -0,0 +1,58 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Writes one JSON document per line and flushes each of them, so clients can start on the first entry before the last one has loaded.
+ */
+final class NdJsonWriter implements Closeable {
+
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+    /* Ranked below JSON and XML, streaming is only chosen when it's asked for */
+    static final String APPLICATION_NDJSON_QS = APPLICATION_NDJSON + ";qs=0.5";
+    static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    private final ObjectMapper mapper;
+    private final JsonGenerator generator;
+
+    NdJsonWriter(final ObjectMapper mapper, final OutputStream output) throws IOException {
+        this.mapper = mapper;
+        this.generator = mapper.getFactory().createGenerator(output).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET).setRootValueSeparator(null);
+    }
+
+    void write(final Object value) throws IOException {
+        mapper.writeValue(generator, value);
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,86 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+
+import io.jitstatic.AccessRule;
+import io.jitstatic.JitStaticConstants;
+import io.jitstatic.MetaData;
+import io.jitstatic.auth.KeyAdminAuthenticator;
+import io.jitstatic.auth.User;
+import io.jitstatic.auth.UserData;
+import io.jitstatic.storage.HashService;
+import io.jitstatic.storage.Storage;
+
+/*
+ * Read access for one request. The user's key user roles and key admin rights are looked up and checked once per ref, after that each key is
+ * checked against its compiled access rule in memory. Not thread safe.
+ */
+class ReadAccess {
+
+    private static final BitSet NO_ROLES = new BitSet();
+    private final Storage storage;
+    private final HashService hashService;
+    private final KeyAdminAuthenticator keyAdminAuthenticator;
+    private final Optional<User> userHolder;
+    private final Map<String, BitSet> keyUserRoles = new HashMap<>();
+    private final Map<String, Boolean> keyAdmins = new HashMap<>();
+
+    ReadAccess(final Storage storage, final HashService hashService, final KeyAdminAuthenticator keyAdminAuthenticator,
+            final Optional<User> userHolder) {
+        this.storage = Objects.requireNonNull(storage);
+        this.hashService = Objects.requireNonNull(hashService);
+        this.keyAdminAuthenticator = Objects.requireNonNull(keyAdminAuthenticator);
+        this.userHolder = Objects.requireNonNull(userHolder);
+    }
+
+    boolean isAllowed(final MetaData metaData, final String ref) {
+        final AccessRule rule = metaData.getReadAccess();
+        if (rule.isOpen()) {
+            return true;
+        }
+        if (!userHolder.isPresent()) {
+            return false;
+        }
+        final User user = userHolder.get();
+        return rule.hasUser(user) || rule.hasAnyRole(keyUserRoles.computeIfAbsent(ref, r -> getKeyUserRoles(user, r)))
+                || keyAdmins.computeIfAbsent(ref, r -> keyAdminAuthenticator.authenticate(user, r));
+    }
+
+    private BitSet getKeyUserRoles(final User user, final String ref) {
+        try {
+            final UserData userData = storage.getUser(user.getName(), ref, JitStaticConstants.JITSTATIC_KEYUSER_REALM);
+            if (userData == null || !hashService.hasSamePassword(userData, user.getPassword())) {
+                return NO_ROLES;
+            }
+            return AccessRule.toBits(userData.getRoles());
+        } catch (final RefNotFoundException e) {
+            return NO_ROLES;
+        }
+    }
+}
@@ -22,20 +22,19 @@ import java.io.BufferedOutputStream;
  * #L%
  */
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.commons.io.input.ProxyInputStream;
 import org.apache.commons.io.output.DeferredFileOutputStream;
 
 import com.fasterxml.jackson.core.JsonParser;
@@ -43,7 +42,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 
+import io.jitstatic.source.DirectObjectStreamProvider;
 import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.source.SmallObjectStreamProvider;
 import io.jitstatic.utils.FilesUtils;
 
 public class StreamingDeserializer extends JsonDeserializer<ObjectStreamProvider> {
@@ -91,59 +92,45 @@ public class StreamingDeserializer extends JsonDeserializer<ObjectStreamProvider
         };
     }
 
+    /*
+     * Bodies above the threshold are spilled to a file that is mapped once written and removed right away, the mapping stays readable until
+     * the provider is dropped. The blob insert and the first responses read from the mapping.
+     */
     @Override
     public ObjectStreamProvider deserialize(final JsonParser p, final DeserializationContext ctxt) throws IOException, JsonProcessingException {
         final DeferredFileOutputStream dfos = getOutPutStream();
-        try (BufferedOutputStream bos = new BufferedOutputStream(dfos)) {
-            p.readBinaryValue(bos);
-        } catch (FileTooLargeException ftle) {
-            ctxt.reportInputMismatch(ObjectStreamProvider.class, "Input is too large > " + MAX_FILE_SIZE);
+        try {
+            try (BufferedOutputStream bos = new BufferedOutputStream(dfos)) {
+                p.readBinaryValue(bos);
+            } catch (FileTooLargeException ftle) {
+                ctxt.reportInputMismatch(ObjectStreamProvider.class, "Input is too large > " + MAX_FILE_SIZE);
+            } finally {
+                dfos.close();
+            }
+            if (dfos.isInMemory()) {
+                return new SmallObjectStreamProvider(dfos.getData());
+            }
+            return new DirectObjectStreamProvider(map(dfos.getFile().toPath()));
         } finally {
-            dfos.close();
-        }
-        return new ObjectStreamProvider() {
-            @Override
-            public long getSize() {
-                return dfos.getByteCount();
+            if (!dfos.isInMemory()) {
+                release(dfos.getFile().toPath());
             }
+        }
+    }
 
-            @Override
-            public byte[] asByteArray() throws IOException {
-                byte[] data = dfos.getData();
-                if (data != null) {
-                    return data;
-                }
-                try (InputStream is = Files.newInputStream(dfos.getFile().toPath(), StandardOpenOption.READ)) {
-                    return is.readAllBytes();
-                }
-            }
+    private static ByteBuffer map(final Path spill) throws IOException {
+        try (FileChannel channel = FileChannel.open(spill, StandardOpenOption.READ)) {
+            return channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
 
-            @Override
-            public InputStream getInputStream() throws IOException {
-                if (dfos.isInMemory()) {
-                    return new ByteArrayInputStream(dfos.getData());
-                }
-                final Path tmpPath = dfos.getFile().toPath();
-                return new ProxyInputStream(Files.newInputStream(tmpPath, StandardOpenOption.READ)) {
-                    @Override
-                    public void close() throws IOException {
-                        try {
-                            super.close();
-                        } finally {
-                            CompletableFuture.runAsync(() -> {
-                                try {
-                                    if (!Files.deleteIfExists(tmpPath)) {
-                                        Files.delete(tmpPath);
-                                    }
-                                } catch (IOException e) {
-                                    LOG.warn("Error deleting temporary file", e);
-                                }
-                            });
-                        }
-                    }
-                };
-            }
-        };
+    private static void release(final Path spill) {
+        try {
+            Files.deleteIfExists(spill);
+        } catch (IOException e) {
+            LOG.warn("Error deleting temporary file {}", spill, e);
+            spill.toFile().deleteOnExit();
+        }
     }
 
     static class FileTooLargeException extends IOException {
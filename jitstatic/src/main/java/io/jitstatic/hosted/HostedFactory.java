@@ -142,6 +142,14 @@ public class HostedFactory {
     @JsonProperty
     private int iterations = 5;
 
+    @JsonProperty
+    @Min(0)
+    private int verifiedCredentialsTtlSeconds = 60;
+
+    @JsonProperty
+    @Min(1)
+    private int verifiedCredentialsMaxEntries = 10_000;
+
     public String getServletName() {
         return servletName;
     }
@@ -298,8 +306,18 @@ public class HostedFactory {
     }
 
     public Source build(final Environment env, final String gitRealm, ExecutorService repoWriter) throws CorruptedSourceException, IOException {
-        final HostedGitRepositoryManager hostedGitRepositoryManager = new HostedGitRepositoryManager(getBasePath(), getHostedEndpoint(), getBranch(), repoWriter);
-        final HashService hashService = new HashService(getPrivateSalt(), getIterations());
+        return build(env, gitRealm, new HostedGitRepositoryManager(getBasePath(), getHostedEndpoint(), getBranch(), repoWriter, getThreshold()));
+    }
+
+    public Source build(final Environment env, final String gitRealm, ExecutorService repoWriter, ExecutorService packExecutor, final int packThreads)
+            throws CorruptedSourceException, IOException {
+        return build(env, gitRealm,
+                new HostedGitRepositoryManager(getBasePath(), getHostedEndpoint(), getBranch(), repoWriter, getThreshold(), packExecutor, packThreads));
+    }
+
+    private Source build(final Environment env, final String gitRealm, final HostedGitRepositoryManager hostedGitRepositoryManager) {
+        final HashService hashService = new HashService(getPrivateSalt(), getIterations(), getVerifiedCredentialsTtlSeconds(),
+                getVerifiedCredentialsMaxEntries());
         env.getApplicationContext().addBean(hashService);
         registerCustomDeserializer(env);
 
@@ -444,6 +462,22 @@ public class HostedFactory {
         this.iterations = iterations;
     }
 
+    public int getVerifiedCredentialsTtlSeconds() {
+        return verifiedCredentialsTtlSeconds;
+    }
+
+    public void setVerifiedCredentialsTtlSeconds(int verifiedCredentialsTtlSeconds) {
+        this.verifiedCredentialsTtlSeconds = verifiedCredentialsTtlSeconds;
+    }
+
+    public int getVerifiedCredentialsMaxEntries() {
+        return verifiedCredentialsMaxEntries;
+    }
+
+    public void setVerifiedCredentialsMaxEntries(int verifiedCredentialsMaxEntries) {
+        this.verifiedCredentialsMaxEntries = verifiedCredentialsMaxEntries;
+    }
+
     public boolean isProtectTasks() {
         return protectTasks;
     }
@@ -1,6 +1,15 @@
 package io.jitstatic.storage;
 
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterRegistration;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 /*-
  * #%L
@@ -24,10 +33,14 @@ import java.util.Objects;
 
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
 import io.dropwizard.auth.basic.BasicCredentialAuthFilter;
 import io.dropwizard.setup.Environment;
+import io.jitstatic.JitStaticConstants;
+import io.jitstatic.api.AnonymousReadFilter;
 import io.jitstatic.auth.ConfiguratedAuthenticator;
 import io.jitstatic.auth.User;
 import io.jitstatic.hosted.events.AddRefEventListener;
@@ -38,7 +51,74 @@ import io.jitstatic.source.Source;
 
 public class StorageFactory {
 
+    @JsonProperty
+    @Min(1)
+    private int writeLanes = Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    @Min(0)
+    private long groupCommitWindowMillis = 0;
+
+    @JsonProperty
+    @Min(1)
+    private int groupCommitMaxSize = 1;
+
+    @JsonProperty
+    @Min(1)
+    private long cacheMaxBytes = Runtime.getRuntime().maxMemory() / 4;
+
+    @JsonProperty
+    @Min(1)
+    private long cacheRefMaxBytes = Long.MAX_VALUE;
+
+    @NotNull
+    @JsonProperty
+    private Map<String, Long> cacheRefMaxBytesOverrides = new LinkedHashMap<>();
+
+    @JsonProperty
+    @Min(1)
+    private int cacheMaxEntries = 2000;
+
+    @JsonProperty
+    private boolean cacheOffHeap = false;
+
+    @JsonProperty
+    @Min(0)
+    private int cacheGzipMinBytes = 0;
+
+    @JsonProperty
+    @Min(1)
+    private int maxActiveRefs = 1000;
+
+    @JsonProperty
+    private boolean anonymousReadFilter = false;
+
+    @JsonProperty
+    @Min(0)
+    private long refIdleSeconds = 600;
+
+    @JsonProperty
+    @Min(1)
+    private int streamMaxInFlight = 16;
+
+    public RefLockService buildRefLockService() {
+        return new LocalRefLockService(writeLanes, groupCommitWindowMillis, groupCommitMaxSize);
+    }
+
+    public RefLockService buildRefLockService(final ExecutorFactory executors, final int keyLoaderThreads) {
+        return new LocalRefLockService(writeLanes, groupCommitWindowMillis, groupCommitMaxSize, keyLoaderThreads, executors);
+    }
+
+    public CacheBudget buildCacheBudget(final int threshold) {
+        return new CacheBudget(cacheMaxBytes, cacheRefMaxBytes, cacheRefMaxBytesOverrides, cacheMaxEntries, threshold, cacheOffHeap, cacheGzipMinBytes);
+    }
+
     public Storage build(final Source source, final Environment env, final String storageRealm, final HashService hashService, final String rootUser, RefLockService clusterService) {
+        return build(source, env, storageRealm, hashService, rootUser, clusterService, JitStaticConstants.DEFAULT_THRESHOLD);
+    }
+
+    public Storage build(final Source source, final Environment env, final String storageRealm, final HashService hashService, final String rootUser, RefLockService clusterService,
+            final int threshold) {
         Objects.requireNonNull(source, "Source cannot be null");
         Objects.requireNonNull(rootUser);
         env.jersey().register(new AuthDynamicFeature(
@@ -51,11 +131,123 @@ public class StorageFactory {
         env.jersey().register(RolesAllowedDynamicFeature.class);
         env.jersey().register(new AuthValueFactoryProvider.Binder<>(User.class));
         
-        final KeyStorage keyStorage = new KeyStorage(source, source.getDefaultRef(), hashService, clusterService, rootUser);
+        final KeyStorage keyStorage = new KeyStorage(source, source.getDefaultRef(), hashService, clusterService, rootUser, buildCacheBudget(threshold),
+                maxActiveRefs, TimeUnit.SECONDS.toMillis(refIdleSeconds));
         source.addListener(new ReloadRefEventListener(keyStorage), ReloadRefEventListener.class);
         source.addListener(new DeleteRefEventListener(keyStorage), DeleteRefEventListener.class);
         source.addListener(new StorageAddRefEventListener(keyStorage), AddRefEventListener.class);
         source.addRefHolderFactory(keyStorage::getRefHolderLock);
+        if (anonymousReadFilter) {
+            final String urlPattern = env.jersey().getUrlPattern();
+            final String basePath = (urlPattern.endsWith("/*") ? urlPattern.substring(0, urlPattern.length() - 2) : urlPattern) + "/storage/";
+            final FilterRegistration.Dynamic filter = env.servlets().addFilter("AnonymousRead", new AnonymousReadFilter(keyStorage, source
+                    .getDefaultRef(), basePath, env.metrics()));
+            filter.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, basePath + "*");
+        }
         return keyStorage;
     }
+
+    public boolean isAnonymousReadFilter() {
+        return anonymousReadFilter;
+    }
+
+    public void setAnonymousReadFilter(boolean anonymousReadFilter) {
+        this.anonymousReadFilter = anonymousReadFilter;
+    }
+
+    public int getWriteLanes() {
+        return writeLanes;
+    }
+
+    public void setWriteLanes(int writeLanes) {
+        this.writeLanes = writeLanes;
+    }
+
+    public long getGroupCommitWindowMillis() {
+        return groupCommitWindowMillis;
+    }
+
+    public void setGroupCommitWindowMillis(long groupCommitWindowMillis) {
+        this.groupCommitWindowMillis = groupCommitWindowMillis;
+    }
+
+    public int getGroupCommitMaxSize() {
+        return groupCommitMaxSize;
+    }
+
+    public void setGroupCommitMaxSize(int groupCommitMaxSize) {
+        this.groupCommitMaxSize = groupCommitMaxSize;
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public void setCacheMaxBytes(long cacheMaxBytes) {
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    public long getCacheRefMaxBytes() {
+        return cacheRefMaxBytes;
+    }
+
+    public void setCacheRefMaxBytes(long cacheRefMaxBytes) {
+        this.cacheRefMaxBytes = cacheRefMaxBytes;
+    }
+
+    public Map<String, Long> getCacheRefMaxBytesOverrides() {
+        return cacheRefMaxBytesOverrides;
+    }
+
+    public void setCacheRefMaxBytesOverrides(Map<String, Long> cacheRefMaxBytesOverrides) {
+        this.cacheRefMaxBytesOverrides = cacheRefMaxBytesOverrides;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public boolean isCacheOffHeap() {
+        return cacheOffHeap;
+    }
+
+    public void setCacheOffHeap(boolean cacheOffHeap) {
+        this.cacheOffHeap = cacheOffHeap;
+    }
+
+    public int getCacheGzipMinBytes() {
+        return cacheGzipMinBytes;
+    }
+
+    public void setCacheGzipMinBytes(int cacheGzipMinBytes) {
+        this.cacheGzipMinBytes = cacheGzipMinBytes;
+    }
+
+    public int getMaxActiveRefs() {
+        return maxActiveRefs;
+    }
+
+    public void setMaxActiveRefs(int maxActiveRefs) {
+        this.maxActiveRefs = maxActiveRefs;
+    }
+
+    public long getRefIdleSeconds() {
+        return refIdleSeconds;
+    }
+
+    public void setRefIdleSeconds(long refIdleSeconds) {
+        this.refIdleSeconds = refIdleSeconds;
+    }
+
+    public int getStreamMaxInFlight() {
+        return streamMaxInFlight;
+    }
+
+    public void setStreamMaxInFlight(int streamMaxInFlight) {
+        this.streamMaxInFlight = streamMaxInFlight;
+    }
 }
@@ -23,6 +23,7 @@ package io.jitstatic;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doThrow;
@@ -43,6 +44,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheck;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -57,6 +59,7 @@ import io.jitstatic.hosted.HostedFactory;
 import io.jitstatic.hosted.LoginService;
 import io.jitstatic.source.Source;
 import io.jitstatic.storage.HashService;
+import io.jitstatic.storage.LocalRefLockService;
 import io.jitstatic.storage.Storage;
 import io.jitstatic.storage.StorageFactory;
 
@@ -107,7 +110,9 @@ public class JitstaticApplicationTest {
         when(environment.lifecycle()).thenReturn(lifecycle);
         when(environment.jersey()).thenReturn(jersey);
         when(environment.healthChecks()).thenReturn(hcr);
-        when(storageFactory.build(any(), isA(Environment.class), any(), any(), any(), any())).thenReturn(storage);
+        when(storageFactory.build(any(), isA(Environment.class), any(), any(), any(), any(), anyInt())).thenReturn(storage);
+        when(storageFactory.buildRefLockService(any(), anyInt())).thenReturn(new LocalRefLockService());
+        when(environment.metrics()).thenReturn(new MetricRegistry());
         when(environment.getApplicationContext()).thenReturn(handler);
         when(handler.getBean(Mockito.eq(LoginService.class))).thenReturn(service);
         when(handler.getBean(Mockito.eq(HashService.class))).thenReturn(hashService);
@@ -118,7 +123,7 @@ public class JitstaticApplicationTest {
     @Test
     public void buildsAMapResource() throws Exception {
         config.setHostedFactory(hostedFactory);
-        when(hostedFactory.build(any(), any(), any())).thenReturn(source);
+        when(hostedFactory.build(any(), any(), any(), any(), anyInt())).thenReturn(source);
         app.run(config, environment);
         verify(jersey).register(isA(KeyResource.class));
     }
@@ -126,7 +131,7 @@ public class JitstaticApplicationTest {
     @Test
     public void buildsAstorageHealthCheck() throws Exception {
         config.setHostedFactory(hostedFactory);
-        when(hostedFactory.build(any(), any(), any())).thenReturn(source);
+        when(hostedFactory.build(any(), any(), any(), any(), anyInt())).thenReturn(source);
         app.run(config, environment);
         verify(hcr).register(eq("storagechecker"), isA(HealthCheck.class));
     }
@@ -134,7 +139,7 @@ public class JitstaticApplicationTest {
     @Test
     public void testRemoteManagerLifeCycleManagerIsRegistered() throws Exception {
         config.setHostedFactory(hostedFactory);
-        when(hostedFactory.build(any(), any(), any())).thenReturn(source);
+        when(hostedFactory.build(any(), any(), any(), any(), anyInt())).thenReturn(source);
         app.run(config, environment);
         verify(lifecycle, times(1)).manage(isA(ManagedObject.class));
     }
@@ -142,7 +147,7 @@ public class JitstaticApplicationTest {
     @Test
     public void testStorageLifeCycleManagerIsRegisterd() throws Exception {
         config.setHostedFactory(hostedFactory);
-        when(hostedFactory.build(any(), any(), any())).thenReturn(source);
+        when(hostedFactory.build(any(), any(), any(), any(), anyInt())).thenReturn(source);
         app.run(config, environment);
         verify(lifecycle, times(2)).manage(isA(AutoCloseableLifeCycleManager.class));
     }
@@ -151,7 +156,7 @@ public class JitstaticApplicationTest {
     public void testResourcesAreGettingClosed() throws Exception {
         assertThrows(RuntimeException.class, () -> {
             config.setHostedFactory(hostedFactory);
-            when(hostedFactory.build(any(), any(), any())).thenReturn(source);
+            when(hostedFactory.build(any(), any(), any(), any(), anyInt())).thenReturn(source);
             Mockito.doThrow(new RuntimeException()).when(jersey).register(any(KeyResource.class));
             try {
                 app.run(config, environment);
@@ -168,7 +173,7 @@ public class JitstaticApplicationTest {
         TestException r = new TestException("Test Exception");
         HostedFactory hf = mock(HostedFactory.class);
         config.setHostedFactory(hf);
-        doThrow(r).when(hf).build(Mockito.eq(environment), Mockito.eq(JitStaticConstants.GIT_REALM), any());
+        doThrow(r).when(hf).build(Mockito.eq(environment), Mockito.eq(JitStaticConstants.GIT_REALM), any(), any(), anyInt());
         assertSame(r, assertThrows(TestException.class, () -> {
             app.run(config, environment);
         }));
@@ -178,8 +183,8 @@ public class JitstaticApplicationTest {
     public void testBothHostedAndRemoteConfigurationIsSet() throws Exception {
         config.setStorageFactory(storageFactory);
         config.setHostedFactory(hostedFactory);
-        when(hostedFactory.build(Mockito.eq(environment), Mockito.eq(JitStaticConstants.GIT_REALM), any())).thenReturn(source);
-        when(storageFactory.build(source, environment, JitStaticConstants.JITSTATIC_KEYADMIN_REALM, hashService, null, null)).thenReturn(storage);
+        when(hostedFactory.build(Mockito.eq(environment), Mockito.eq(JitStaticConstants.GIT_REALM), any(), any(), anyInt())).thenReturn(source);
+        when(storageFactory.build(source, environment, JitStaticConstants.JITSTATIC_KEYADMIN_REALM, hashService, null, null, 0)).thenReturn(storage);
         app.run(config, environment);
     }
 
@@ -191,8 +196,8 @@ public class JitstaticApplicationTest {
             config.setStorageFactory(storageFactory);
             config.setHostedFactory(hostedFactory);
             when(config.getKeyAdminAuthenticator(storage, hashService)).thenThrow(new TestException("Test exception3"));
-            when(hostedFactory.build(environment, JitStaticConstants.GIT_REALM, executor)).thenReturn(source);
-            when(storageFactory.build(source, environment, JitStaticConstants.JITSTATIC_KEYADMIN_REALM, hashService, null, null)).thenReturn(storage);
+            when(hostedFactory.build(eq(environment), eq(JitStaticConstants.GIT_REALM), eq(executor), any(), anyInt())).thenReturn(source);
+            when(storageFactory.build(source, environment, JitStaticConstants.JITSTATIC_KEYADMIN_REALM, hashService, null, null, 0)).thenReturn(storage);
             app.run(config, environment);
         });
     }
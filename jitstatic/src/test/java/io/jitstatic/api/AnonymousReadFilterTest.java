@@ -0,0 +1,244 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.jitstatic.HeaderPair;
+import io.jitstatic.MetaData;
+import io.jitstatic.auth.User;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.GzipObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.storage.Storage;
+
+public class AnonymousReadFilterTest {
+
+    private static final String REFS_HEADS_MASTER = "refs/heads/master";
+    private static final byte[] DATA = "{\"food\":[\"wheat\",\"grass\"]}".getBytes(StandardCharsets.UTF_8);
+    private final Storage storage = mock(Storage.class);
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+    private final FilterChain chain = mock(FilterChain.class);
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final AnonymousReadFilter filter = new AnonymousReadFilter(storage, REFS_HEADS_MASTER, "/storage/", new MetricRegistry());
+
+    @BeforeEach
+    public void setup() throws IOException {
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getServletPath()).thenReturn("");
+        when(request.getPathInfo()).thenReturn("/storage/horse");
+        when(request.getHeaders(HttpHeaders.IF_MATCH)).thenReturn(Collections.emptyEnumeration());
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                // NOOP
+            }
+        });
+    }
+
+    @Test
+    public void testServesOpenCachedKey() throws IOException, ServletException {
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo(new HashSet<>(), List.of(new HeaderPair("tag", "1234"))));
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("application/json");
+        verify(response).setHeader(HttpHeaders.ETAG, "\"1\"");
+        verify(response).addHeader("tag", "1234");
+        verify(response).setContentLengthLong(DATA.length);
+        assertArrayEquals(DATA, body.toByteArray());
+        verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    public void testMatchingETagIsNotModified() throws IOException, ServletException {
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo(new HashSet<>(), null));
+        when(request.getHeaders(HttpHeaders.IF_MATCH)).thenReturn(Collections.enumeration(List.of("\"1\"")));
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+        verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    public void testIfNoneMatchIsNotModified() throws IOException, ServletException {
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo(new HashSet<>(), null));
+        when(request.getHeaders(HttpHeaders.IF_NONE_MATCH)).thenReturn(Collections.enumeration(List.of("W/\"1\"")));
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testIfModifiedSinceIsNotModified() throws IOException, ServletException {
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(new StoreInfo(toProvider(DATA), new MetaData(new HashSet<>(),
+                "application/json", false, false, null, null, null), "1", "1", 1_000_000_000L));
+        when(request.getHeader(HttpHeaders.IF_MODIFIED_SINCE)).thenReturn("Mon, 12 Jan 1970 13:46:40 GMT");
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testServesLastModified() throws IOException, ServletException {
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(new StoreInfo(toProvider(DATA), new MetaData(new HashSet<>(),
+                "application/json", false, false, null, null, null), "1", "1", 1_000_000_000L));
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setDateHeader(HttpHeaders.LAST_MODIFIED, 1_000_000_000L);
+    }
+
+    @Test
+    public void testLastModifiedIsOnlyLookedUpForConditionalReads() throws IOException, ServletException {
+        AtomicInteger lookups = new AtomicInteger();
+        StoreInfo storeInfo = new StoreInfo(toProvider(DATA), new MetaData(new HashSet<>(), "application/json", false, false, null, null, null), "1",
+                "1", () -> {
+                    lookups.incrementAndGet();
+                    return 1_000_000_000L;
+                });
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response, never()).setDateHeader(eq(HttpHeaders.LAST_MODIFIED), anyLong());
+        assertEquals(0, lookups.get());
+        when(request.getHeader(HttpHeaders.IF_MODIFIED_SINCE)).thenReturn("Mon, 12 Jan 1970 13:46:40 GMT");
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        filter.doFilter(request, response, chain);
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testServesGzipVariant() throws IOException, ServletException {
+        ObjectStreamProvider content = GzipObjectStreamProvider.of(toProvider(new byte[1000]), false);
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(new StoreInfo(content, new MetaData(new HashSet<>(), "application/json",
+                false, false, null, null, null), "1", "1"));
+        when(request.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+        filter.doFilter(request, response, chain);
+        verify(response).setHeader(HttpHeaders.CONTENT_ENCODING, GzipObjectStreamProvider.GZIP);
+        verify(response).setHeader(HttpHeaders.ETAG, "\"1-gzip\"");
+        verify(response).setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        assertArrayEquals(content.getEncoded(GzipObjectStreamProvider.GZIP).asByteArray(), body.toByteArray());
+    }
+
+    @Test
+    public void testIfNoneMatchAcceptsEitherVariantTag() throws IOException, ServletException {
+        ObjectStreamProvider content = GzipObjectStreamProvider.of(toProvider(new byte[1000]), false);
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(new StoreInfo(content, new MetaData(new HashSet<>(), "application/json",
+                false, false, null, null, null), "1", "1"));
+        when(request.getHeaders(HttpHeaders.IF_NONE_MATCH)).thenReturn(Collections.enumeration(List.of("\"1-gzip\"")));
+        filter.doFilter(request, response, chain);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response).setHeader(HttpHeaders.ETAG, "\"1\"");
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testProtectedKeyGoesToJersey() throws IOException, ServletException {
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo(Set.of(new User("user", "pass")), null));
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    public void testMissGoesToJersey() throws IOException, ServletException {
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    public void testRangeGoesToJersey() throws IOException, ServletException {
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo(new HashSet<>(), null));
+        when(request.getHeader("Range")).thenReturn("bytes=0-1");
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+    }
+
+    @Test
+    public void testCredentialsGoToJersey() throws IOException, ServletException {
+        when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("Basic dXNlcjpwYXNz");
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+        verify(storage, never()).peekKey(anyString(), anyString());
+    }
+
+    @Test
+    public void testOtherRefGoesToJersey() throws IOException, ServletException {
+        when(request.getQueryString()).thenReturn("ref=refs/heads/other");
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+        verify(storage, never()).peekKey(anyString(), anyString());
+    }
+
+    @Test
+    public void testListGoesToJersey() throws IOException, ServletException {
+        when(request.getPathInfo()).thenReturn("/storage/dir/");
+        filter.doFilter(request, response, chain);
+        verify(chain).doFilter(request, response);
+        verify(storage, never()).peekKey(anyString(), anyString());
+    }
+
+    private static StoreInfo storeInfo(final Set<User> users, final List<HeaderPair> headers) {
+        return new StoreInfo(toProvider(DATA), new MetaData(users, "application/json", false, false, headers, null, null), "1", "1");
+    }
+}
@@ -21,12 +21,14 @@ package io.jitstatic.api;
  */
 
 import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
@@ -39,6 +41,7 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
 import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
@@ -46,6 +49,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
 import io.dropwizard.auth.basic.BasicCredentialAuthFilter;
@@ -60,6 +65,7 @@ import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.storage.HashService;
 import io.jitstatic.storage.Storage;
 import io.jitstatic.test.TemporaryFolderExtension;
+import io.jitstatic.utils.Functions.ThrowingConsumer;
 import io.jitstatic.utils.Pair;
 
 @ExtendWith({ DropwizardExtensionsSupport.class, TemporaryFolderExtension.class })
@@ -108,6 +114,33 @@ public class BulkResourceTest {
         assertTrue(collect.contains("key1"));
     }
 
+    @Test
+    public void testStreamFetch() throws IOException {
+        StoreInfo storeInfoMock = mock(StoreInfo.class);
+        MetaData storageData = mock(MetaData.class);
+        when(storeInfoMock.getStreamProvider()).thenReturn(toProvider(new byte[] { 1 }));
+        when(storeInfoMock.getVersion()).thenReturn("1");
+        when(storeInfoMock.getMetaData()).thenReturn(storageData);
+        when(storageData.getContentType()).thenReturn("application/something");
+        Mockito.doAnswer(i -> {
+            ThrowingConsumer<Pair<String, StoreInfo>, IOException> consumer = i.getArgument(3);
+            consumer.accept(Pair.of("key1", storeInfoMock));
+            return null;
+        }).when(storage).streamListForRef(Mockito.eq(List.of(Pair.of("key1", false))), Mockito.eq(REF_HEADS_MASTER), Mockito.eq(16), Mockito.any());
+        Response response = RESOURCES.target("/bulk/fetch").request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.ACCEPT, "application/x-ndjson")
+                .buildPost(Entity.entity(List.of(new BulkSearch(REF_HEADS_MASTER, List.of(new SearchPath("key1", false))),
+                        new BulkSearch("refs/beads/master", List.of(new SearchPath("key1", false)))), MediaType.APPLICATION_JSON))
+                .invoke();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        String[] lines = response.readEntity(String.class).split("\n");
+        assertEquals(1, lines.length);
+        SearchResult result = new ObjectMapper().readValue(lines[0], SearchResult.class);
+        assertEquals("key1", result.getKey());
+        assertEquals(REF_HEADS_MASTER, result.getRef());
+        assertEquals("1", result.getTag());
+    }
+
     private static String createCreds(String user, String secret) {
         return "Basic " + Base64.getEncoder().encodeToString((user + ":" + secret).getBytes(UTF_8));
     }
@@ -37,6 +37,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -48,6 +49,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
 
 import javax.validation.Validation;
 import javax.validation.Validator;
@@ -90,9 +92,12 @@ import io.jitstatic.auth.User;
 import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.GzipObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.storage.HashService;
 import io.jitstatic.storage.KeyAlreadyExist;
 import io.jitstatic.storage.Storage;
+import io.jitstatic.utils.Functions.ThrowingConsumer;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.VersionIsNotSame;
 import io.jitstatic.utils.WrappingAPIException;
@@ -164,6 +169,36 @@ public class KeyResourceTest {
         assertEquals(returnedDog, response.toString());
     }
 
+    @Test
+    public void testCachedKeyIsServedWithoutLoading() {
+        Optional<StoreInfo> expected = DATA.get("horse");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(expected.get());
+        JsonNode response = RESOURCES.target("/storage/horse").request().get(JsonNode.class);
+        assertEquals(returnedHorse, response.toString());
+        Mockito.verify(storage, Mockito.never()).getKey(anyString(), anyString());
+    }
+
+    @Test
+    public void testCachedKeyWithETagIsNotModified() {
+        Optional<StoreInfo> expected = DATA.get("dog");
+        when(storage.peekKey("dog", REFS_HEADS_MASTER)).thenReturn(expected.get());
+        Response response = RESOURCES.target("/storage/dog").request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_MATCH, "\"" + expected.get().getVersion() + "\"").get();
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response.close();
+        Mockito.verify(storage, Mockito.never()).getKey(anyString(), anyString());
+    }
+
+    @Test
+    public void testCachedKeyIsCheckedForWrongUser() {
+        Optional<StoreInfo> expected = DATA.get("dog");
+        when(storage.peekKey("dog", REFS_HEADS_MASTER)).thenReturn(expected.get());
+        final String bac = "Basic " + Base64.getEncoder().encodeToString(("anotheruser:" + SECRET).getBytes(UTF_8));
+        Response response = RESOURCES.target("/storage/dog").request().header(HttpHeaders.AUTHORIZATION, bac).get();
+        assertEquals(Status.FORBIDDEN.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
     @Test
     public void testGettingKeyFromResourceWithNoAuthentication() {
         Optional<StoreInfo> expected = DATA.get("dog");
@@ -249,6 +284,204 @@ public class KeyResourceTest {
         response.close();
     }
 
+    @Test
+    public void testIfNoneMatchWithWeakTagInListIsNotModified() {
+        Optional<StoreInfo> expected = DATA.get("horse");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(expected.get());
+        Response response = RESOURCES.target("/storage/horse").request()
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\", W/\"" + expected.get().getVersion() + "\"").get();
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        assertEquals(expected.get().getVersion(), response.getEntityTag().getValue());
+        response.close();
+    }
+
+    @Test
+    public void testIfNoneMatchWithOtherTagGetsKey() {
+        Optional<StoreInfo> expected = DATA.get("horse");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(expected.get());
+        Response response = RESOURCES.target("/storage/horse").request().header(HttpHeaders.IF_NONE_MATCH, "\"2\"").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(returnedHorse, response.readEntity(JsonNode.class).toString());
+    }
+
+    @Test
+    public void testIfNoneMatchIsCheckedAfterAuthorization() {
+        Optional<StoreInfo> expected = DATA.get("dog");
+        when(storage.peekKey("dog", REFS_HEADS_MASTER)).thenReturn(expected.get());
+        Response response = RESOURCES.target("/storage/dog").request().header(HttpHeaders.IF_NONE_MATCH, "*").get();
+        assertEquals(Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void testIfModifiedSinceIsNotModifiedWithoutOpeningContent() throws IOException {
+        ObjectStreamProvider provider = mock(ObjectStreamProvider.class);
+        StoreInfo storeInfo = new StoreInfo(provider, new MetaData(new HashSet<>(), null, false, false, List.of(), null, null), "1", "1",
+                1_000_000_000L);
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request()
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 12 Jan 1970 13:46:40 GMT").get();
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response.close();
+        response = RESOURCES.target("/storage/horse").request()
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 12 Jan 1970 13:46:40 GMT")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"2\"").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("Mon, 12 Jan 1970 13:46:40 GMT", response.getHeaderString(HttpHeaders.LAST_MODIFIED));
+        response.close();
+        Mockito.verify(provider, Mockito.times(1)).writeTo(any());
+    }
+
+    @Test
+    public void testIfModifiedSinceBeforeLastModifiedGetsKey() {
+        StoreInfo storeInfo = new StoreInfo(toProvider(returnedHorse.getBytes(UTF_8)), new MetaData(new HashSet<>(), null, false, false, List
+                .of(), null, null), "1", "1", 1_000_000_000L);
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request()
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 12 Jan 1970 13:46:39 GMT").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(returnedHorse, response.readEntity(JsonNode.class).toString());
+    }
+
+    @Test
+    public void testGzipVariantIsSentWhenAccepted() throws IOException {
+        byte[] content = ("{\"food\":\"" + "grass".repeat(200) + "\"}").getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(GzipObjectStreamProvider.of(toProvider(content), false), new MetaData(new HashSet<>(), null, false,
+                false, List.of(), null, null), "1", "1");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request().header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.8").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+        try (InputStream is = new GZIPInputStream(response.readEntity(InputStream.class))) {
+            assertArrayEquals(content, is.readAllBytes());
+        }
+        response = RESOURCES.target("/storage/horse").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("utf-8", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(content, response.readEntity(byte[].class));
+    }
+
+    @Test
+    public void testGzipVariantHasItsOwnETag() throws IOException {
+        byte[] content = ("{\"food\":\"" + "grass".repeat(200) + "\"}").getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(GzipObjectStreamProvider.of(toProvider(content), false), new MetaData(new HashSet<>(), null, false,
+                false, List.of(), null, null), "1", "1");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("\"1-gzip\"", response.getHeaderString(HttpHeaders.ETAG));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+        response.close();
+        response = RESOURCES.target("/storage/horse").request().get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("\"1\"", response.getHeaderString(HttpHeaders.ETAG));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+        response.close();
+        response = RESOURCES.target("/storage/horse").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, "\"1\"")
+                .get();
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        assertEquals("\"1-gzip\"", response.getHeaderString(HttpHeaders.ETAG));
+        response = RESOURCES.target("/storage/horse").request().header(HttpHeaders.IF_NONE_MATCH, "\"1-gzip\"").get();
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        assertEquals("\"1\"", response.getHeaderString(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void testIfRangeWithGzipTagSendsWholeContent() throws IOException {
+        byte[] content = ("{\"food\":\"" + "grass".repeat(200) + "\"}").getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(GzipObjectStreamProvider.of(toProvider(content), false), new MetaData(new HashSet<>(), null, false,
+                false, List.of(), null, null), "1", "1");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1").header("If-Range", "\"1-gzip\"")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("\"1-gzip\"", response.getHeaderString(HttpHeaders.ETAG));
+        try (InputStream is = new GZIPInputStream(response.readEntity(InputStream.class))) {
+            assertArrayEquals(content, is.readAllBytes());
+        }
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1").header("If-Range", "\"1-gzip\"").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertArrayEquals(content, response.readEntity(byte[].class));
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1").header("If-Range", "\"1\"")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        assertEquals("\"1\"", response.getHeaderString(HttpHeaders.ETAG));
+        assertEquals("{\"", response.readEntity(String.class));
+    }
+
+    @Test
+    public void testRangeRequests() throws IOException {
+        byte[] content = "0123456789".getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(GzipObjectStreamProvider.of(toProvider(content), false), new MetaData(new HashSet<>(), "text/plain",
+                false, false, List.of(), null, null), "1", "1");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=2-4").header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        assertEquals("bytes 2-4/10", response.getHeaderString("Content-Range"));
+        assertEquals("utf-8", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("\"1\"", response.getHeaderString(HttpHeaders.ETAG));
+        assertEquals("234", response.readEntity(String.class));
+
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=-3").get();
+        assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        assertEquals("bytes 7-9/10", response.getHeaderString("Content-Range"));
+        assertEquals("789", response.readEntity(String.class));
+
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=8-").get();
+        assertEquals("bytes 8-9/10", response.getHeaderString("Content-Range"));
+        assertEquals("89", response.readEntity(String.class));
+
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=10-").get();
+        assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode(), response.getStatus());
+        assertEquals("bytes */10", response.getHeaderString("Content-Range"));
+        response.close();
+
+        response = RESOURCES.target("/storage/horse").request().header("Range", "lines=1-2").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+        assertEquals("0123456789", response.readEntity(String.class));
+    }
+
+    @Test
+    public void testMultipleRangesAreSentAsMultipart() {
+        byte[] content = "0123456789".getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(toProvider(content), new MetaData(new HashSet<>(), "text/plain", false, false, List.of(), null, null), "1",
+                "1");
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1, 5-6, 20-30").get();
+        assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        String contentType = response.getHeaderString(HttpHeaders.CONTENT_TYPE);
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        assertEquals("\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/10\r\n\r\n01"
+                + "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 5-6/10\r\n\r\n56"
+                + "\r\n--" + boundary + "--\r\n", response.readEntity(String.class));
+    }
+
+    @Test
+    public void testIfRangeMismatchSendsWholeContent() {
+        byte[] content = "0123456789".getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(toProvider(content), new MetaData(new HashSet<>(), "text/plain", false, false, List.of(), null, null), "1",
+                "1", 1_000_000L);
+        when(storage.peekKey("horse", REFS_HEADS_MASTER)).thenReturn(storeInfo);
+        Response response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1").header("If-Range", "\"2\"").get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("0123456789", response.readEntity(String.class));
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1").header("If-Range", "\"1\"").get();
+        assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        assertEquals("01", response.readEntity(String.class));
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1").header("If-Range", APIHelper.formatHttpDate(1_000_000L))
+                .get();
+        assertEquals(Status.PARTIAL_CONTENT.getStatusCode(), response.getStatus());
+        assertEquals("01", response.readEntity(String.class));
+        response = RESOURCES.target("/storage/horse").request().header("Range", "bytes=0-1").header("If-Range", APIHelper.formatHttpDate(2_000_000L))
+                .get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
     @Test
     public void testFaultyRef() {
         assertEquals(compileMsg(Status.NOT_FOUND), assertThrows(WebApplicationException.class, () -> RESOURCES.target("/storage/horse")
@@ -800,6 +1033,49 @@ public class KeyResourceTest {
         assertEquals(new KeyData(bookPair), list.getResult().get(1));
     }
 
+    @Test
+    public void testStreamList() throws IOException {
+        StoreInfo dogInfo = DATA.get("dog").get();
+        StoreInfo bookInfo = DATA.get("book").get();
+        Pair<String, StoreInfo> dogPair = Pair.of("dog", dogInfo);
+        Pair<String, StoreInfo> bookPair = Pair.of("book", bookInfo);
+        Mockito.doAnswer(i -> {
+            ThrowingConsumer<Pair<String, StoreInfo>, IOException> consumer = i.getArgument(3);
+            consumer.accept(dogPair);
+            consumer.accept(bookPair);
+            return null;
+        }).when(storage).streamListForRef(eq(List.of(Pair.of("/", true))), eq(REFS_HEADS_MASTER), eq(16), any());
+        Response response = RESOURCES.target("/storage/").queryParam("recursive", true).request()
+                .header(HttpHeaders.ACCEPT, "application/x-ndjson")
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("application/x-ndjson", response.getMediaType().toString());
+        String[] lines = response.readEntity(String.class).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(new KeyData(dogPair), MAPPER.readValue(lines[0], KeyData.class));
+        assertEquals(new KeyData(bookPair), MAPPER.readValue(lines[1], KeyData.class));
+    }
+
+    @Test
+    public void testListWithSameTagIsNotModified() {
+        StoreInfo horseInfo = DATA.get("horse").get();
+        when(storage.getListForRef(any(), any())).thenReturn(CompletableFuture.completedFuture(List.of(Pair.of("horse", horseInfo))));
+        Response response = RESOURCES.target("/storage/").request().header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON).get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        EntityTag tag = response.getEntityTag();
+        assertTrue(tag.isWeak());
+        response.close();
+        response = RESOURCES.target("/storage/").request().header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, tag.toString()).get();
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response.close();
+        response = RESOURCES.target("/storage/").queryParam("light", true).request().header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, tag.toString()).get();
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
     @Test
     public void testEmptyList() {
         when(storage.getListForRef(any(), any())).thenReturn(CompletableFuture.completedFuture(List.of()));
@@ -0,0 +1,128 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.validation.Validation;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
+import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.auth.AuthDynamicFeature;
+import io.dropwizard.auth.AuthValueFactoryProvider;
+import io.dropwizard.auth.basic.BasicCredentialAuthFilter;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import io.dropwizard.testing.junit5.ResourceExtension;
+import io.jitstatic.JitStaticConstants;
+import io.jitstatic.MetaData;
+import io.jitstatic.auth.ConfiguratedAuthenticator;
+import io.jitstatic.auth.KeyAdminAuthenticatorImpl;
+import io.jitstatic.auth.User;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.storage.HashService;
+import io.jitstatic.storage.Storage;
+import io.jitstatic.utils.Pair;
+import io.jitstatic.utils.VirtualThreadExecutor;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class KeyResourceVirtualThreadsTest {
+
+    private static final String REFS_HEADS_MASTER = "refs/heads/master";
+    private static final ExecutorService EXECUTOR = new VirtualThreadExecutor(Executors.newSingleThreadExecutor());
+    private final HashService hashService = new HashService();
+    private final Storage storage = mock(Storage.class);
+
+    public ResourceExtension RESOURCES = ResourceExtension.builder().setTestContainerFactory(new GrizzlyWebTestContainerFactory())
+            .addProvider(new AuthDynamicFeature(new BasicCredentialAuthFilter.Builder<User>().setAuthenticator(new ConfiguratedAuthenticator())
+                    .setRealm(JitStaticConstants.JITSTATIC_KEYADMIN_REALM).setAuthorizer((User u, String r) -> true).buildAuthFilter()))
+            .addProvider(RolesAllowedDynamicFeature.class).addProvider(new AuthValueFactoryProvider.Binder<>(User.class))
+            .addProvider(new AbstractBinder() {
+                @Override
+                protected void configure() {
+                    bind(EXECUTOR).to(ExecutorService.class).ranked(1);
+                }
+            })
+            .addResource(new KeyResource(storage, new KeyAdminAuthenticatorImpl(storage, (user, ref) -> false, REFS_HEADS_MASTER, hashService), false,
+                    REFS_HEADS_MASTER, new ObjectMapper(), Validation.buildDefaultValidatorFactory().getValidator(), hashService))
+            .build();
+
+    @AfterAll
+    public static void tearDown() {
+        EXECUTOR.shutdown();
+    }
+
+    @Test
+    public void testGetKeyIsHandledBlocking() {
+        final byte[] horse = "{\"food\":[\"wheat\",\"grass\"]}".getBytes(StandardCharsets.UTF_8);
+        final StoreInfo storeInfo = new StoreInfo(toProvider(horse), new MetaData(new HashSet<>(), null, false, false, List.of(), null, null), "1", "1");
+        when(storage.getKeySync("horse", REFS_HEADS_MASTER)).thenReturn(Optional.of(storeInfo));
+        assertEquals("{\"food\":[\"wheat\",\"grass\"]}", RESOURCES.target("/storage/horse").request().get(String.class));
+        verify(storage, never()).getKey("horse", REFS_HEADS_MASTER);
+    }
+
+    @Test
+    public void testMissingKeyIsNotFound() {
+        when(storage.getKeySync("cat", REFS_HEADS_MASTER)).thenReturn(Optional.empty());
+        final Response response = RESOURCES.target("/storage/cat").request().get();
+        assertEquals(Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void testFailedKeyIsNotFound() {
+        when(storage.getKeySync("cat", REFS_HEADS_MASTER)).thenThrow(new RuntimeException("Test exception"));
+        final Response response = RESOURCES.target("/storage/cat").request().get();
+        assertEquals(Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    @Test
+    public void testEmptyListIsNotFound() {
+        when(storage.getListForRefSync(any(), any())).thenReturn(List.<Pair<String, StoreInfo>>of());
+        final Response response = RESOURCES.target("/storage/").request().accept(MediaType.APPLICATION_JSON).get();
+        assertEquals(Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+        verify(storage, never()).getListForRef(any(), any());
+    }
+}
@@ -132,6 +132,17 @@ public class MetaKeyResourceTest {
         response.close();
     }
 
+    @Test
+    public void testGetAKeyWithIfNoneMatchIsNotModified() {
+        MetaData storageData = new MetaData(new HashSet<>(), null, false, false, List.of(), null, null);
+        Mockito.when(storage.getMetaKey("dog", REFS_HEADS_MASTER)).thenReturn(CompletableFuture.completedFuture(Pair.of(storageData, "metadataversion")));
+        Response response = RESOURCES.target("/metakey/dog").request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"metadataversion\"").get();
+        assertThat(HttpStatus.SC_NOT_MODIFIED, Matchers.is(response.getStatus()));
+        assertThat("metadataversion", Matchers.is(response.getEntityTag().getValue()));
+        response.close();
+    }
+
     @Test
     public void testModifyAKeyWithoutuser() {
         MetaData storageData = new MetaData(new HashSet<>(), null, false, false, List.of(), null, null);
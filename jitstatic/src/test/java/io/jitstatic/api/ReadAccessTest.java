@@ -0,0 +1,95 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import io.jitstatic.JitStaticConstants;
+import io.jitstatic.MetaData;
+import io.jitstatic.Role;
+import io.jitstatic.auth.KeyAdminAuthenticator;
+import io.jitstatic.auth.User;
+import io.jitstatic.auth.UserData;
+import io.jitstatic.storage.HashService;
+import io.jitstatic.storage.Storage;
+
+class ReadAccessTest {
+
+    private static final String REF = "refs/heads/master";
+    private final Storage storage = mock(Storage.class);
+    private final HashService hashService = new HashService();
+    private final KeyAdminAuthenticator keyAdminAuthenticator = mock(KeyAdminAuthenticator.class);
+
+    @Test
+    void testOpenKeysAreReadByAnyone() {
+        ReadAccess readAccess = new ReadAccess(storage, hashService, keyAdminAuthenticator, Optional.empty());
+        assertTrue(readAccess.isAllowed(new MetaData(Set.of()), REF));
+        assertFalse(readAccess.isAllowed(new MetaData(Set.of(new User("user", "pass"))), REF));
+    }
+
+    @Test
+    void testKeyUserIsLookedUpOncePerRef() throws RefNotFoundException {
+        User user = new User("keyuser", "pass");
+        UserData userData = hashService.constructUserData(Set.of(new Role("read")), "pass");
+        when(storage.getUser(eq("keyuser"), eq(REF), eq(JitStaticConstants.JITSTATIC_KEYUSER_REALM))).thenReturn(userData);
+        ReadAccess readAccess = new ReadAccess(storage, hashService, keyAdminAuthenticator, Optional.of(user));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(readAccess.isAllowed(new MetaData(Set.of(new Role("read")), Set.of()), REF));
+        }
+        assertFalse(readAccess.isAllowed(new MetaData(Set.of(new Role("other")), Set.of()), REF));
+        verify(storage, times(1)).getUser(any(), any(), any());
+        verify(keyAdminAuthenticator, times(1)).authenticate(eq(user), eq(REF));
+    }
+
+    @Test
+    void testWrongPasswordGivesNoRoles() throws RefNotFoundException {
+        User user = new User("keyuser", "wrong");
+        UserData userData = hashService.constructUserData(Set.of(new Role("read")), "pass");
+        when(storage.getUser(eq("keyuser"), eq(REF), eq(JitStaticConstants.JITSTATIC_KEYUSER_REALM))).thenReturn(userData);
+        ReadAccess readAccess = new ReadAccess(storage, hashService, keyAdminAuthenticator, Optional.of(user));
+        assertFalse(readAccess.isAllowed(new MetaData(Set.of(new Role("read")), Set.of()), REF));
+    }
+
+    @Test
+    void testNamedUserAndKeyAdmin() throws RefNotFoundException {
+        User user = new User("user", "pass");
+        when(keyAdminAuthenticator.authenticate(eq(user), eq("refs/heads/admin"))).thenReturn(true);
+        ReadAccess readAccess = new ReadAccess(storage, hashService, keyAdminAuthenticator, Optional.of(user));
+        assertTrue(readAccess.isAllowed(new MetaData(Set.of(user)), REF));
+        verify(storage, never()).getUser(any(), any(), any());
+        assertTrue(readAccess.isAllowed(new MetaData(Set.of(new Role("read")), Set.of()), "refs/heads/admin"));
+        assertFalse(readAccess.isAllowed(new MetaData(Set.of(new Role("read")), Set.of()), REF));
+    }
+}
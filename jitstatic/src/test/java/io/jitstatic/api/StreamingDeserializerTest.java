@@ -38,6 +38,7 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.Set;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.DeferredFileOutputStream;
@@ -101,6 +102,29 @@ public class StreamingDeserializerTest {
         assertEquals(286_001 * 35, deserialized.getSize());
     }
 
+    @Test
+    public void testSpilledObjectIsMappedAndFileReleased() throws IOException {
+        File workingDirectory = folder.createTemporaryDirectory();
+        String text = "the brown fox jumped over the fence";
+        InputStream stream = new FeedingInputStream(1_000, get(text));
+        JsonParser parser = mapper.getFactory().createParser(stream);
+        DeserializationContext ctxt = mapper.getDeserializationContext();
+        parser.nextToken();
+        parser.nextToken();
+        parser.nextToken();
+        ds = new StreamingDeserializer(100, workingDirectory);
+        ObjectStreamProvider deserialized = ds.deserialize(parser, ctxt);
+        try (Stream<Path> files = Files.list(workingDirectory.toPath())) {
+            assertEquals(0, files.count());
+        }
+        for (int i = 0; i < 2; i++) {
+            try (InputStream is = deserialized.getInputStream();) {
+                assertTrue(IOUtils.contentEquals(new GeneratingInputStream(1_000, get(text)), is));
+            }
+        }
+        assertEquals(1_001 * 35, deserialized.getSize());
+    }
+
     @Test
     public void testMountSerializerOnNotWritableFolder() throws IOException {
         File tmpDir = folder.createTemporaryDirectory();
@@ -29,19 +29,27 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterRegistration;
+
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import com.codahale.metrics.MetricRegistry;
+
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
 import io.dropwizard.jersey.setup.JerseyEnvironment;
+import io.dropwizard.jetty.setup.ServletEnvironment;
 import io.dropwizard.setup.Environment;
 import io.jitstatic.JitStaticConstants;
+import io.jitstatic.api.AnonymousReadFilter;
 import io.jitstatic.hosted.events.ReloadRefEventListener;
 import io.jitstatic.source.Source;
 
@@ -66,6 +74,22 @@ public class StorageFactoryTest {
         verify(jersey).register(isA(AuthValueFactoryProvider.Binder.class));
     }
 
+    @Test
+    public void testAnonymousReadFilterIsMountedUnderJersey() {
+        ServletEnvironment servlets = mock(ServletEnvironment.class);
+        FilterRegistration.Dynamic filter = mock(FilterRegistration.Dynamic.class);
+        when(env.jersey()).thenReturn(jersey);
+        when(env.servlets()).thenReturn(servlets);
+        when(env.metrics()).thenReturn(new MetricRegistry());
+        when(jersey.getUrlPattern()).thenReturn("/api/*");
+        when(source.getDefaultRef()).thenReturn("refs/heads/master");
+        when(servlets.addFilter(Mockito.eq("AnonymousRead"), isA(AnonymousReadFilter.class))).thenReturn(filter);
+        sf.setAnonymousReadFilter(true);
+        try (Storage storage = sf.build(source, env, JitStaticConstants.JITSTATIC_KEYADMIN_REALM, hashService, "root", clusterService);) {
+            verify(filter).addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/api/storage/*");
+        }
+    }
+
     @Test
     public void testEmptyStoragePath() {
         when(env.jersey()).thenReturn(jersey);
@@ -0,0 +1,72 @@
+package io.jitstatic;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.jitstatic.auth.User;
+
+/*
+ * A key's access rule compiled to the named users and a bit set of its roles, so checking a user is a set lookup and a bit set intersection.
+ * Role names are given their bit the first time they're seen.
+ */
+public class AccessRule {
+
+    private static final Map<String, Integer> ROLE_BITS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_BIT = new AtomicInteger();
+    private final Set<User> users;
+    private final BitSet roles;
+
+    private AccessRule(final Set<User> users, final BitSet roles) {
+        this.users = users;
+        this.roles = roles;
+    }
+
+    public static AccessRule of(final Set<User> users, final Set<Role> roles) {
+        return new AccessRule(users == null ? Set.of() : users, toBits(roles));
+    }
+
+    public static BitSet toBits(final Set<Role> roles) {
+        final BitSet bits = new BitSet();
+        if (roles != null) {
+            for (Role role : roles) {
+                bits.set(ROLE_BITS.computeIfAbsent(role.getRole(), r -> NEXT_BIT.getAndIncrement()));
+            }
+        }
+        return bits;
+    }
+
+    public boolean isOpen() {
+        return users.isEmpty() && roles.isEmpty();
+    }
+
+    public boolean hasUser(final User user) {
+        return users.contains(user);
+    }
+
+    public boolean hasAnyRole(final BitSet userRoles) {
+        return roles.intersects(userRoles);
+    }
+}
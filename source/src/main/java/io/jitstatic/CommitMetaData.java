@@ -22,7 +22,10 @@ import java.time.Instant;
  * #L%
  */
 
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class CommitMetaData {
     private final String userInfo;
@@ -41,6 +44,23 @@ public class CommitMetaData {
         this.timeStamp = Instant.now();
     }
 
+    public static CommitMetaData combine(final List<CommitMetaData> commitMetaDatas) {
+        if (Objects.requireNonNull(commitMetaDatas).isEmpty()) {
+            throw new IllegalArgumentException("No commit data");
+        }
+        final CommitMetaData first = commitMetaDatas.get(0);
+        if (commitMetaDatas.size() == 1) {
+            return first;
+        }
+        return new CommitMetaData(join(commitMetaDatas, CommitMetaData::getUserInfo, ", "), first.getUserMail(),
+                join(commitMetaDatas, CommitMetaData::getMessage, "\n"), join(commitMetaDatas, CommitMetaData::getProxyUser, ", "),
+                first.getProxyUserMail());
+    }
+
+    private static String join(final List<CommitMetaData> commitMetaDatas, final Function<CommitMetaData, String> field, final String delimiter) {
+        return commitMetaDatas.stream().map(field).distinct().collect(Collectors.joining(delimiter));
+    }
+
     private static String checkNonNullNotEmpty(final String victim, final String field) {
         if (Objects.requireNonNull(victim, field).isEmpty()) {
             throw new IllegalArgumentException(field + " cannot be empty");
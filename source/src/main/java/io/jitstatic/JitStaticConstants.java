@@ -30,6 +30,7 @@ public class JitStaticConstants {
     public static final String REFS_JITSTATIC = Constants.R_REFS + "jitstatic/";
     public static final String APPLICATION_JSON = "application/json";
     public static final String METADATA = ".metadata";
+    public static final int DEFAULT_THRESHOLD = 1_000_000;
     public static final String GIT_REALM = "git";
     public static final String JITSTATIC_KEYADMIN_REALM = "keyadmin";
     public static final String JITSTATIC_KEYUSER_REALM = "keyuser";
@@ -32,6 +32,7 @@ import javax.validation.constraints.NotNull;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -53,6 +54,7 @@ public class MetaData {
     private final Set<Role> read;
     @Valid
     private final Set<Role> write;
+    private volatile AccessRule readAccess;
 
     @JsonCreator
     public MetaData(final @JsonProperty("users") Set<User> users, final @JsonProperty("contentType") String contentType,
@@ -121,4 +123,14 @@ public class MetaData {
     public Set<Role> getWrite() {
         return write;
     }
+
+    @JsonIgnore
+    public final AccessRule getReadAccess() {
+        AccessRule rule = readAccess;
+        if (rule == null) {
+            rule = AccessRule.of(users, read);
+            readAccess = rule;
+        }
+        return rule;
+    }
 }
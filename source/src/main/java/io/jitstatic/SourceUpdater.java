@@ -65,6 +65,16 @@ public class SourceUpdater {
         return Pair.of(updatedKeyEntry.getRight().name(), getObjectLoaderFactory(updatedKeyEntry));
     }
 
+    public List<Pair<String, ThrowingSupplier<ObjectLoader, IOException>>> modifyKeys(final List<Pair<String, ObjectStreamProvider>> keys,
+            final CommitMetaData commitMetaData, final String ref) throws IOException {
+        if (Objects.requireNonNull(keys).isEmpty()) {
+            throw new IllegalArgumentException("No entry data");
+        }
+        return repositoryUpdater.buildDirCache(commitMetaData, keys, ref).stream()
+                .map(entry -> Pair.of(entry.getRight().name(), getObjectLoaderFactory(entry)))
+                .collect(Collectors.toList());
+    }
+
     private ThrowingSupplier<ObjectLoader, IOException> getObjectLoaderFactory(final Pair<String, ObjectId> updatedKeyEntry) {
         final Repository repository = repositoryUpdater.getRepository();
         final ObjectId objectId = updatedKeyEntry.getRight();
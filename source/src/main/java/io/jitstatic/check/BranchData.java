@@ -29,7 +29,7 @@ import java.util.stream.Stream;
 
 import io.jitstatic.JitStaticConstants;
 import io.jitstatic.utils.Pair;
-import io.jitstatic.utils.Path;
+import io.jitstatic.utils.PathCodec;
 
 class BranchData {
 
@@ -63,8 +63,7 @@ class BranchData {
             final String key = e.getKey();
             MetaFileData metaFileData = metaFiles.get(key);
             if (metaFileData == null) {
-                final Path path = Path.of(key);
-                metaFileData = metaFiles.get(path.getParentElements() + JitStaticConstants.METADATA);
+                metaFileData = metaFiles.get(PathCodec.sibling(key, JitStaticConstants.METADATA));
             }
             return Pair.of(metaFileData, e.getValue());
         }), metaFiles.entrySet().stream().filter(e -> {
@@ -26,7 +26,7 @@ import java.util.Objects;
 
 import io.jitstatic.JitStaticConstants;
 import io.jitstatic.hosted.InputStreamHolder;
-import io.jitstatic.utils.Path;
+import io.jitstatic.utils.PathCodec;
 
 public class FileData {
 
@@ -70,8 +70,8 @@ public class FileData {
     }
 
     public boolean isMasterMetaData() {
-        final Path meta = Path.of(fileInfo.getFileName());
-        return meta.getLastElement().equals(JitStaticConstants.METADATA);
+        final String name = fileInfo.getFileName();
+        return name.endsWith(JitStaticConstants.METADATA) && PathCodec.lastElementStart(name) == name.length() - JitStaticConstants.METADATA.length();
     }
 
     @Override
@@ -82,7 +82,6 @@ public class SourceChecker {
         final Pair<AnyObjectId, Set<Ref>> revCommit = branchSource.getLeft();
         final List<BranchData> branchData = branchSource.getRight();
         final List<Pair<FileObjectIdStore, Exception>> branchErrors = branchData.stream()
-                .parallel()
                 .map(this::readRepositoryData)
                 .flatMap(List::stream)
                 .filter(Pair::isPresent)
@@ -92,7 +91,7 @@ public class SourceChecker {
 
     public List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> check() {
         final Map<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> sources = extractor.extractAll();
-        return sources.entrySet().parallelStream()
+        return sources.entrySet().stream()
                 .map(Pair::new)
                 .map(this::checkBranch)
                 .filter(l -> !l.isEmpty())
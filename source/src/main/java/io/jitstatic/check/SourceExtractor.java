@@ -20,6 +20,7 @@ package io.jitstatic.check;
  * #L%
  */
 
+import static io.jitstatic.JitStaticConstants.DEFAULT_THRESHOLD;
 import static io.jitstatic.JitStaticConstants.METADATA;
 import static io.jitstatic.JitStaticConstants.REFS_JITSTATIC;
 import static io.jitstatic.JitStaticConstants.USERS;
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -62,15 +64,21 @@ import io.jitstatic.hosted.InputStreamHolder;
 import io.jitstatic.source.SourceInfo;
 import io.jitstatic.utils.Functions.ThrowingSupplier;
 import io.jitstatic.utils.Pair;
-import io.jitstatic.utils.Path;
+import io.jitstatic.utils.PathCodec;
 
 public class SourceExtractor {
 
     private static final int METADATA_LENGTH = METADATA.length();
     private final Repository repository;
+    private final int threshold;
 
     public SourceExtractor(final Repository repository) {
+        this(repository, DEFAULT_THRESHOLD);
+    }
+
+    public SourceExtractor(final Repository repository, final int threshold) {
         this.repository = Objects.requireNonNull(repository);
+        this.threshold = threshold;
     }
 
     public SourceInfo openTag(final String tagName, final String key) throws RefNotFoundException, IOException {
@@ -87,12 +95,58 @@ public class SourceExtractor {
         return sourceExtractor(branchName, key);
     }
 
+    /*
+     * Reads the key as it was in the given commit, regardless of where the ref it belonged to points now.
+     */
+    public SourceInfo openCommit(final String commitId, final String key) throws IOException {
+        return sourceExtractor(Pair.of(ObjectId.fromString(Objects.requireNonNull(commitId)), Set.of()), key);
+    }
+
+    /*
+     * The time of the newest commit, reachable from the given one, that changed the key, its .metadata or the .metadata of a directory above
+     * it. For a directory key only its .metadata counts. 0 if there's none.
+     */
+    public long lastModified(final String commitId, final String key) throws IOException {
+        try (final RevWalk rev = new RevWalk(repository)) {
+            rev.setTreeFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(lastModifiedPaths(key)), TreeFilter.ANY_DIFF));
+            rev.markStart(rev.parseCommit(ObjectId.fromString(Objects.requireNonNull(commitId))));
+            final RevCommit commit = rev.next();
+            return commit == null ? 0 : TimeUnit.SECONDS.toMillis(commit.getCommitTime());
+        }
+    }
+
+    private static List<String> lastModifiedPaths(final String key) {
+        if (key.endsWith("/")) {
+            return List.of(key + METADATA);
+        }
+        final List<String> paths = new ArrayList<>();
+        paths.add(key);
+        paths.add(key + METADATA);
+        for (int slash = key.lastIndexOf('/'); slash >= 0; slash = key.lastIndexOf('/', slash - 1)) {
+            paths.add(key.substring(0, slash + 1) + METADATA);
+        }
+        paths.add(METADATA);
+        return paths;
+    }
+
+    public String getTip(final String refName) throws RefNotFoundException, IOException {
+        final ObjectId tip = findBranch(refName).getObjectId();
+        if (tip == null || ObjectId.zeroId().equals(tip)) {
+            return null;
+        }
+        return tip.name();
+    }
+
     private SourceInfo sourceExtractor(final String refName, final String key) throws RefNotFoundException, IOException {
         final Ref branchRef = findBranch(refName);
         if (ObjectId.zeroId().equals(branchRef.getObjectId())) {
             return null;
         }
-        final Pair<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> source = fileLoader(Pair.of(branchRef.getObjectId(), Set.of(branchRef)), key);
+        return sourceExtractor(Pair.of(branchRef.getObjectId(), Set.of(branchRef)), key);
+    }
+
+    private SourceInfo sourceExtractor(final Pair<AnyObjectId, Set<Ref>> referencePoint, final String key) throws IOException {
+        final Pair<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> source = fileLoader(referencePoint, key);
         final List<BranchData> sourceInfo = source.getRight();
         final BranchData repositoryData = sourceInfo.get(0);        
         if (repositoryData.getFileDataError() != null) {
@@ -100,10 +154,10 @@ public class SourceExtractor {
         }
         final Pair<MetaFileData, SourceFileData> pair = repositoryData.getFirstPair();
         if (pair.isPresent()) {
-            return new SourceInfo(pair.getLeft(), pair.getRight());
+            return new SourceInfo(pair.getLeft(), pair.getRight(), threshold);
         }
         if (pair.getLeft() != null && pair.getLeft().isMasterMetaData()) {
-            return new SourceInfo(pair.getLeft(), null);
+            return new SourceInfo(pair.getLeft(), null, threshold);
         }
         return null;
     }
@@ -153,6 +207,7 @@ public class SourceExtractor {
         final Map<String, MetaFileData> metaFiles = new HashMap<>();
         final Map<String, SourceFileData> dataFiles = new HashMap<>();
         RepositoryDataError error = null;
+        final byte[] keyPath = key == null ? null : key.getBytes(UTF_8);
         try (final TreeWalk treeWalker = new TreeWalk(repository)) {
             treeWalker.addTree(tree);
             if (key != null) {
@@ -164,7 +219,7 @@ public class SourceExtractor {
             }
             while (treeWalker.next()) {
                 if (treeWalker.isSubtree()) {
-                    if (key != null && isDirectoryOf(key, treeWalker.getRawPath())) {
+                    if (keyPath != null && PathCodec.isDirectoryOf(treeWalker.getRawPath(), treeWalker.getPathLength(), keyPath)) {
                         treeWalker.enterSubtree();
                     }
                 } else {
@@ -184,17 +239,13 @@ public class SourceExtractor {
         return new BranchData(metaFiles, dataFiles, error);
     }
 
-    private boolean isDirectoryOf(final String key, final byte[] rawPath) {
-        return key.startsWith(new String(rawPath, UTF_8) + "/");
-    }
-
     private void arrangeKeys(final Map<String, MetaFileData> metaFiles, final Map<String, SourceFileData> dataFiles, final String path,
             final InputStreamHolder inputStreamHolder, final FileObjectIdStore fileObjectIdStore) {
-        final Path p = Path.of(path);
-        final String lastElement = p.getLastElement();
-        if (lastElement.equals(METADATA) || !lastElement.startsWith(".")) {
+        final int lastElement = PathCodec.lastElementStart(path);
+        final boolean isMasterMetaData = path.length() - lastElement == METADATA_LENGTH && path.endsWith(METADATA);
+        if (isMasterMetaData || !path.startsWith(".", lastElement)) {
             if (path.endsWith(METADATA)) {
-                if (lastElement.equals(METADATA)) {
+                if (isMasterMetaData) {
                     metaFiles.put(path, new MetaFileData(fileObjectIdStore, inputStreamHolder));
                 } else {
                     metaFiles.put(path.substring(0, path.length() - METADATA_LENGTH), new MetaFileData(fileObjectIdStore, inputStreamHolder, true));
@@ -206,16 +257,16 @@ public class SourceExtractor {
     }
 
     private TreeFilter getTreeFilter(final String key) {
-        final Path path = Path.of(key);
-        final TreeFilter pfg = (path.isDirectory() ? PathFilterGroup.createFromStrings(key + METADATA)
-                : PathFilterGroup.createFromStrings(key, key + METADATA, path.getParentElements() + METADATA));
+        final TreeFilter pfg = (PathCodec.isDirectory(key) ? PathFilterGroup.createFromStrings(key + METADATA)
+                : PathFilterGroup.createFromStrings(key, key + METADATA, PathCodec.sibling(key, METADATA)));
         return AndTreeFilter.create(pfg, NotTreeFilter.create(PathFilter.create(USERS)));
     }
 
     private InputStreamHolder getInputStreamFor(final ObjectId objectId) {
         try {            
-            final ThrowingSupplier<ObjectLoader, IOException> loaderFactory = () -> repository.open(objectId);
-            loaderFactory.get(); // Test for existence
+            final ObjectLoader loader = repository.open(objectId); // Test for existence
+            /* Large loaders stream from the pack and can be reused, small ones would keep the inflated bytes */
+            final ThrowingSupplier<ObjectLoader, IOException> loaderFactory = loader.isLarge() ? () -> loader : () -> repository.open(objectId);
             return new InputStreamHolder(loaderFactory);
         } catch (final IOException e) {
             return new InputStreamHolder(e);
@@ -242,8 +293,17 @@ public class SourceExtractor {
     }
 
     public List<String> getListForKey(final String key, final String ref, boolean recursive) throws RefNotFoundException, IOException {
-        final Ref findBranch = findBranch(ref);
-        final AnyObjectId reference = findBranch.getObjectId();
+        return getListForKey(key, findBranch(ref).getObjectId(), recursive);
+    }
+
+    /*
+     * Lists the keys as they were in the given commit, regardless of where the ref it belonged to points now.
+     */
+    public List<String> getListForCommit(final String key, final String commitId, boolean recursive) throws IOException {
+        return getListForKey(key, ObjectId.fromString(Objects.requireNonNull(commitId)), recursive);
+    }
+
+    private List<String> getListForKey(final String key, final AnyObjectId reference, boolean recursive) throws IOException {
         final List<String> keys;
         try (final RevWalk rev = new RevWalk(repository)) {
             final RevCommit parsedCommit = rev.parseCommit(reference);
@@ -22,6 +22,7 @@ import static io.jitstatic.JitStaticConstants.JITSTATIC_NOWHERE;
  * #L%
  */
 
+import static io.jitstatic.JitStaticConstants.DEFAULT_THRESHOLD;
 import static io.jitstatic.JitStaticConstants.METADATA;
 import static org.eclipse.jgit.lib.Constants.R_HEADS;
 import static org.eclipse.jgit.lib.Constants.R_TAGS;
@@ -42,6 +43,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 
 import org.eclipse.jgit.api.Git;
@@ -95,10 +97,24 @@ public class HostedGitRepositoryManager implements Source {
     private final UserExtractor userExtractor;
     private final UserUpdater userUpdater;
     private final ExecutorService uploadPackExecutor;
+    private final boolean ownsUploadPackExecutor;
     private final RepoInserter repoInserter;
 
     HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter, final ErrorReporter errorReporter)
             throws CorruptedSourceException, IOException {
+        this(workingDirectory, endPointName, defaultRef, repoWriter, errorReporter, DEFAULT_THRESHOLD);
+    }
+
+    HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter, final ErrorReporter errorReporter,
+            final int threshold) throws CorruptedSourceException, IOException {
+        this(workingDirectory, endPointName, defaultRef, repoWriter, errorReporter, threshold, null, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter, final ErrorReporter errorReporter,
+            final int threshold, @Nullable final ExecutorService packExecutor, final int packThreads) throws CorruptedSourceException, IOException {
+        if (packThreads < 1) {
+            throw new IllegalArgumentException("packThreads must be at least 1, was " + packThreads);
+        }
         if (!Files.isDirectory(Objects.requireNonNull(workingDirectory))) {
             if (Files.isRegularFile(workingDirectory)) {
                 throw new IllegalArgumentException(String.format("Path %s is a file", workingDirectory));
@@ -138,13 +154,14 @@ public class HostedGitRepositoryManager implements Source {
         if (!errors.isEmpty()) {
             throw new CorruptedSourceException(errors);
         }
-        this.uploadPackExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        this.ownsUploadPackExecutor = packExecutor == null;
+        this.uploadPackExecutor = ownsUploadPackExecutor ? Executors.newFixedThreadPool(packThreads) : packExecutor;
         checkIfDefaultBranchExist(defaultRef);
         final RepositoryUpdater repositoryUpdater = new RepositoryUpdater(bareRepository);
-        this.extractor = new SourceExtractor(bareRepository);
+        this.extractor = new SourceExtractor(bareRepository, threshold);
         this.updater = new SourceUpdater(repositoryUpdater);
         this.refLockHolderManager = new RefLockHolderManager();
-        this.repoInserter = new RepoInserter(bareRepository);
+        this.repoInserter = new RepoInserter(bareRepository, uploadPackExecutor, packThreads);
         this.receivePackFactory = new JitStaticReceivePackFactory(errorReporter, defaultRef, refLockHolderManager, userExtractor, repoInserter, repoWriter);
         this.uploadPackFactory = new JitStaticUploadPackFactory(uploadPackExecutor, refLockHolderManager, defaultRef);
         this.defaultRef = defaultRef;
@@ -157,6 +174,19 @@ public class HostedGitRepositoryManager implements Source {
         this(workingDirectory, endPointName, defaultRef, repoWriter, ErrorReporter.INSTANCE);
     }
 
+    public HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter,
+            final int threshold) throws CorruptedSourceException, IOException {
+        this(workingDirectory, endPointName, defaultRef, repoWriter, ErrorReporter.INSTANCE, threshold);
+    }
+
+    /*
+     * Upload packs and pack delta search run on the given executor, which the caller owns and shuts down.
+     */
+    public HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter,
+            final int threshold, final ExecutorService packExecutor, final int packThreads) throws CorruptedSourceException, IOException {
+        this(workingDirectory, endPointName, defaultRef, repoWriter, ErrorReporter.INSTANCE, threshold, Objects.requireNonNull(packExecutor), packThreads);
+    }
+
     private static List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> checkForUserErrors(UserExtractor userExtractor) {
         return userExtractor.validateAll().stream()
                 .map(p -> Pair.of(p.getLeft(), p.getRight().stream()
@@ -198,11 +228,13 @@ public class HostedGitRepositoryManager implements Source {
 
     @Override
     public void close() {
-        try {
-            this.uploadPackExecutor.shutdown();
-            this.uploadPackExecutor.awaitTermination(60, TimeUnit.SECONDS);
-        } catch (InterruptedException ignore) {
-            Thread.currentThread().interrupt();
+        if (ownsUploadPackExecutor) {
+            try {
+                this.uploadPackExecutor.shutdown();
+                this.uploadPackExecutor.awaitTermination(60, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
         }
         try {
             this.bareRepository.close();
@@ -269,6 +301,45 @@ public class HostedGitRepositoryManager implements Source {
         throw new RefNotFoundException(ref);
     }
 
+    @Override
+    public SourceInfo getSourceInfo(String key, String ref, final String commitId) throws RefNotFoundException {
+        if (commitId == null) {
+            return getSourceInfo(key, ref);
+        }
+        ref = checkRef(ref);
+        key = checkKeyFormat(Objects.requireNonNull(key));
+        if (!ref.startsWith(R_HEADS) && !ref.startsWith(R_TAGS)) {
+            throw new RefNotFoundException(ref);
+        }
+        try {
+            return extractor.openCommit(commitId, key);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public long getLastModified(String key, String ref, final String commitId) throws RefNotFoundException {
+        ref = checkRef(ref);
+        key = checkKeyFormat(Objects.requireNonNull(key));
+        try {
+            final String from = commitId == null ? extractor.getTip(ref) : commitId;
+            return from == null ? 0 : extractor.lastModified(from, key);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getTip(String ref) throws RefNotFoundException {
+        ref = checkRef(ref);
+        try {
+            return extractor.getTip(ref);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private String checkKeyFormat(String key) {
         if (key.isEmpty()) {
             throw new IllegalArgumentException("Key is empty");
@@ -294,6 +365,19 @@ public class HostedGitRepositoryManager implements Source {
         }
     }
 
+    @Override
+    public List<Pair<String, ThrowingSupplier<ObjectLoader, IOException>>> modifyKeys(final List<Pair<String, ObjectStreamProvider>> keys, String ref,
+            final CommitMetaData commitMetaData) {
+        Objects.requireNonNull(keys);
+        Objects.requireNonNull(commitMetaData);
+        checkIfTag(checkRef(ref));
+        try {
+            return updater.modifyKeys(keys, commitMetaData, ref);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private String checkRef(String ref) {
         if (ref == null) {
             ref = defaultRef;
@@ -397,6 +481,18 @@ public class HostedGitRepositoryManager implements Source {
         return extractor.getListForKey(key, ref, recursive).stream().filter(Predicate.not(k -> k.endsWith(METADATA))).collect(Collectors.toList());
     }
 
+    @Override
+    public List<String> getList(final String key, final String ref, final String commitId, final boolean recursive) throws RefNotFoundException, IOException {
+        if (commitId == null) {
+            return getList(key, ref, recursive);
+        }
+        Objects.requireNonNull(key);
+        if (!key.endsWith("/")) {
+            throw new IllegalArgumentException(String.format("%s doesn't end with /", key));
+        }
+        return extractor.getListForCommit(key, commitId, recursive).stream().filter(Predicate.not(k -> k.endsWith(METADATA))).collect(Collectors.toList());
+    }
+
     @Override
     public Pair<String, UserData> getUser(final String userKey, final String ref) throws IOException, RefNotFoundException {
         return userExtractor.extractUserFromRef(userKey, checkRef(ref));
@@ -420,7 +516,7 @@ public class HostedGitRepositoryManager implements Source {
     @Override
     public void readAllRefs() throws IOException {
         bareRepository.getRefDatabase().getRefs()
-                .parallelStream()
+                .stream()
                 .filter(Predicate.not(Ref::isSymbolic))
                 .map(Ref::getName).forEach(ref -> bareRepository.fireEvent(new AddRefEvent(ref)));
     }
@@ -23,7 +23,9 @@ package io.jitstatic.hosted;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
@@ -36,6 +38,8 @@ import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.BatchRefUpdate;
 import org.eclipse.jgit.lib.NullProgressMonitor;
@@ -49,6 +53,7 @@ import org.eclipse.jgit.transport.ReceiveCommand;
 import org.eclipse.jgit.transport.ReceiveCommand.Result;
 import org.eclipse.jgit.transport.ReceiveCommand.Type;
 import org.eclipse.jgit.transport.ReceivePack;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -303,7 +308,7 @@ public class JitStaticReceivePack extends ReceivePack {
             case UPDATE:
             case UPDATE_NONFASTFORWARD:
                 sendMessage("Reloading " + refName);
-                getRepository().fireEvent(new ReloadRefEvent(refName));
+                getRepository().fireEvent(new ReloadRefEvent(refName, e == null ? getChanges(orig.getOldId(), orig.getNewId()) : null));
                 break;
             default:
                 break;
@@ -314,6 +319,38 @@ public class JitStaticReceivePack extends ReceivePack {
         }).join();
     }
 
+    /*
+     * A rename is split into a delete of the old path and an add of the new one, so every path in the map exists or is gone after the push
+     * as its change type says.
+     */
+    @Nullable
+    private Map<String, ChangeType> getChanges(final ObjectId oldId, final ObjectId newId) {
+        try (RevWalk rw = new RevWalk(getRepository()); TreeWalk tw = new TreeWalk(getRepository())) {
+            tw.setRecursive(true);
+            tw.addTree(rw.parseCommit(oldId).getTree());
+            tw.addTree(rw.parseCommit(newId).getTree());
+            final Map<String, ChangeType> changes = new HashMap<>();
+            for (DiffEntry diff : DiffEntry.scan(tw)) {
+                switch (diff.getChangeType()) {
+                case DELETE:
+                    changes.put(diff.getOldPath(), ChangeType.DELETE);
+                    break;
+                case RENAME:
+                    changes.put(diff.getOldPath(), ChangeType.DELETE);
+                    changes.put(diff.getNewPath(), ChangeType.ADD);
+                    break;
+                default:
+                    changes.put(diff.getNewPath(), diff.getChangeType());
+                    break;
+                }
+            }
+            return changes;
+        } catch (final IOException e) {
+            LOG.warn("Couldn't diff {} against {}, reloading everything", oldId.name(), newId.name(), e);
+            return null;
+        }
+    }
+
     @Nullable
     private Exception tryCommit(final Repository repository, final String refName, final ReceiveCommand orig, final ReceiveCommand test) {
         try {
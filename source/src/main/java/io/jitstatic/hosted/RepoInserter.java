@@ -23,7 +23,9 @@ package io.jitstatic.hosted;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.zip.Deflater;
 
@@ -50,11 +52,17 @@ public class RepoInserter {
     private final PackConfig pc;
 
     public RepoInserter(final Repository repository) {
+        this(repository, ForkJoinPool.commonPool(), ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /*
+     * Delta search when packing runs on the given executor instead of the common pool.
+     */
+    public RepoInserter(final Repository repository, final ExecutorService packExecutor, final int packThreads) {
         this.repository = repository;
         pc = new PackConfig(repository);
-        ForkJoinPool commonPool = ForkJoinPool.commonPool();
-        pc.setExecutor(commonPool);
-        pc.setThreads(commonPool.getParallelism());
+        pc.setExecutor(Objects.requireNonNull(packExecutor));
+        pc.setThreads(packThreads);
         pc.setCompressionLevel(Deflater.BEST_SPEED);
     }
 
@@ -22,6 +22,9 @@ package io.jitstatic.hosted;
  */
 
 import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nullable;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.jitstatic.MetaData;
@@ -33,20 +36,40 @@ public class StoreInfo {
     private final String version;
     private final ObjectStreamProvider source;
     private final String metaDataVersion;
+    private volatile long lastModified;
+    private volatile boolean lastModifiedKnown;
+    private LongSupplier lastModifiedLookup;
 
     public StoreInfo(final MetaData metaData, final String metaDataVersion) {
-        this(null, null, metaData, null, metaDataVersion);
+        this(null, null, metaData, null, metaDataVersion, 0, null);
     }
 
-    private StoreInfo(final byte[] data, final ObjectStreamProvider source, final MetaData metaData, final String sourceVersion, final String metaDataVersion) {
+    private StoreInfo(final byte[] data, final ObjectStreamProvider source, final MetaData metaData, final String sourceVersion, final String metaDataVersion,
+            final long lastModified, @Nullable final LongSupplier lastModifiedLookup) {
         this.source = source;        
         this.metaData = Objects.requireNonNull(metaData);
         this.version = sourceVersion;
         this.metaDataVersion = Objects.requireNonNull(metaDataVersion);
+        this.lastModified = Math.max(0, lastModified);
+        this.lastModifiedKnown = lastModifiedLookup == null;
+        this.lastModifiedLookup = lastModifiedLookup;
     }
 
     public StoreInfo(final ObjectStreamProvider source, final MetaData metaData, final String sourceVersion, final String metaDataVersion) {
-        this(null, source, metaData, sourceVersion, metaDataVersion);
+        this(source, metaData, sourceVersion, metaDataVersion, 0);
+    }
+
+    public StoreInfo(final ObjectStreamProvider source, final MetaData metaData, final String sourceVersion, final String metaDataVersion,
+            final long lastModified) {
+        this(null, source, metaData, sourceVersion, metaDataVersion, lastModified, null);
+    }
+
+    /*
+     * The last modified time is looked up the first time it's asked for, finding it walks the history of the key.
+     */
+    public StoreInfo(final ObjectStreamProvider source, final MetaData metaData, final String sourceVersion, final String metaDataVersion,
+            final LongSupplier lastModifiedLookup) {
+        this(null, source, metaData, sourceVersion, metaDataVersion, 0, Objects.requireNonNull(lastModifiedLookup));
     }
 
     public MetaData getMetaData() {
@@ -67,6 +90,29 @@ public class StoreInfo {
         return source;
     }
 
+    /*
+     * Milliseconds since the epoch of the last commit that changed the key, 0 if it isn't known. Looked up once and then remembered.
+     */
+    public long getLastModified() {
+        if (!lastModifiedKnown) {
+            synchronized (this) {
+                if (!lastModifiedKnown) {
+                    lastModified = Math.max(0, lastModifiedLookup.getAsLong());
+                    lastModifiedLookup = null;
+                    lastModifiedKnown = true;
+                }
+            }
+        }
+        return lastModified;
+    }
+
+    /*
+     * The last modified time if it has been looked up, otherwise 0. Never looks it up.
+     */
+    public long peekLastModified() {
+        return lastModified;
+    }
+
     public boolean isMasterMetaData() {
         return source == null && version == null;
     }
@@ -130,7 +130,7 @@ public class UserExtractor {
                 .map(this::extracted)
                 .map(this::splitIntoRealms)
                 .map(list -> Pair.of(list.getLeft(), list.getRight().entrySet().stream()
-                        .map(e -> Pair.of(e.getKey(), e.getValue().parallelStream()
+                        .map(e -> Pair.of(e.getKey(), e.getValue().stream()
                                 .map(p -> {
                                     final InputStreamHolder inputStream = p.getRight();
                                     if (inputStream.isPresent()) {
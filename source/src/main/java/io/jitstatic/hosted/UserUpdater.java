@@ -54,7 +54,7 @@ public class UserUpdater {
 
     public List<Pair<String, String>> updateUser(final List<Pair<String, UserData>> userData, final CommitMetaData commitMetaData, final String ref)
             throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, UnmergedPathException, IOException {
-        final List<Pair<String, ObjectStreamProvider>> convertedData = userData.stream().parallel().map(p -> {
+        final List<Pair<String, ObjectStreamProvider>> convertedData = userData.stream().map(p -> {
             try {
                 return writeData(p.getLeft(), p.getRight());
             } catch (JsonProcessingException e) {
@@ -20,6 +20,12 @@ package io.jitstatic.hosted.events;
  * #L%
  */
 
+import java.util.Map;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+
 public interface ReloadRef {
     void reload(String ref);
+
+    void reload(String ref, Map<String, ChangeType> changes);
 }
@@ -20,17 +20,26 @@ package io.jitstatic.hosted.events;
  * #L%
  */
 
+import java.util.Map;
 import java.util.Objects;
 
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.events.RepositoryEvent;
 import org.slf4j.LoggerFactory;
 
 public class ReloadRefEvent extends RepositoryEvent<ReloadRefEventListener> {
 
     private final String ref;
+    private final Map<String, ChangeType> changes;
 
     public ReloadRefEvent(final String ref) {
+        this(ref, null);
+    }
+
+    /* A null map of changed paths means that everything should be reloaded */
+    public ReloadRefEvent(final String ref, final Map<String, ChangeType> changes) {
         this.ref = Objects.requireNonNull(ref);
+        this.changes = changes;
     }
 
     @Override
@@ -41,7 +50,11 @@ public class ReloadRefEvent extends RepositoryEvent<ReloadRefEventListener> {
     @Override
     public void dispatch(final ReloadRefEventListener listener) {
         try {
-            listener.onReload(ref);
+            if (changes == null) {
+                listener.onReload(ref);
+            } else {
+                listener.onReload(ref, changes);
+            }
         } catch (Exception e) {
             LoggerFactory.getLogger(getClass()).error("Error while loading storage", e);
         }
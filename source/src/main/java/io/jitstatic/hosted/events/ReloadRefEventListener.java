@@ -20,6 +20,9 @@ package io.jitstatic.hosted.events;
  * #L%
  */
 
+import java.util.Map;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.events.RepositoryListener;
 
 public class ReloadRefEventListener implements RepositoryListener {
@@ -34,4 +37,8 @@ public class ReloadRefEventListener implements RepositoryListener {
         reloader.reload(ref);
     }
 
+    public void onReload(String ref, Map<String, ChangeType> changes) {
+        reloader.reload(ref, changes);
+    }
+
 }
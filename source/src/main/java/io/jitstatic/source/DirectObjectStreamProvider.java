@@ -0,0 +1,133 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+
+/*
+ * Content held in a direct buffer outside the Java heap, so large cached working sets don't add to old generation collections. The buffer
+ * is read only and every reader gets its own view of it. The memory is returned when the provider is no longer reachable, which also covers
+ * responses still writing from it.
+ */
+public class DirectObjectStreamProvider implements ObjectStreamProvider {
+
+    private final ByteBuffer buffer;
+
+    public DirectObjectStreamProvider(final byte[] bs) {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(Objects.requireNonNull(bs).length);
+        direct.put(bs).flip();
+        this.buffer = direct.asReadOnlyBuffer();
+    }
+
+    /* Takes over the content between position and limit, typically a mapped file */
+    public DirectObjectStreamProvider(final ByteBuffer content) {
+        this.buffer = Objects.requireNonNull(content).slice().asReadOnlyBuffer();
+    }
+
+    public static DirectObjectStreamProvider copyOf(final ObjectStreamProvider provider) throws IOException {
+        if (provider instanceof DirectObjectStreamProvider) {
+            return (DirectObjectStreamProvider) provider;
+        }
+        return new DirectObjectStreamProvider(provider.asByteArray());
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new BufferInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public long getSize() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public byte[] asByteArray() {
+        final byte[] data = new byte[buffer.capacity()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+
+    @Override
+    public void writeTo(final OutputStream output) throws IOException {
+        final ByteBuffer view = buffer.duplicate();
+        final WritableByteChannel channel = Channels.newChannel(output);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    @Override
+    public void writeTo(final OutputStream output, final long offset, final long length) throws IOException {
+        ObjectStreamProvider.checkSlice(offset, length, buffer.capacity());
+        final ByteBuffer view = buffer.duplicate();
+        view.position((int) offset).limit((int) (offset + length));
+        final WritableByteChannel channel = Channels.newChannel(output);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer view;
+
+        BufferInputStream(final ByteBuffer view) {
+            this.view = view;
+        }
+
+        @Override
+        public int read() {
+            return view.hasRemaining() ? view.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (!view.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, view.remaining());
+            view.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int skipped = (int) Math.max(0, Math.min(n, view.remaining()));
+            view.position(view.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return view.remaining();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+/*
+ * Content together with its gzip variant, compressed once when the content is cached. Content that doesn't get smaller is left as it is.
+ */
+public class GzipObjectStreamProvider implements ObjectStreamProvider {
+
+    public static final String GZIP = "gzip";
+    private final ObjectStreamProvider content;
+    private final ObjectStreamProvider gzip;
+
+    private GzipObjectStreamProvider(final ObjectStreamProvider content, final ObjectStreamProvider gzip) {
+        this.content = Objects.requireNonNull(content);
+        this.gzip = Objects.requireNonNull(gzip);
+    }
+
+    public static ObjectStreamProvider of(final ObjectStreamProvider content, final boolean offHeap) throws IOException {
+        if (content instanceof GzipObjectStreamProvider || content instanceof LargeObjectStreamProvider) {
+            return content;
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, content.getSize() / 2));
+        try (OutputStream os = new GZIPOutputStream(compressed)) {
+            content.writeTo(os);
+        }
+        if (compressed.size() >= content.getSize()) {
+            return content;
+        }
+        final byte[] bytes = compressed.toByteArray();
+        return new GzipObjectStreamProvider(content, offHeap ? new DirectObjectStreamProvider(bytes) : new SmallObjectStreamProvider(bytes));
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return content.getInputStream();
+    }
+
+    @Override
+    public long getSize() {
+        return content.getSize();
+    }
+
+    @Override
+    public byte[] asByteArray() throws IOException {
+        return content.asByteArray();
+    }
+
+    @Override
+    public void writeTo(final OutputStream output) throws IOException {
+        content.writeTo(output);
+    }
+
+    @Override
+    public void writeTo(final OutputStream output, final long offset, final long length) throws IOException {
+        content.writeTo(output, offset, length);
+    }
+
+    @Override
+    @Nullable
+    public ObjectStreamProvider getEncoded(final String contentEncoding) {
+        return GZIP.equals(contentEncoding) ? gzip : null;
+    }
+
+    @Override
+    public long getRetainedSize() {
+        return content.getSize() + gzip.getSize();
+    }
+}
@@ -22,8 +22,11 @@ package io.jitstatic.source;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
+import java.io.OutputStream;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jgit.lib.ObjectLoader;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.jitstatic.utils.Functions.ThrowingSupplier;
@@ -31,6 +34,7 @@ import io.jitstatic.utils.Functions.ThrowingSupplier;
 @SuppressFBWarnings(value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", justification = "This is a false positive in Java 11, should be removed")
 public class LargeObjectStreamProvider implements ObjectStreamProvider {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
     private final ThrowingSupplier<InputStream, IOException> inputStreamProvider;
     private final long size;
 
@@ -39,6 +43,25 @@ public class LargeObjectStreamProvider implements ObjectStreamProvider {
         this.size = size;
     }
 
+    /*
+     * Opens the object once and streams from the same loader afterwards. Large loaders only point into the pack, small ones hold the inflated
+     * bytes and are opened again instead of being kept.
+     */
+    public static LargeObjectStreamProvider ofLoader(final ThrowingSupplier<ObjectLoader, IOException> loaderFactory, final long size) {
+        Objects.requireNonNull(loaderFactory);
+        final AtomicReference<ObjectLoader> opened = new AtomicReference<>();
+        return new LargeObjectStreamProvider(() -> {
+            ObjectLoader loader = opened.get();
+            if (loader == null) {
+                loader = loaderFactory.get();
+                if (loader.isLarge()) {
+                    opened.set(loader);
+                }
+            }
+            return loader.openStream();
+        }, size);
+    }
+
     @Override
     public InputStream getInputStream() throws IOException {
         return inputStreamProvider.get();
@@ -50,14 +73,23 @@ public class LargeObjectStreamProvider implements ObjectStreamProvider {
     }
 
     @Override
-    // TODO Check this
     public byte[] asByteArray() throws IOException {
-        try (InputStream initialStream = getInputStream()) {
-            ByteBuffer byteBuffer = ByteBuffer.allocate((int) getSize());
-            while (initialStream.available() > 0) {
-                byteBuffer.put((byte) initialStream.read());
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Object of " + size + " bytes is too large for an array");
+        }
+        try (InputStream is = getInputStream()) {
+            return is.readNBytes((int) size);
+        }
+    }
+
+    @Override
+    public void writeTo(final OutputStream output) throws IOException {
+        try (InputStream is = getInputStream()) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                output.write(buffer, 0, read);
             }
-            return byteBuffer.array();
         }
     }
 }
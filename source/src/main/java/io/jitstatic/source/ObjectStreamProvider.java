@@ -22,10 +22,14 @@ import java.io.ByteArrayInputStream;
  * #L%
  */
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.lib.ObjectLoader;
 
 import io.jitstatic.utils.Functions.ThrowingSupplier;
@@ -38,12 +42,57 @@ public interface ObjectStreamProvider {
     
     byte[] asByteArray() throws IOException;
 
+    public default void writeTo(final OutputStream output) throws IOException {
+        try (InputStream is = getInputStream()) {
+            is.transferTo(output);
+        }
+    }
+
+    /* Writes length bytes starting at offset, skipping through the stream up to it */
+    public default void writeTo(final OutputStream output, final long offset, final long length) throws IOException {
+        checkSlice(offset, length, getSize());
+        try (InputStream is = getInputStream()) {
+            long toSkip = offset;
+            while (toSkip > 0) {
+                final long skipped = is.skip(toSkip);
+                if (skipped > 0) {
+                    toSkip -= skipped;
+                } else if (is.read() >= 0) {
+                    toSkip--;
+                } else {
+                    throw new EOFException("Content ended before offset " + offset);
+                }
+            }
+            final byte[] buffer = new byte[(int) Math.min(length, 8192)];
+            long left = length;
+            while (left > 0) {
+                final int read = is.read(buffer, 0, (int) Math.min(left, buffer.length));
+                if (read < 0) {
+                    throw new EOFException("Content ended " + left + " bytes before the end of the slice");
+                }
+                output.write(buffer, 0, read);
+                left -= read;
+            }
+        }
+    }
+
+    /* The content already compressed with the given content coding, if it has been cached that way */
+    @Nullable
+    public default ObjectStreamProvider getEncoded(final String contentEncoding) {
+        return null;
+    }
+
+    /* Bytes held for the content and its encoded variants */
+    public default long getRetainedSize() {
+        return getSize();
+    }
+
     public default ObjectStreamProvider getObjectStreamProvider(final ThrowingSupplier<ObjectLoader, IOException> objectLoaderFactory, final int threshold) {
         final long size = getSize();
         if (size < threshold) {
             return this;
         } else {
-            return new LargeObjectStreamProvider(() -> objectLoaderFactory.get().openStream(), size);
+            return LargeObjectStreamProvider.ofLoader(objectLoaderFactory, size);
         }
     }
     
@@ -66,6 +115,12 @@ public interface ObjectStreamProvider {
             }
         };
     }
+    static void checkSlice(final long offset, final long length, final long size) {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IndexOutOfBoundsException("Slice " + offset + "+" + length + " is outside of " + size + " bytes");
+        }
+    }
+
     public static byte[] toByte(final ObjectStreamProvider provider) throws IOException {
         return provider.asByteArray();
     }
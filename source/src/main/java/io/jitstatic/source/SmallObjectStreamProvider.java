@@ -21,7 +21,9 @@ package io.jitstatic.source;
  */
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -49,4 +51,10 @@ public class SmallObjectStreamProvider implements ObjectStreamProvider {
         return Arrays.copyOf(buffer, buffer.length);
     }
 
+    @Override
+    public void writeTo(final OutputStream output, final long offset, final long length) throws IOException {
+        ObjectStreamProvider.checkSlice(offset, length, buffer.length);
+        output.write(buffer, (int) offset, (int) length);
+    }
+
 }
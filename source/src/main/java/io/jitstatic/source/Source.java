@@ -44,10 +44,19 @@ public interface Source extends AutoCloseable, CheckHealth {
 
     public SourceInfo getSourceInfo(String key, String ref) throws RefNotFoundException;
 
+    public SourceInfo getSourceInfo(String key, String ref, String commitId) throws RefNotFoundException;
+
+    public long getLastModified(String key, String ref, String commitId) throws RefNotFoundException;
+
+    public String getTip(String ref) throws RefNotFoundException;
+
     public String getDefaultRef();
 
     public Pair<String, ThrowingSupplier<ObjectLoader, IOException>> modifyKey(String key, String ref, ObjectStreamProvider data, CommitMetaData commitMetaData);
 
+    public List<Pair<String, ThrowingSupplier<ObjectLoader, IOException>>> modifyKeys(List<Pair<String, ObjectStreamProvider>> keys, String ref,
+            CommitMetaData commitMetaData);
+
     public Pair<Pair<ThrowingSupplier<ObjectLoader, IOException>, String>, String> addKey(String key, String ref, ObjectStreamProvider data, MetaData metaData, CommitMetaData commitMetaData);
 
     public String modifyMetadata(MetaData metaData, String metaDataVersion, String key, String ref, CommitMetaData commitMetaData);
@@ -62,6 +71,8 @@ public interface Source extends AutoCloseable, CheckHealth {
 
     public List<String> getList(String keys, String ref, boolean recursive) throws RefNotFoundException, IOException;
 
+    public List<String> getList(String keys, String ref, String commitId, boolean recursive) throws RefNotFoundException, IOException;
+
     Pair<String, UserData> getUser(String userKey, String ref) throws RefNotFoundException, IOException;
 
     public String updateUser(String key, String ref, String username, UserData data) throws RefNotFoundException, IOException;
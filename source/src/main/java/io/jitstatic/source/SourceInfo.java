@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.jitstatic.JitStaticConstants;
 import io.jitstatic.MetaData;
 import io.jitstatic.check.MetaFileData;
 import io.jitstatic.check.SourceFileData;
@@ -38,13 +39,17 @@ public class SourceInfo {
     private final int threshold;
 
     public SourceInfo(final MetaFileData metaFileData, final SourceFileData sourceFileData) {
+        this(metaFileData, sourceFileData, JitStaticConstants.DEFAULT_THRESHOLD);
+    }
+
+    public SourceInfo(final MetaFileData metaFileData, final SourceFileData sourceFileData, final int threshold) {
         this.metaFileData = metaFileData;
         if (sourceFileData == null && !metaFileData.isMasterMetaData()) {
             throw new IllegalArgumentException(String
                     .format("sourceFileData cannot be null if metaFileData %s is not a masterMetaData file", metaFileData.getFileName()));
         }
         this.sourceFileData = sourceFileData;
-        threshold = 1_000_000;
+        this.threshold = threshold;
     }
 
     public String getSourceVersion() {
@@ -0,0 +1,62 @@
+package io.jitstatic;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import io.jitstatic.auth.User;
+
+class AccessRuleTest {
+
+    @Test
+    void testOpenRule() {
+        assertTrue(AccessRule.of(Set.of(), null).isOpen());
+        assertTrue(AccessRule.of(Set.of(), Set.of()).isOpen());
+        assertFalse(AccessRule.of(Set.of(new User("user", "pass")), null).isOpen());
+        assertFalse(AccessRule.of(Set.of(), Set.of(new Role("read"))).isOpen());
+    }
+
+    @Test
+    void testUsersAndRoles() {
+        AccessRule rule = AccessRule.of(Set.of(new User("user", "pass")), Set.of(new Role("read"), new Role("other")));
+        assertTrue(rule.hasUser(new User("user", "pass")));
+        assertFalse(rule.hasUser(new User("user", "wrong")));
+        assertTrue(rule.hasAnyRole(AccessRule.toBits(Set.of(new Role("read")))));
+        assertTrue(rule.hasAnyRole(AccessRule.toBits(Set.of(new Role("write"), new Role("other")))));
+        assertFalse(rule.hasAnyRole(AccessRule.toBits(Set.of(new Role("write")))));
+        assertFalse(rule.hasAnyRole(AccessRule.toBits(null)));
+    }
+
+    @Test
+    void testMetaDataCompilesItsRuleOnce() {
+        MetaData metaData = new MetaData(Set.of(), null, false, false, List.of(), Set.of(new Role("read")), Set.of(new Role("write")));
+        assertSame(metaData.getReadAccess(), metaData.getReadAccess());
+        assertTrue(metaData.getReadAccess().hasAnyRole(AccessRule.toBits(Set.of(new Role("read")))));
+        assertFalse(metaData.getReadAccess().hasAnyRole(AccessRule.toBits(Set.of(new Role("write")))));
+    }
+}
@@ -25,6 +25,7 @@ import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
@@ -42,6 +43,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +51,8 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -62,6 +66,7 @@ import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.lib.Repository;
@@ -211,6 +216,38 @@ public class SourceExtractorTest {
 
     }
 
+    @Test
+    public void testLastModifiedIsLastCommitTouchingKey() throws Exception {
+        final File temporaryGitFolder = getFolder();
+        final Path root = temporaryGitFolder.toPath();
+        try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
+            assertTrue(root.resolve("dir").toFile().mkdirs());
+            Files.write(root.resolve("dir/file"), getData().getBytes(UTF_8), CREATE_NEW);
+            Files.write(root.resolve("dir/file" + METADATA), getMetaData().getBytes(UTF_8), CREATE_NEW);
+            Files.write(root.resolve("other"), getData().getBytes(UTF_8), CREATE_NEW);
+            Files.write(root.resolve("other" + METADATA), getMetaData().getBytes(UTF_8), CREATE_NEW);
+            commitAt(local, 1_000_000);
+            Files.write(root.resolve("other"), getData(1).getBytes(UTF_8), TRUNCATE_EXISTING);
+            commitAt(local, 2_000_000);
+            final SourceExtractor se = new SourceExtractor(git.getRepository());
+            assertEquals(1_000_000_000L, se.lastModified(se.getTip(REFS_HEADS_MASTER), "dir/file"));
+            assertEquals(2_000_000_000L, se.lastModified(se.getTip(REFS_HEADS_MASTER), "other"));
+            Files.write(root.resolve("dir/.metadata"), getMetaData().getBytes(UTF_8), CREATE_NEW);
+            commitAt(local, 3_000_000);
+            assertEquals(3_000_000_000L, se.lastModified(se.getTip(REFS_HEADS_MASTER), "dir/file"));
+            assertEquals(3_000_000_000L, se.lastModified(se.getTip(REFS_HEADS_MASTER), "dir/"));
+            assertEquals(2_000_000_000L, se.lastModified(se.getTip(REFS_HEADS_MASTER), "other"));
+            assertEquals(0L, se.lastModified(se.getTip(REFS_HEADS_MASTER), "missing/"));
+        }
+    }
+
+    private void commitAt(final Git local, final long epochSeconds) throws GitAPIException, IOException {
+        final PersonIdent ident = new PersonIdent("user", "user@test", new Date(TimeUnit.SECONDS.toMillis(epochSeconds)), TimeZone.getTimeZone("UTC"));
+        local.add().addFilepattern(".").call();
+        local.commit().setMessage("Commit at " + epochSeconds).setAuthor(ident).setCommitter(ident).call();
+        verifyOkPush(local.push().call(), local.getRepository().getFullBranch());
+    }
+
     @Test
     public void testExtractNullTag() throws Exception {
         assertThrows(NullPointerException.class, () -> {
@@ -430,6 +467,31 @@ public class SourceExtractorTest {
         assertEquals(getMetaData(2), readData(keydata2.getMetadataInputStream()));
     }
 
+    @Test
+    public void testOpenCommitReadsKeyAsOfThatCommit() throws Exception {
+        String key = "key";
+        final File tempGitFolder = getFolder();
+        try (final Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(tempGitFolder).call()) {
+            Path file = tempGitFolder.toPath().resolve(key);
+            Files.write(file, getData().getBytes(UTF_8), CREATE_NEW, TRUNCATE_EXISTING);
+            Files.write(file.resolveSibling(key + METADATA), getMetaData().getBytes(UTF_8), CREATE_NEW, TRUNCATE_EXISTING);
+            local.add().addFilepattern(".").call();
+            local.commit().setMessage("First").call();
+            local.push().call();
+        }
+        SourceExtractor se = new SourceExtractor(git.getRepository());
+        String first = se.getTip(REFS_HEADS_MASTER);
+        try (final Git local = Git.open(tempGitFolder)) {
+            Files.write(tempGitFolder.toPath().resolve(key), getData(2).getBytes(UTF_8), TRUNCATE_EXISTING);
+            local.add().addFilepattern(".").call();
+            local.commit().setMessage("Second").call();
+            local.push().call();
+        }
+        assertNotEquals(first, se.getTip(REFS_HEADS_MASTER));
+        assertEquals(getData(), readData(se.openCommit(first, key).getStreamProvider().getInputStream()));
+        assertEquals(getData(2), readData(se.openBranch(REFS_HEADS_MASTER, key).getStreamProvider().getInputStream()));
+    }
+
     @Test
     public void testMetaDataOverrideWithHiddenUsers() throws Exception {
         String key1 = "key1";
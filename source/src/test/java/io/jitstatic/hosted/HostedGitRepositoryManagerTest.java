@@ -418,6 +418,27 @@ public class HostedGitRepositoryManagerTest {
         }
     }
 
+    @Test
+    public void testModifyKeysInOneCommit() throws Exception {
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
+        File gitFolder = getFolder().toFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call();) {
+
+            addFilesAndPush(gitFolder, git);
+            byte[] modified = "{\"one\":\"two\"}".getBytes(UTF_8);
+            byte[] other = "{\"one\":\"three\"}".getBytes(UTF_8);
+            var newVersions = grm.modifyKeys(List.of(Pair.of(STORE, toProvider(modified)), Pair.of(STORE + "2", toProvider(other))), REF_HEADS_MASTER, cmd);
+            assertEquals(2, newVersions.size());
+            assertEquals(newVersions.get(0).getLeft(), grm.getSourceInfo(STORE, null).getSourceVersion());
+            assertNotEquals(newVersions.get(0).getLeft(), newVersions.get(1).getLeft());
+            git.pull().call();
+            Iterator<RevCommit> call = git.log().call().iterator();
+            assertEquals(cmd.getMessage(), call.next().getShortMessage());
+            assertEquals("Test commit", call.next().getShortMessage());
+        }
+    }
+
     @Test
     public void testModifyTag() throws CorruptedSourceException, IOException {
         assertThat(assertThrows(UnsupportedOperationException.class, () -> {
@@ -636,6 +657,27 @@ public class HostedGitRepositoryManagerTest {
         }
     }
 
+    @Test
+    public void testGetListAtCommit() throws Exception {
+        File gitFolder = getFolder().toFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
+            Path dir = gitFolder.toPath().resolve("dir");
+            dir.toFile().mkdirs();
+            Files.write(dir.resolve("store"), new byte[] { 1, 2 }, CREATE_NEW);
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("init").call();
+            git.push().call();
+            String commitId = grm.getTip(REF_HEADS_MASTER);
+            Files.write(dir.resolve("other"), new byte[] { 3 }, CREATE_NEW);
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("other").call();
+            git.push().call();
+            assertEquals(List.of("dir/other", "dir/store"), grm.getList("dir/", REF_HEADS_MASTER, null, false));
+            assertEquals(List.of("dir/store"), grm.getList("dir/", REF_HEADS_MASTER, commitId, false));
+        }
+    }
+
     @Test
     public void testGetListFromNotExistingBranch() throws Exception {
         File gitFolder = getFolder().toFile();
@@ -20,6 +20,9 @@ package io.jitstatic.hosted.events;
  * #L%
  */
 
+import java.util.Map;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -33,4 +36,12 @@ class ReloadRefEventListenerTest {
         Mockito.verify(reloader).reload(Mockito.eq("ref"));
     }
 
+    @Test
+    void testReloadRefEventListenerWithChangedPaths() {
+        ReloadRef reloader = Mockito.mock(ReloadRef.class);
+        ReloadRefEventListener listener = new ReloadRefEventListener(reloader);
+        listener.onReload("ref", Map.of("key", ChangeType.MODIFY));
+        Mockito.verify(reloader).reload(Mockito.eq("ref"), Mockito.eq(Map.of("key", ChangeType.MODIFY)));
+    }
+
 }
@@ -20,6 +20,9 @@ package io.jitstatic.hosted.events;
  * #L%
  */
 
+import java.util.Map;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -33,4 +36,13 @@ class ReloadRefEventTest {
         Mockito.verify(listener).onReload(Mockito.eq("ref"));
     }
 
+    @Test
+    void testReloadRefEventWithChangedPaths() {
+        ReloadRefEvent ref = new ReloadRefEvent("ref", Map.of("key", ChangeType.DELETE));
+        ReloadRefEventListener listener = Mockito.mock(ReloadRefEventListener.class);
+        ref.dispatch(listener);
+        Mockito.verify(listener).onReload(Mockito.eq("ref"), Mockito.eq(Map.of("key", ChangeType.DELETE)));
+        Mockito.verify(listener, Mockito.never()).onReload(Mockito.anyString());
+    }
+
 }
@@ -20,13 +20,19 @@ package io.jitstatic.source;
  * #L%
  */
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectStream;
 import org.junit.jupiter.api.Test;
@@ -58,4 +64,56 @@ class ObjectStreamProviderTest {
         when(osp.getObjectStreamProvider(Mockito.any(), Mockito.anyInt())).thenCallRealMethod();
         assertEquals(osp.getClass(), osp.getObjectStreamProvider(() -> ol, 2).getClass());
     }
+
+    @Test
+    void testDirectObjectStreamProvider() throws IOException {
+        byte[] data = new byte[] { 1, 2, 3, -1 };
+        DirectObjectStreamProvider direct = DirectObjectStreamProvider.copyOf(ObjectStreamProvider.toProvider(data));
+        assertEquals(4, direct.getSize());
+        assertArrayEquals(data, direct.asByteArray());
+        try (InputStream is = direct.getInputStream()) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        direct.writeTo(out);
+        direct.writeTo(out);
+        assertArrayEquals(new byte[] { 1, 2, 3, -1, 1, 2, 3, -1 }, out.toByteArray());
+        assertSame(direct, DirectObjectStreamProvider.copyOf(direct));
+    }
+
+    @Test
+    void testLargeObjectStreamProviderReusesLargeLoader() throws IOException {
+        byte[] data = new byte[200_000];
+        data[199_999] = 7;
+        ObjectLoader ol = Mockito.mock(ObjectLoader.class);
+        when(ol.isLarge()).thenReturn(true);
+        when(ol.openStream()).thenAnswer(i -> new ObjectStream.SmallStream(Constants.OBJ_BLOB, data));
+        AtomicInteger opened = new AtomicInteger();
+        LargeObjectStreamProvider provider = LargeObjectStreamProvider.ofLoader(() -> {
+            opened.incrementAndGet();
+            return ol;
+        }, data.length);
+        assertArrayEquals(data, provider.asByteArray());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        provider.writeTo(out);
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    void testWriteSlice() throws IOException {
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+        ObjectLoader ol = Mockito.mock(ObjectLoader.class);
+        when(ol.isLarge()).thenReturn(true);
+        when(ol.openStream()).thenAnswer(i -> new ObjectStream.SmallStream(Constants.OBJ_BLOB, data));
+        for (ObjectStreamProvider provider : new ObjectStreamProvider[] { new SmallObjectStreamProvider(data), new DirectObjectStreamProvider(data),
+                ObjectStreamProvider.toProvider(data), LargeObjectStreamProvider.ofLoader(() -> ol, data.length) }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            provider.writeTo(out, 2, 3);
+            provider.writeTo(out, 7, 1);
+            provider.writeTo(out, 0, 0);
+            assertArrayEquals(new byte[] { 2, 3, 4, 7 }, out.toByteArray(), provider.getClass().getName());
+            assertThrows(IndexOutOfBoundsException.class, () -> provider.writeTo(out, 6, 3));
+        }
+    }
 }
@@ -81,6 +81,18 @@ public class SourceInfoTest {
         assertTrue(sourceProvider.getSize() == 1_000_000L);
     }
 
+    @Test
+    public void testSourceInfoUsesGivenThreshold() throws IOException {
+        MetaFileData metaFileData = mock(MetaFileData.class);
+        SourceFileData sourceFileData = mock(SourceFileData.class);
+        InputStreamHolder inputStreamHolder = mock(InputStreamHolder.class);
+        when(inputStreamHolder.getSize()).thenReturn(1_500_000L);
+        when(inputStreamHolder.getInputStreamProvider()).thenReturn(() -> new ByteArrayInputStream(new byte[] { 1 }));
+        when(sourceFileData.getInputStreamHolder()).thenReturn(inputStreamHolder);
+        assertTrue(new SourceInfo(metaFileData, sourceFileData).getStreamProvider() instanceof LargeObjectStreamProvider);
+        assertTrue(new SourceInfo(metaFileData, sourceFileData, 2_000_000).getStreamProvider() instanceof SmallObjectStreamProvider);
+    }
+
     @Test
     public void testSourceInfoSmallObjectStreamProvider() throws IOException {
         MetaFileData metaFileData = mock(MetaFileData.class);
@@ -0,0 +1,179 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.source.DirectObjectStreamProvider;
+import io.jitstatic.source.GzipObjectStreamProvider;
+import io.jitstatic.source.LargeObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/*
+ * Inflated content and parsed metadata by git object id, shared by all ref holders. A branch or tag reading a blob that another ref has
+ * cached gets the same bytes instead of inflating its own copy, so memory follows the distinct content rather than refs times keys. Blobs
+ * are held weakly and go away when no ref caches them anymore. Content above the threshold is streamed and never kept. Off heap, the kept
+ * content is moved to direct buffers. Content of at least gzipMinBytes is gzipped once here, so responses can send the variant as it is.
+ */
+final class BlobCache {
+
+    private final Interner<ObjectStreamProvider> contents = new Interner<>();
+    private final Interner<MetaData> metaData = new Interner<>();
+    private final boolean offHeap;
+    private final int gzipMinBytes;
+
+    BlobCache() {
+        this(false);
+    }
+
+    BlobCache(final boolean offHeap) {
+        this(offHeap, 0);
+    }
+
+    BlobCache(final boolean offHeap, final int gzipMinBytes) {
+        this.offHeap = offHeap;
+        this.gzipMinBytes = gzipMinBytes;
+    }
+
+    ObjectStreamProvider content(@Nullable final String blobId, final ThrowingSupplier<ObjectStreamProvider, IOException> inflate) throws IOException {
+        if (blobId == null) {
+            return store(inflate.get());
+        }
+        final ObjectStreamProvider cached = contents.get(blobId);
+        if (cached != null) {
+            return cached;
+        }
+        return share(blobId, inflate.get());
+    }
+
+    ObjectStreamProvider share(@Nullable final String blobId, final ObjectStreamProvider provider) {
+        if (provider == null || provider instanceof LargeObjectStreamProvider) {
+            return provider;
+        }
+        if (blobId == null) {
+            return store(provider);
+        }
+        final ObjectStreamProvider cached = contents.get(blobId);
+        if (cached != null) {
+            return cached;
+        }
+        return contents.intern(blobId, store(provider));
+    }
+
+    private ObjectStreamProvider store(final ObjectStreamProvider provider) {
+        if (provider == null || provider instanceof LargeObjectStreamProvider) {
+            return provider;
+        }
+        try {
+            final ObjectStreamProvider stored = offHeap ? DirectObjectStreamProvider.copyOf(provider) : provider;
+            if (gzipMinBytes > 0 && stored.getSize() >= gzipMinBytes) {
+                return GzipObjectStreamProvider.of(stored, offHeap);
+            }
+            return stored;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    MetaData metaData(@Nullable final String blobId, final ThrowingSupplier<MetaData, IOException> parse) throws IOException {
+        if (blobId == null) {
+            return parse.get();
+        }
+        final MetaData cached = metaData.get(blobId);
+        if (cached != null) {
+            return cached;
+        }
+        return share(blobId, parse.get());
+    }
+
+    MetaData share(@Nullable final String blobId, final MetaData data) {
+        if (blobId == null || data == null) {
+            return data;
+        }
+        return metaData.intern(blobId, data);
+    }
+
+    int size() {
+        return contents.size() + metaData.size();
+    }
+
+    private static final class Interner<T> {
+        private final Map<String, Entry<T>> entries = new ConcurrentHashMap<>();
+        private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+        T get(final String id) {
+            expunge();
+            final Entry<T> entry = entries.get(id);
+            return entry == null ? null : entry.get();
+        }
+
+        T intern(final String id, final T value) {
+            expunge();
+            final Entry<T> fresh = new Entry<>(id, value, collected);
+            for (;;) {
+                final Entry<T> existing = entries.putIfAbsent(id, fresh);
+                if (existing == null) {
+                    return value;
+                }
+                final T shared = existing.get();
+                if (shared != null) {
+                    return shared;
+                }
+                if (entries.replace(id, existing, fresh)) {
+                    return value;
+                }
+            }
+        }
+
+        int size() {
+            expunge();
+            return entries.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void expunge() {
+            Reference<? extends T> reference;
+            while ((reference = collected.poll()) != null) {
+                final Entry<T> entry = (Entry<T>) reference;
+                entries.remove(entry.id, entry);
+            }
+        }
+    }
+
+    private static final class Entry<T> extends WeakReference<T> {
+        private final String id;
+
+        Entry(final String id, final T value, final ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import io.jitstatic.JitStaticConstants;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.LargeObjectStreamProvider;
+import io.jitstatic.utils.Pair;
+
+/*
+ * Byte budget for the key caches. All refs draw from the same global budget, each ref is also capped by the first matching ref pattern or by
+ * the default ref budget. A blob cached by several refs is only counted once in the global budget. Payloads above the threshold are streamed from the repository and are only weighed by their entry overhead. A payload's compressed variants are counted with it.
+ */
+public class CacheBudget {
+
+    static final long ENTRY_OVERHEAD = 512;
+    private final long maxBytes;
+    private final long refMaxBytes;
+    private final List<Pair<Pattern, Long>> refOverrides;
+    private final int maxEntries;
+    private final int threshold;
+    private final boolean offHeap;
+    private final int gzipMinBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final Map<String, Integer> sharedPayloads = new ConcurrentHashMap<>();
+    private volatile Runnable onExceeded = () -> {};
+
+    public CacheBudget() {
+        this(Runtime.getRuntime().maxMemory() / 4, Long.MAX_VALUE, Map.of(), 2000, JitStaticConstants.DEFAULT_THRESHOLD);
+    }
+
+    public CacheBudget(final long maxBytes, final long refMaxBytes, final Map<String, Long> refOverrides, final int maxEntries, final int threshold) {
+        this(maxBytes, refMaxBytes, refOverrides, maxEntries, threshold, false);
+    }
+
+    public CacheBudget(final long maxBytes, final long refMaxBytes, final Map<String, Long> refOverrides, final int maxEntries, final int threshold,
+            final boolean offHeap) {
+        this(maxBytes, refMaxBytes, refOverrides, maxEntries, threshold, offHeap, 0);
+    }
+
+    public CacheBudget(final long maxBytes, final long refMaxBytes, final Map<String, Long> refOverrides, final int maxEntries, final int threshold,
+            final boolean offHeap, final int gzipMinBytes) {
+        if (maxBytes < 1 || refMaxBytes < 1) {
+            throw new IllegalArgumentException("Cache budgets must be positive");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1, was " + maxEntries);
+        }
+        this.maxBytes = maxBytes;
+        this.refMaxBytes = refMaxBytes;
+        this.refOverrides = Objects.requireNonNull(refOverrides).entrySet().stream()
+                .map(e -> Pair.of(Pattern.compile(e.getKey()), e.getValue()))
+                .collect(Collectors.toList());
+        this.maxEntries = maxEntries;
+        this.threshold = threshold;
+        this.offHeap = offHeap;
+        this.gzipMinBytes = gzipMinBytes;
+    }
+
+    public long getRefMaxBytes(final String ref) {
+        return Math.min(maxBytes, refOverrides.stream()
+                .filter(p -> p.getLeft().matcher(ref).matches())
+                .map(Pair::getRight)
+                .findFirst()
+                .orElse(refMaxBytes));
+    }
+
+    static long weigh(final StoreInfo storeInfo) {
+        return ENTRY_OVERHEAD + payload(storeInfo);
+    }
+
+    private static long payload(@Nullable final StoreInfo storeInfo) {
+        if (storeInfo != null && storeInfo.isNormalKey() && !(storeInfo.getStreamProvider() instanceof LargeObjectStreamProvider)) {
+            return storeInfo.getStreamProvider().getRetainedSize();
+        }
+        return 0;
+    }
+
+    /*
+     * Refs caching the same blob share its bytes, so a payload is only counted for the first entry holding that blob version.
+     */
+    void retain(@Nullable final StoreInfo storeInfo) {
+        usedBytes.addAndGet(ENTRY_OVERHEAD);
+        final long payload = payload(storeInfo);
+        if (payload > 0 && sharedPayloads.merge(storeInfo.getVersion(), 1, Integer::sum) == 1) {
+            usedBytes.addAndGet(payload);
+        }
+        if (isExceeded()) {
+            onExceeded.run();
+        }
+    }
+
+    /*
+     * Called from inside cache listeners whenever a retain leaves the budget exceeded, so it should only hand the work off.
+     */
+    void onExceeded(final Runnable listener) {
+        this.onExceeded = Objects.requireNonNull(listener);
+    }
+
+    void release(@Nullable final StoreInfo storeInfo) {
+        usedBytes.addAndGet(-ENTRY_OVERHEAD);
+        final long payload = payload(storeInfo);
+        if (payload > 0 && sharedPayloads.computeIfPresent(storeInfo.getVersion(), (version, holders) -> holders == 1 ? null : holders - 1) == null) {
+            usedBytes.addAndGet(-payload);
+        }
+    }
+
+    boolean isExceeded() {
+        return usedBytes.get() > maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public int getGzipMinBytes() {
+        return gzipMinBytes;
+    }
+}
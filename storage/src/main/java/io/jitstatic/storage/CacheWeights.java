@@ -0,0 +1,99 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/*
+ * The bytes and entries held by one ref's cache, kept up to date by its listeners. The entries also form an eviction clock in the order
+ * they were cached. The hand moves entries that have been read since it last passed them to the back, and picks the heaviest of the next
+ * few that haven't, so a hot key stays cached whatever its size and a cold large one goes before cold small ones.
+ */
+final class CacheWeights {
+    private static final int CANDIDATES = 4;
+    private final Map<String, CachedKey> clock = new LinkedHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger entries = new AtomicInteger();
+
+    synchronized void added(final String key, final CachedKey entry) {
+        entries.incrementAndGet();
+        bytes.addAndGet(entry.getWeight());
+        clock.put(key, entry);
+    }
+
+    synchronized void updated(final String key, final CachedKey current, final CachedKey updated) {
+        bytes.addAndGet(updated.getWeight() - current.getWeight());
+        clock.replace(key, updated);
+    }
+
+    synchronized void removed(final String key, final CachedKey entry) {
+        entries.decrementAndGet();
+        bytes.addAndGet(-entry.getWeight());
+        clock.remove(key);
+    }
+
+    /*
+     * The key to evict next, null if there is nothing cached. When every entry has been read the hand goes around once and starts over.
+     */
+    @Nullable
+    synchronized String victim() {
+        for (int pass = 0; pass < 2; pass++) {
+            final List<String> spared = new ArrayList<>();
+            final Iterator<Map.Entry<String, CachedKey>> hand = clock.entrySet().iterator();
+            String victim = null;
+            long weight = -1;
+            int candidates = 0;
+            while (hand.hasNext() && candidates < CANDIDATES) {
+                final Map.Entry<String, CachedKey> next = hand.next();
+                if (next.getValue().clearReferenced()) {
+                    spared.add(next.getKey());
+                } else {
+                    candidates++;
+                    if (next.getValue().getWeight() > weight) {
+                        victim = next.getKey();
+                        weight = next.getValue().getWeight();
+                    }
+                }
+            }
+            spared.forEach(key -> clock.put(key, clock.remove(key)));
+            if (victim != null) {
+                return victim;
+            }
+        }
+        return null;
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    int getEntries() {
+        return entries.get();
+    }
+}
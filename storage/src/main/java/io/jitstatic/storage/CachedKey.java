@@ -0,0 +1,79 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Optional;
+
+import com.spencerwi.either.Either;
+
+import io.jitstatic.auth.UserData;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.utils.Pair;
+
+/*
+ * A cached key stamped with the generation of the snapshot it was read at. The entry stays valid from that snapshot up to the newest one,
+ * a change touching the key removes it. Reads mark the entry so the eviction clock passes it over once.
+ */
+final class CachedKey {
+    private final Either<Optional<StoreInfo>, Pair<String, UserData>> value;
+    private final long generation;
+    private final long weight;
+    private volatile boolean referenced;
+
+    CachedKey(final Either<Optional<StoreInfo>, Pair<String, UserData>> value, final long generation, final long weight) {
+        this.value = value;
+        this.generation = generation;
+        this.weight = weight;
+    }
+
+    Either<Optional<StoreInfo>, Pair<String, UserData>> getValue() {
+        return value;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    long getWeight() {
+        return weight;
+    }
+
+    void markReferenced() {
+        if (!referenced) {
+            referenced = true;
+        }
+    }
+
+    /*
+     * Clears the mark, true if the entry had been read since it was last cleared.
+     */
+    boolean clearReferenced() {
+        if (referenced) {
+            referenced = false;
+            return true;
+        }
+        return false;
+    }
+
+    boolean isPresent() {
+        return value.isLeft() && value.getLeft().isPresent();
+    }
+}
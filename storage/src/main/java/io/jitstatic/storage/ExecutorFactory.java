@@ -0,0 +1,42 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Builds the executor for one named stage. The default is a fixed pool with named threads, the application wraps it with metrics.
+ */
+@FunctionalInterface
+public interface ExecutorFactory {
+
+    ExecutorFactory DEFAULT = (name, threads) -> Executors.newFixedThreadPool(threads, new NamingThreadFactory(name));
+
+    ExecutorService create(String name, int threads);
+
+    /*
+     * For stages whose tasks mostly block on repository I/O. Runs on a bounded pool unless the factory knows a cheaper kind of thread.
+     */
+    default ExecutorService createBlocking(final String name, final int threads) {
+        return create(name, threads);
+    }
+}
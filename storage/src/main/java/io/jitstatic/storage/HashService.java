@@ -20,8 +20,19 @@ package io.jitstatic.storage;
  * #L%
  */
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.io.Serializable;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.shiro.codec.Hex;
 import org.apache.shiro.crypto.hash.DefaultHashService;
@@ -34,22 +45,49 @@ import io.jitstatic.auth.UserData;
 
 public class HashService implements Serializable {
 
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
     private final String privateSalt;
     private final int iterations;
+    private final long verifiedTtlNanos;
+    private final int verifiedMaxEntries;
+    /*
+     * Passwords that recently matched a stored credential, as a keyed digest so the plain password is never kept. The digest key only lives in
+     * this process.
+     */
+    private final transient Map<String, Verified> verified;
+    private final transient SecretKeySpec digestKey;
 
     public HashService() {
         this(null, 5);
     }
 
     public HashService(final String privateSalt, final int iterations) {
+        this(privateSalt, iterations, 60, 10_000);
+    }
+
+    public HashService(final String privateSalt, final int iterations, final int verifiedTtlSeconds, final int verifiedMaxEntries) {
+        if (verifiedTtlSeconds < 0 || verifiedMaxEntries < 1) {
+            throw new IllegalArgumentException("verifiedTtlSeconds must be at least 0 and verifiedMaxEntries at least 1");
+        }
         this.privateSalt = privateSalt;
         this.iterations = iterations;
+        this.verifiedTtlNanos = TimeUnit.SECONDS.toNanos(verifiedTtlSeconds);
+        this.verifiedMaxEntries = verifiedMaxEntries;
+        this.verified = verifiedTtlSeconds > 0 ? new ConcurrentHashMap<>() : null;
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.digestKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
     }
 
     private static final long serialVersionUID = 7794693770611224576L;
 
     public boolean hasSamePassword(final UserData data, final String password) {
         if (data.getBasicPassword() == null || (data.getHash() != null && data.getSalt() != null)) {
+            final String credential = credential(data);
+            final byte[] presented = digest(password);
+            if (isVerified(credential, presented)) {
+                return true;
+            }
             final DefaultHashService hasher = new DefaultHashService();
             if (privateSalt != null) {
                 hasher.setPrivateSalt(ByteSource.Util.bytes(privateSalt));
@@ -60,12 +98,75 @@ public class HashService implements Serializable {
                     .setSalt(ByteSource.Util.bytes(Hex.decode(data.getSalt())))
                     .build();
             final Hash computedHash = hasher.computeHash(request);
-            return computedHash.toHex().equals(data.getHash());
+            final boolean isSame = computedHash.toHex().equals(data.getHash());
+            if (isSame) {
+                remember(credential, presented);
+            }
+            return isSame;
         } else {
             return data.getBasicPassword().equals(password);
         }
     }
 
+    boolean isVerified(final UserData data, final String password) {
+        return isVerified(credential(data), digest(password));
+    }
+
+    private boolean isVerified(final String credential, final byte[] presented) {
+        if (presented == null) {
+            return false;
+        }
+        final Verified entry = verified.get(credential);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.expires - System.nanoTime() < 0) {
+            verified.remove(credential, entry);
+            return false;
+        }
+        return MessageDigest.isEqual(entry.digest, presented);
+    }
+
+    /*
+     * When full, expired entries are dropped and if that's not enough the credential just isn't remembered.
+     */
+    private void remember(final String credential, final byte[] presented) {
+        if (presented == null) {
+            return;
+        }
+        if (verified.size() >= verifiedMaxEntries) {
+            final long now = System.nanoTime();
+            verified.values().removeIf(entry -> entry.expires - now < 0);
+            if (verified.size() >= verifiedMaxEntries) {
+                return;
+            }
+        }
+        verified.put(credential, new Verified(presented, System.nanoTime() + verifiedTtlNanos));
+    }
+
+    public void invalidate(final UserData data) {
+        if (verified != null && data != null) {
+            verified.remove(credential(data));
+        }
+    }
+
+    private static String credential(final UserData data) {
+        return data.getSalt() + ":" + data.getHash();
+    }
+
+    private byte[] digest(final String password) {
+        if (verified == null || password == null) {
+            return null;
+        }
+        try {
+            final Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+            mac.init(digestKey);
+            return mac.doFinal(password.getBytes(UTF_8));
+        } catch (final GeneralSecurityException e) {
+            return null;
+        }
+    }
+
     public UserData constructUserData(final Set<Role> roles, final String password) {
         final DefaultHashService hasher = new DefaultHashService();
         if (privateSalt != null) {
@@ -81,4 +182,13 @@ public class HashService implements Serializable {
         return new UserData(roles, null, salt.toHex(), computedHash.toHex());
     }
 
+    private static class Verified {
+        private final byte[] digest;
+        private final long expires;
+
+        private Verified(final byte[] digest, final long expires) {
+            this.digest = digest;
+            this.expires = expires;
+        }
+    }
 }
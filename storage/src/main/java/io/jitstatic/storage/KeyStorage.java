@@ -21,23 +21,41 @@ package io.jitstatic.storage;
  */
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import javax.annotation.Nullable;
+
 import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
+import org.cache2k.CacheEntry;
 import org.cache2k.integration.CacheLoader;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.lib.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,7 +74,9 @@ import io.jitstatic.hosted.events.DeleteRef;
 import io.jitstatic.hosted.events.ReloadRef;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.Source;
+import io.jitstatic.utils.Functions.ThrowingConsumer;
 import io.jitstatic.utils.Pair;
+import io.jitstatic.utils.PathCodec;
 import io.jitstatic.utils.WrappingAPIException;
 
 public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
@@ -64,18 +84,57 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
     private static final String DATA_CANNOT_BE_NULL = "data cannot be null";
     private static final String KEY_CANNOT_BE_NULL = "key cannot be null";
     private static final Logger LOG = LoggerFactory.getLogger(KeyStorage.class);
+    static final int DEFAULT_MAX_ACTIVE_REFS = 1000;
+    static final long DEFAULT_REF_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
     private final Cache<String, RefHolder> cache;
+    private final Set<String> refs = ConcurrentHashMap.newKeySet();
+    private final int maxActiveRefs;
+    private final long refIdleNanos;
     private final AtomicReference<Throwable> fault = new AtomicReference<>();
     private final Source source;
     private final String defaultRef;
     private final String rootUser;
-    private final ExecutorService refCleaner = Executors.newSingleThreadExecutor(new NamingThreadFactory("RefCleaner"));
+    private final ExecutorService keyLoader;
+    private final CacheBudget budget;
+    private final RefLockService refLockService;
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService refCleaner = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("RefCleaner"));
 
     public KeyStorage(final Source source, final String defaultRef, final HashService hashService, final RefLockService clusterService, final String rootUser) {
+        this(source, defaultRef, hashService, clusterService, rootUser, new CacheBudget());
+    }
+
+    public KeyStorage(final Source source, final String defaultRef, final HashService hashService, final RefLockService clusterService, final String rootUser,
+            final CacheBudget budget) {
+        this(source, defaultRef, hashService, clusterService, rootUser, budget, DEFAULT_MAX_ACTIVE_REFS, DEFAULT_REF_IDLE_MILLIS);
+    }
+
+    /*
+     * Refs are only known by name until they're used, a ref holder is created on first access. Holders that haven't been used for
+     * refIdleMillis are closed, as are the least recently used ones when more than maxActiveRefs are active. The default ref is always kept.
+     */
+    public KeyStorage(final Source source, final String defaultRef, final HashService hashService, final RefLockService clusterService, final String rootUser,
+            final CacheBudget budget, final int maxActiveRefs, final long refIdleMillis) {
+        if (maxActiveRefs < 1) {
+            throw new IllegalArgumentException("maxActiveRefs must be at least 1, was " + maxActiveRefs);
+        }
+        if (refIdleMillis < 0) {
+            throw new IllegalArgumentException("refIdleMillis cannot be negative, was " + refIdleMillis);
+        }
         this.source = Objects.requireNonNull(source, "Source cannot be null");
         this.defaultRef = defaultRef == null ? Constants.R_HEADS + Constants.MASTER : defaultRef;
         this.rootUser = Objects.requireNonNull(rootUser);
-        this.cache = getMap(source, hashService, clusterService);
+        this.budget = Objects.requireNonNull(budget);
+        this.cache = getMap(source, hashService, clusterService, budget);
+        this.refLockService = clusterService;
+        this.keyLoader = Objects.requireNonNull(clusterService.getKeyLoader());
+        this.maxActiveRefs = maxActiveRefs;
+        this.refIdleNanos = TimeUnit.MILLISECONDS.toNanos(refIdleMillis);
+        if (refIdleMillis > 0) {
+            final long sweep = Math.max(refIdleMillis / 2, 1);
+            refCleaner.scheduleWithFixedDelay(this::evictRefs, sweep, sweep, TimeUnit.MILLISECONDS);
+        }
+        budget.onExceeded(this::scheduleBudgetSweep);
         addRef(this.defaultRef);
     }
 
@@ -101,22 +160,59 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
         return getKeyDirect(key, ref);
     }
 
+    @Override
+    @Nullable
+    public StoreInfo peekKey(final String key, final String ref) {
+        if (key.endsWith("/") || checkKeyIsDotFile(key)) {
+            return null;
+        }
+        final RefHolder refHolder = cache.peek(checkRef(ref));
+        if (refHolder == null) {
+            return null;
+        }
+        refHolder.touch();
+        return refHolder.peekKey(key);
+    }
+
     private CompletableFuture<Optional<StoreInfo>> getKeyDirect(final String key,
             final String ref) {
         if (checkKeyIsDotFile(key)) {
             return CompletableFuture.completedFuture(Optional.empty());
         }
 
-        return CompletableFuture.supplyAsync(() -> {
-            final String finalRef = checkRef(ref);
-            final RefHolder refHolder = getRefHolder(finalRef);
-            final Optional<StoreInfo> storeInfo = refHolder.readKey(key);
-            if (storeInfo == null) {
-                return Optional.<StoreInfo>empty();
-            }
-            return storeInfo;
-        }).handleAsync((o,
-                t) -> unwrap(o, t, ref));
+        final RefHolder refHolder;
+        try {
+            refHolder = getRefHolder(checkRef(ref));
+        } catch (final WrappingAPIException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return refHolder.getKey(key).thenApply(storeInfo -> storeInfo == null ? Optional.<StoreInfo>empty() : storeInfo)
+                .handle((o, t) -> unwrap(o, t, ref));
+    }
+
+    private CompletableFuture<Optional<StoreInfo>> getKey(final String key,
+            final String ref,
+            @Nullable final Pair<RefHolder, RefSnapshot> pinned) {
+        if (pinned == null) {
+            return getKey(key, ref);
+        }
+        if (key.endsWith("/")) {
+            throw new WrappingAPIException(new UnsupportedOperationException(key));
+        }
+        if (checkKeyIsDotFile(key)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return pinned.getLeft().getKey(pinned.getRight(), key).thenApply(storeInfo -> storeInfo == null ? Optional.<StoreInfo>empty() : storeInfo)
+                .handle((o, t) -> unwrap(o, t, ref));
+    }
+
+    /*
+     * Everything one list request reads comes from the snapshot pinned here, null if the ref isn't loaded.
+     */
+    @Nullable
+    private Pair<RefHolder, RefSnapshot> pin(final String ref) {
+        final RefHolder refHolder = findRefHolder(ref);
+        return refHolder == null ? null : Pair.of(refHolder, refHolder.pin());
     }
 
     private Optional<StoreInfo> unwrap(final Optional<StoreInfo> o,
@@ -154,17 +250,91 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
     }
 
     private boolean checkKeyIsDotFile(final String key) {
-        return Tree.of(List.of(Pair.of(key, false))).accept(Tree.DOT_FINDER);
+        return PathCodec.hasDotElement(key);
     }
 
     private RefHolder getRefHolder(final String finalRef) {
-        final RefHolder refHolder = cache.peek(finalRef);
+        final RefHolder refHolder = findRefHolder(finalRef);
         if (refHolder == null) {
             throw new WrappingAPIException(new RefNotFoundException(finalRef));
         }
         return refHolder;
     }
 
+    @Nullable
+    private RefHolder findRefHolder(final String finalRef) {
+        RefHolder refHolder = cache.peek(finalRef);
+        if (refHolder == null) {
+            if (!refs.contains(finalRef)) {
+                return null;
+            }
+            refHolder = cache.get(finalRef);
+            if (cache.asMap().size() > maxActiveRefs) {
+                refCleaner.execute(this::evictRefs);
+            }
+        }
+        refHolder.touch();
+        return refHolder;
+    }
+
+    /*
+     * Idle holders are sorted first, so they go before any holder still in use is evicted to get below the limit.
+     */
+    void evictRefs() {
+        final long now = System.nanoTime();
+        final List<RefHolder> candidates = StreamSupport.stream(cache.entries().spliterator(), false)
+                .filter(e -> !e.getKey().equals(defaultRef))
+                .map(CacheEntry::getValue)
+                .sorted(Comparator.comparingLong(RefHolder::getLastAccess))
+                .collect(Collectors.toList());
+        int active = cache.asMap().size();
+        for (RefHolder refHolder : candidates) {
+            final boolean idle = refIdleNanos > 0 && now - refHolder.getLastAccess() > refIdleNanos;
+            if (!idle && active <= maxActiveRefs) {
+                return;
+            }
+            if (refHolder.isBusy()) {
+                continue;
+            }
+            if (cache.removeIfEquals(refHolder.getRef(), refHolder)) {
+                refHolder.close();
+                active--;
+                LOG.info("Evicted {} ref {}", idle ? "idle" : "least recently used", refHolder.getRef());
+            }
+        }
+    }
+
+    private void scheduleBudgetSweep() {
+        if (sweepScheduled.compareAndSet(false, true)) {
+            try {
+                refCleaner.execute(this::sweepBudget);
+            } catch (final RejectedExecutionException e) {
+                sweepScheduled.set(false);
+            }
+        }
+    }
+
+    private void sweepBudget() {
+        sweepScheduled.set(false);
+        sweep(budget, StreamSupport.stream(cache.entries().spliterator(), false).map(CacheEntry::getValue).collect(Collectors.toList()));
+    }
+
+    /*
+     * Brings the global budget back under its limit by evicting from the refs holding the most bytes, each from its eviction clock. A ref
+     * that only holds a little is left alone as long as others hold more.
+     */
+    static void sweep(final CacheBudget budget, final Collection<RefHolder> refHolders) {
+        final PriorityQueue<Pair<RefHolder, Long>> heaviestFirst = new PriorityQueue<>(
+                Comparator.comparing((Pair<RefHolder, Long> p) -> p.getRight()).reversed());
+        refHolders.forEach(refHolder -> heaviestFirst.add(Pair.of(refHolder, refHolder.getRefBytes())));
+        while (budget.isExceeded() && !heaviestFirst.isEmpty()) {
+            final RefHolder refHolder = heaviestFirst.poll().getLeft();
+            if (refHolder.evict()) {
+                heaviestFirst.add(Pair.of(refHolder, refHolder.getRefBytes()));
+            }
+        }
+    }
+
     @Override
     public void close() {
         shutDownExecutor(refCleaner);
@@ -228,7 +398,7 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
                 throw new WrappingAPIException(new KeyAlreadyExist(key, finalRef));
             }
             return result.getLeft();
-        });
+        }, keyLoader);
     }
 
     @Override
@@ -264,7 +434,7 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
             // We don't support deleting master .metadata files right now
             throw new WrappingAPIException(new UnsupportedOperationException(key));
         }
-        final RefHolder refHolder = cache.peek(finalRef);
+        final RefHolder refHolder = findRefHolder(finalRef);
         if (refHolder != null) {
             try {
                 return refHolder.deleteKey(key, commitMetaData);
@@ -279,55 +449,127 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
     public CompletableFuture<List<Pair<String, StoreInfo>>> getListForRef(final List<Pair<String, Boolean>> keyPairs,
             final String ref) {
         final String finalRef = checkRef(ref);
-        final List<CompletableFuture<List<Pair<String, StoreInfo>>>> collected = Tree.of(Objects.requireNonNull(keyPairs)).accept(Tree.EXTRACTOR).stream()
-                .map(pair -> {
-                    final String key = pair.getLeft();
-                    if (key.endsWith("/")) {
-                        return extractListAndMap(finalRef, pair, key);
-                    }
-                    return getKey(key, finalRef).thenApply(keyContent -> {
-                        if (keyContent.isPresent()) {
-                            return List.of(Pair.of(key, keyContent.get()));
+        final Pair<RefHolder, RefSnapshot> pinned = pin(finalRef);
+        final List<CompletableFuture<List<Pair<String, StoreInfo>>>> collected;
+        try {
+            collected = Tree.of(Objects.requireNonNull(keyPairs)).accept(Tree.EXTRACTOR).stream()
+                    .map(pair -> {
+                        final String key = pair.getLeft();
+                        if (key.endsWith("/")) {
+                            return extractListAndMap(finalRef, pair, key, pinned);
                         }
-                        return List.<Pair<String, StoreInfo>>of();
-                    });
-                }).collect(Collectors.toList());
+                        return getKey(key, finalRef, pinned).thenApply(keyContent -> {
+                            if (keyContent.isPresent()) {
+                                return List.of(Pair.of(key, keyContent.get()));
+                            }
+                            return List.<Pair<String, StoreInfo>>of();
+                        });
+                    }).collect(Collectors.toList());
+        } catch (final RuntimeException e) {
+            release(pinned);
+            throw e;
+        }
         return CompletableFuture.allOf(collected.toArray(new CompletableFuture[collected.size()]))
+                .whenComplete((ignore, t) -> release(pinned))
                 .thenApply(ignore -> collected.stream()
                         .map(CompletableFuture::join)
                         .flatMap(List::stream)
                         .collect(Collectors.toList()));
     }
 
+    @Override
+    public void streamListForRef(final List<Pair<String, Boolean>> keyPairs, final String ref, final int maxInFlight,
+            final ThrowingConsumer<Pair<String, StoreInfo>, IOException> consumer) throws IOException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1, was " + maxInFlight);
+        }
+        final String finalRef = checkRef(ref);
+        final Pair<RefHolder, RefSnapshot> pinned = pin(finalRef);
+        final Set<CompletableFuture<Optional<StoreInfo>>> inFlight = ConcurrentHashMap.newKeySet();
+        final BlockingQueue<Pair<String, CompletableFuture<Optional<StoreInfo>>>> loaded = new LinkedBlockingQueue<>();
+        try {
+            final Iterator<String> keys = Tree.of(Objects.requireNonNull(keyPairs)).accept(Tree.EXTRACTOR).stream()
+                    .flatMap(pair -> pair.getLeft().endsWith("/") ? extractList(pair.getLeft(), finalRef, pair, pinned).stream() : Stream.of(pair.getLeft()))
+                    .iterator();
+            while (keys.hasNext() || !inFlight.isEmpty()) {
+                while (inFlight.size() < maxInFlight && keys.hasNext()) {
+                    final String key = keys.next();
+                    final CompletableFuture<Optional<StoreInfo>> load = getKey(key, finalRef, pinned);
+                    inFlight.add(load);
+                    load.whenComplete((o, t) -> loaded.add(Pair.of(key, load)));
+                }
+                final Pair<String, CompletableFuture<Optional<StoreInfo>>> next = loaded.take();
+                inFlight.remove(next.getRight());
+                final Optional<StoreInfo> storeInfo = joinLoad(next.getRight());
+                if (storeInfo.isPresent()) {
+                    consumer.accept(Pair.of(next.getLeft(), storeInfo.get()));
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming " + keyPairs + " in " + finalRef);
+        } finally {
+            /* Loads that were abandoned still read through the pinned snapshot */
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[inFlight.size()])).whenComplete((ignore, t) -> release(pinned));
+        }
+    }
+
+    private static Optional<StoreInfo> joinLoad(final CompletableFuture<Optional<StoreInfo>> load) {
+        try {
+            return load.join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void release(@Nullable final Pair<RefHolder, RefSnapshot> pinned) {
+        if (pinned != null) {
+            pinned.getRight().release();
+        }
+    }
+
     private CompletableFuture<Pair<String, Optional<StoreInfo>>> getKeyPair(final String key,
-            final String ref) {
+            final String ref,
+            @Nullable final Pair<RefHolder, RefSnapshot> pinned) {
         final CompletableFuture<Pair<String, Optional<StoreInfo>>> cf = new CompletableFuture<>();
-        getKey(key, ref).thenComposeAsync(o -> {
+        getKey(key, ref, pinned).thenComposeAsync(o -> {
             cf.complete(Pair.of(key, o));
             return cf;
-        });
+        }, keyLoader);
         return cf;
     }
 
     private CompletableFuture<List<Pair<String, StoreInfo>>> extractListAndMap(final String finalRef,
             Pair<String, Boolean> pair,
-            final String key) {
-        return CompletableFuture.supplyAsync(() -> extractList(key, finalRef, pair))
-                .thenApplyAsync(l -> l.stream().map(k -> getKeyPair(k, finalRef)).collect(Collectors.toList()))
+            final String key,
+            @Nullable final Pair<RefHolder, RefSnapshot> pinned) {
+        return CompletableFuture.supplyAsync(() -> extractList(key, finalRef, pair, pinned), keyLoader)
+                .thenApplyAsync(l -> l.stream().map(k -> getKeyPair(k, finalRef, pinned)).collect(Collectors.toList()), keyLoader)
                 .thenComposeAsync(futures -> CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
-                        .thenApplyAsync(ignore -> futures))
+                        .thenApplyAsync(ignore -> futures, keyLoader), keyLoader)
                 .thenApplyAsync(futures -> futures.stream()
                         .map(CompletableFuture::join)
                         .filter(p -> p.getRight().isPresent())
                         .map(p -> Pair.of(p.getLeft(), p.getRight().get()))
-                        .collect(Collectors.toList()));
+                        .collect(Collectors.toList()), keyLoader);
     }
 
     private List<String> extractList(final String key,
             final String finalRef,
-            final Pair<String, Boolean> pair) {
+            final Pair<String, Boolean> pair,
+            @Nullable final Pair<RefHolder, RefSnapshot> pinned) {
+        if (pinned != null) {
+            final List<String> indexed = pinned.getLeft().listKeys(pinned.getRight(), key, pair.getRight());
+            if (indexed != null) {
+                return indexed;
+            }
+        }
         try {
-            return source.getList(key, finalRef, pair.getRight());
+            return source.getList(key, finalRef, pinned == null ? null : pinned.getRight().getCommitId(), pair.getRight());
         } catch (final RefNotFoundException rnfe) {
             // Ignore
         } catch (final IOException e) {
@@ -341,11 +583,11 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
         return CompletableFuture.supplyAsync(() -> input.stream()
                 .map(p -> getListForRef(p.getLeft(), p.getRight())
                         .thenApply(l -> Pair.of(l, p.getRight())))
-                .collect(Collectors.toList()))
+                .collect(Collectors.toList()), keyLoader)
                 .thenApplyAsync(futures -> CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
                         .thenApplyAsync(ignore -> futures.stream()
                                 .map(CompletableFuture::join)
-                                .collect(Collectors.toList())))
+                                .collect(Collectors.toList()), keyLoader), keyLoader)
                 .thenCompose(cf -> cf);
     }
 
@@ -386,7 +628,7 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
             final String creatorUserName,
             final UserData data,
             final String version) {
-        final RefHolder refHolder = cache.peek(checkRef(ref));
+        final RefHolder refHolder = findRefHolder(checkRef(ref));
         if (refHolder == null) {
             throw new UnsupportedOperationException(key);
         }
@@ -413,7 +655,7 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
                 throw new WrappingAPIException(new KeyAlreadyExist(key, finalRef));
             }
             return postUser.getLeft();
-        });
+        }, keyLoader);
     }
 
     @Override
@@ -424,7 +666,7 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
         Objects.requireNonNull(key);
         Objects.requireNonNull(realm);
         Objects.requireNonNull(creatorUserName);
-        final RefHolder refHolder = cache.peek(checkRef(ref));
+        final RefHolder refHolder = findRefHolder(checkRef(ref));
         if (refHolder != null) {
             refHolder.deleteUser(realm + "/" + key, creatorUserName).join();
         }
@@ -438,22 +680,34 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
         }
     }
 
+    @Override
+    public void reload(final String ref, final Map<String, ChangeType> changes) {
+        final RefHolder refHolder = cache.peek(ref);
+        if (refHolder != null) {
+            refHolder.reload(changes);
+        }
+    }
+
     @Override
     public void deleteRef(String ref) {
         LOG.info("Deleting {}", ref);
+        refs.remove(ref);
         final RefHolder removedValue = cache.peekAndRemove(ref);
         CompletableFuture.runAsync(() -> {
             if (removedValue != null) {
                 removedValue.close();
                 LOG.info("Ref {} is disposed", ref);
             }
+            refLockService.removeLock(ref);
         }, refCleaner);
 
     }
 
     private static Cache<String, RefHolder> getMap(final Source source,
             final HashService hashService,
-            RefLockService refLockService) {
+            RefLockService refLockService,
+            final CacheBudget budget) {
+        final BlobCache blobs = new BlobCache(budget.isOffHeap(), budget.getGzipMinBytes());
         return new Cache2kBuilder<String, RefHolder>() {
         }
                 .name(KeyStorage.class)
@@ -461,9 +715,9 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
                     @Override
                     public RefHolder load(final String r) throws Exception {
                         if (r.startsWith("refs/tags/")) {
-                            return new ReadOnlyRefHolder(r, source, hashService, refLockService);
+                            return new ReadOnlyRefHolder(r, source, hashService, refLockService, budget, blobs);
                         }
-                        final RefHolder refHolder = new RefHolder(r, source, hashService, refLockService);
+                        final RefHolder refHolder = new RefHolder(r, source, hashService, refLockService, budget, blobs);
                         refHolder.start();
                         return refHolder;
                     }
@@ -473,10 +727,8 @@ public class KeyStorage implements Storage, ReloadRef, DeleteRef, AddRef {
 
     @Override
     public void addRef(String ref) {
-        RefHolder refHolder = cache.peek(ref);
-        if (refHolder == null) {
-            LOG.info("Adding ref {}", ref);
-            cache.get(ref);
+        if (refs.add(ref)) {
+            LOG.debug("Adding ref {}", ref);
         }
     }
 }
@@ -20,50 +20,150 @@ package io.jitstatic.storage;
  * #L%
  */
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import com.spencerwi.either.Either;
 
 import io.jitstatic.hosted.DistributedData;
 import io.jitstatic.hosted.FailedToLock;
+import io.jitstatic.storage.events.StorageEvent;
+import io.jitstatic.utils.Pair;
 
 public class LocalRefLockService implements RefLockService {
     private final Map<String, LockService> refLockMap = new HashMap<>();
-    private final ExecutorService repoWriter = Executors.newSingleThreadExecutor(new NamingThreadFactory("RepoWriter"));
+    private final ExecutorService repoWriter;
+    private final ExecutorService[] writeLanes;
+    private final ExecutorService keyLoader;
+    private final ScheduledExecutorService groupCommitTimer;
+    private final long groupCommitWindow;
+    private final int groupCommitMaxSize;
+
+    public LocalRefLockService() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public LocalRefLockService(final int lanes) {
+        this(lanes, 0, 1);
+    }
+
+    /*
+     * Each ref is bound to one single threaded lane. Writes on a ref keep their order, writes on refs in different lanes run in parallel.
+     * With a group commit size above 1, key updates on a ref arriving within the window are written as one commit.
+     */
+    public LocalRefLockService(final int lanes, final long groupCommitWindowMillis, final int groupCommitMaxSize) {
+        this(lanes, groupCommitWindowMillis, groupCommitMaxSize, Runtime.getRuntime().availableProcessors() * 2, ExecutorFactory.DEFAULT);
+    }
+
+    /*
+     * Commits run on the lanes, cache loads and other blocking repository reads on the key loader. Both are built by the given factory.
+     */
+    public LocalRefLockService(final int lanes, final long groupCommitWindowMillis, final int groupCommitMaxSize, final int keyLoaderThreads,
+            final ExecutorFactory executors) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("lanes must be at least 1, was " + lanes);
+        }
+        if (groupCommitWindowMillis < 0) {
+            throw new IllegalArgumentException("groupCommitWindowMillis cannot be negative, was " + groupCommitWindowMillis);
+        }
+        if (keyLoaderThreads < 1) {
+            throw new IllegalArgumentException("keyLoaderThreads must be at least 1, was " + keyLoaderThreads);
+        }
+        this.repoWriter = executors.create("RepoWriter", 1);
+        this.keyLoader = executors.createBlocking("KeyLoader", keyLoaderThreads);
+        this.writeLanes = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            writeLanes[i] = executors.create("RepoWriter-lane" + i, 1);
+        }
+        this.groupCommitWindow = groupCommitWindowMillis;
+        this.groupCommitMaxSize = groupCommitMaxSize;
+        this.groupCommitTimer = isGroupCommit() && groupCommitWindowMillis > 0
+                ? Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("GroupCommitTimer"))
+                : null;
+    }
+
+    boolean isGroupCommit() {
+        return groupCommitMaxSize > 1;
+    }
+
+    int getGroupCommitMaxSize() {
+        return groupCommitMaxSize;
+    }
+
+    void scheduleFlush(final String ref, final Runnable flush) {
+        final ExecutorService lane = getRepoWriter(ref);
+        if (groupCommitTimer == null) {
+            lane.execute(flush);
+        } else {
+            groupCommitTimer.schedule(() -> lane.execute(flush), groupCommitWindow, TimeUnit.MILLISECONDS);
+        }
+    }
 
     @Override
     public void close() throws Exception {
+        if (groupCommitTimer != null) {
+            groupCommitTimer.shutdown();
+            groupCommitTimer.awaitTermination(10, TimeUnit.SECONDS);
+        }
         repoWriter.shutdown();
+        keyLoader.shutdown();
+        for (ExecutorService lane : writeLanes) {
+            lane.shutdown();
+        }
         repoWriter.awaitTermination(10, TimeUnit.SECONDS);
+        keyLoader.awaitTermination(10, TimeUnit.SECONDS);
+        for (ExecutorService lane : writeLanes) {
+            lane.awaitTermination(10, TimeUnit.SECONDS);
+        }
         refLockMap.forEach((k, v) -> v.close());
     }
 
+    /*
+     * There is one lock per ref, shared by every holder created for it, so a holder replacing an evicted one queues its writes behind the
+     * ones still running through the old holder.
+     */
     @Override
     public synchronized LockService getLockService(final String ref) {
-        final LockService map = refLockMap.get(ref);
-        return map == null ? new LocalLock(this, ref) : map;
+        return refLockMap.computeIfAbsent(ref, r -> new LocalLock(this, r));
     }
 
     @Override
     public synchronized void returnLock(final LockService keys) {
-        refLockMap.put(keys.getRef(), keys);
+        refLockMap.putIfAbsent(keys.getRef(), keys);
+    }
+
+    @Override
+    public synchronized void removeLock(final String ref) {
+        final LockService lock = refLockMap.get(ref);
+        if (lock != null && !lock.isBusy()) {
+            refLockMap.remove(ref);
+        }
     }
 
     private static class LocalLock implements LockService {
 
         private final Map<String, ActionData> keyMap;
+        private final List<Pair<ActionData, CompletableFuture<Either<String, FailedToLock>>>> pending = new ArrayList<>();
         private final String ref;
         private final LocalRefLockService refLockService;
+        private final AtomicInteger queued = new AtomicInteger();
         private static final String KEYPREFIX = "key-";
         private static final String GLOBAL = "globallock";
-        private RefHolder refHolder;
+        private volatile RefHolder refHolder;
+        private boolean stale;
 
         public LocalLock(final LocalRefLockService refLockService, final String ref) {
             this.keyMap = new HashMap<>();
@@ -80,30 +180,105 @@ public class LocalRefLockService implements RefLockService {
             refLockService.returnLock(this);
         }
 
+        /*
+         * The holder is handed over on the ref's lane, after the writes already queued. If one of them ran through a closed holder, the new
+         * holder's snapshot may predate it and is reloaded.
+         */
         @Override
-        public void register(RefHolder refHolder) {
-            this.refHolder = refHolder;
+        public void register(final RefHolder refHolder) {
+            try {
+                refLockService.getRepoWriter(getRef()).execute(() -> handOver(refHolder));
+            } catch (final RejectedExecutionException e) {
+                handOver(refHolder);
+            }
+        }
+
+        private void handOver(final RefHolder next) {
+            refHolder = next;
+            if (stale) {
+                stale = false;
+                next.reload();
+            }
+        }
+
+        private RefHolder holder() {
+            final RefHolder current = refHolder;
+            if (current.isClosed()) {
+                stale = true;
+            }
+            return current;
+        }
+
+        @Override
+        public boolean isBusy() {
+            return queued.get() > 0;
+        }
+
+        private CompletableFuture<Either<String, FailedToLock>> track(final CompletableFuture<CompletableFuture<Either<String, FailedToLock>>> event) {
+            return event.thenCompose(c -> c).whenComplete((result, error) -> queued.decrementAndGet());
         }
 
         @Override
         public CompletableFuture<Either<String, FailedToLock>> fireEvent(final String key, final ActionData data) {
-            return CompletableFuture.supplyAsync(() -> {
+            queued.incrementAndGet();
+            return track(CompletableFuture.supplyAsync(() -> {
                 final String requestedKey = getRequestedKey(key);
                 if (keyMap.putIfAbsent(requestedKey, data) == null) {
+                    if (data.getType() == StorageEvent.UPDATE_KEY && refLockService.isGroupCommit()) {
+                        return enqueueGroupCommit(data);
+                    }
                     return CompletableFuture.supplyAsync(() -> {
                         try {
+                            flushGroupCommit();
                             return Either.<String, FailedToLock>left(invoke(data));
                         } finally {
                             keyMap.remove(requestedKey);
                         }
-                    }, refLockService.getRepoWriter());
+                    }, refLockService.getRepoWriter(getRef()));
                 } else {
                     return CompletableFuture.completedFuture(Either.<String, FailedToLock>right(new FailedToLock(getRef(), key)));
                 }
-            }, refLockService.getRepoWriter()).thenCompose(c -> c);
+            }, refLockService.getRepoWriter(getRef())));
+        }
+
+        private CompletableFuture<Either<String, FailedToLock>> enqueueGroupCommit(final ActionData data) {
+            final CompletableFuture<Either<String, FailedToLock>> result = new CompletableFuture<>();
+            pending.add(Pair.of(data, result));
+            if (pending.size() >= refLockService.getGroupCommitMaxSize()) {
+                flushGroupCommit();
+            } else if (pending.size() == 1) {
+                refLockService.scheduleFlush(getRef(), this::flushGroupCommit);
+            }
+            return result;
+        }
+
+        private void flushGroupCommit() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            final List<Pair<ActionData, CompletableFuture<Either<String, FailedToLock>>>> batch = new ArrayList<>(pending);
+            pending.clear();
+            try {
+                final List<Either<String, RuntimeException>> results = holder()
+                        .internalModifyKeys(batch.stream().map(Pair::getLeft).collect(Collectors.toList()));
+                for (int i = 0; i < batch.size(); i++) {
+                    final Either<String, RuntimeException> result = results.get(i);
+                    final CompletableFuture<Either<String, FailedToLock>> future = batch.get(i).getRight();
+                    if (result.isLeft()) {
+                        future.complete(Either.left(result.getLeft()));
+                    } else {
+                        future.completeExceptionally(result.getRight());
+                    }
+                }
+            } catch (final RuntimeException e) {
+                batch.forEach(p -> p.getRight().completeExceptionally(e));
+            } finally {
+                batch.forEach(p -> keyMap.remove(getRequestedKey(p.getLeft().getKey())));
+            }
         }
 
         private String invoke(final ActionData data) {
+            final RefHolder refHolder = holder();
             switch (data.getType()) {
             case ADD_KEY:
                 return refHolder.internalAddKey(data.getKey(), data.getData(), data.getMetaData(), data.getCommitMetaData());
@@ -132,11 +307,13 @@ public class LocalRefLockService implements RefLockService {
         @Override
         public CompletableFuture<Either<String, FailedToLock>> fireEvent(String ref, Supplier<Exception> preRequisite, Supplier<DistributedData> action,
                 Consumer<Exception> postAction) {
-            return CompletableFuture.supplyAsync(() -> {
+            queued.incrementAndGet();
+            return track(CompletableFuture.supplyAsync(() -> {
                 final String requestedKey = getRequestedKey(null);
                 if (keyMap.putIfAbsent(requestedKey, ActionData.PLACEHOLDER) == null) {
                     return CompletableFuture.supplyAsync(() -> {
                         try {
+                            flushGroupCommit();
                             Exception exception = preRequisite.get();
                             try {
                                 if (exception == null) {
@@ -152,11 +329,11 @@ public class LocalRefLockService implements RefLockService {
                         } finally {
                             keyMap.remove(requestedKey);
                         }
-                    }, refLockService.getRepoWriter());
+                    }, refLockService.getRepoWriter(getRef()));
                 } else {
                     return CompletableFuture.completedFuture(Either.<String, FailedToLock>right(new FailedToLock(ref)));
                 }
-            }, refLockService.getRepoWriter()).thenCompose(c -> c);
+            }, refLockService.getRepoWriter(getRef())));
         }
 
         public String getRef() {
@@ -168,4 +345,14 @@ public class LocalRefLockService implements RefLockService {
     public ExecutorService getRepoWriter() {
         return repoWriter;
     }
+
+    @Override
+    public ExecutorService getRepoWriter(final String ref) {
+        return writeLanes[Math.floorMod(Objects.requireNonNull(ref).hashCode(), writeLanes.length)];
+    }
+
+    @Override
+    public ExecutorService getKeyLoader() {
+        return keyLoader;
+    }
 }
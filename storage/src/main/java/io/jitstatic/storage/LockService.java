@@ -40,4 +40,9 @@ public interface LockService extends AutoCloseable {
     CompletableFuture<Either<String, FailedToLock>> fireEvent(String ref, Supplier<Exception> preRequisite, Supplier<DistributedData> action, Consumer<Exception> postAction);
     
     String getRef();
+
+    /*
+     * True while writes fired on the lock are queued or running.
+     */
+    boolean isBusy();
 }
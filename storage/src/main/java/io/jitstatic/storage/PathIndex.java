@@ -0,0 +1,167 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * A trie of the file paths in a ref's tree at one commit, one node per path element. Lookups and listings are answered from memory in time
+ * proportional to the key length and the size of the result. An index is never changed once built, the index of the next commit is made
+ * with the changed paths and shares every node off their paths with this one.
+ */
+class PathIndex {
+
+    private static final String SEPARATOR = "/";
+    private final Node root;
+    private final int size;
+
+    PathIndex(final Collection<String> paths) {
+        final PathIndex index = new PathIndex(new Node(), 0).with(paths, List.of());
+        this.root = index.root;
+        this.size = index.size;
+    }
+
+    private PathIndex(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    boolean contains(final String path) {
+        final Node node = find(path);
+        return node != null && node.file;
+    }
+
+    /*
+     * Lists the files directly in the directory, or below it when recursive, sorted the same way a tree walk would return them.
+     */
+    List<String> list(final String directory, final boolean recursive) {
+        final String prefix = SEPARATOR.equals(directory) ? "" : directory;
+        final Node node = prefix.isEmpty() ? root : find(prefix.substring(0, prefix.length() - 1));
+        final List<String> paths = new ArrayList<>();
+        if (node != null) {
+            collect(node, prefix, recursive, paths);
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    /*
+     * Nodes on the changed paths are copied once per call and then changed in place, directories left empty by a removal are pruned.
+     */
+    PathIndex with(final Collection<String> added, final Collection<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        final Set<Node> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Node newRoot = copy(root, copies);
+        int newSize = size;
+        for (String path : removed) {
+            final String[] elements = path.split(SEPARATOR);
+            final Node[] nodes = new Node[elements.length + 1];
+            nodes[0] = newRoot;
+            for (int i = 0; i < elements.length && nodes[i] != null; i++) {
+                nodes[i + 1] = nodes[i].children.get(elements[i]);
+            }
+            if (nodes[elements.length] == null || !nodes[elements.length].file) {
+                continue;
+            }
+            for (int i = 1; i <= elements.length; i++) {
+                nodes[i] = copy(nodes[i], copies);
+                nodes[i - 1].children.put(elements[i - 1], nodes[i]);
+            }
+            nodes[elements.length].file = false;
+            newSize--;
+            for (int i = elements.length; i > 0 && !nodes[i].file && nodes[i].children.isEmpty(); i--) {
+                nodes[i - 1].children.remove(elements[i - 1]);
+            }
+        }
+        for (String path : added) {
+            Node node = newRoot;
+            for (String element : path.split(SEPARATOR)) {
+                final Node child = node.children.get(element);
+                final Node next;
+                if (child == null) {
+                    next = new Node();
+                    copies.add(next);
+                } else {
+                    next = copy(child, copies);
+                }
+                node.children.put(element, next);
+                node = next;
+            }
+            if (!node.file) {
+                node.file = true;
+                newSize++;
+            }
+        }
+        return new PathIndex(newRoot, newSize);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private Node find(final String path) {
+        Node node = root;
+        for (String element : path.split(SEPARATOR)) {
+            node = node.children.get(element);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private static Node copy(final Node node, final Set<Node> copies) {
+        if (copies.contains(node)) {
+            return node;
+        }
+        final Node copy = new Node();
+        copy.children.putAll(node.children);
+        copy.file = node.file;
+        copies.add(copy);
+        return copy;
+    }
+
+    private static void collect(final Node node, final String prefix, final boolean recursive, final List<String> paths) {
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            final Node childNode = child.getValue();
+            if (childNode.file) {
+                paths.add(prefix + child.getKey());
+            }
+            if (recursive) {
+                collect(childNode, prefix + child.getKey() + SEPARATOR, true, paths);
+            }
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>(2);
+        private boolean file;
+    }
+}
@@ -42,6 +42,16 @@ public class ReadOnlyRefHolder extends RefHolder {
         super(ref, source, hashService, clusterService);
     }
 
+    public ReadOnlyRefHolder(final String ref, final Source source, final HashService hashService, final RefLockService clusterService,
+            final CacheBudget budget) {
+        super(ref, source, hashService, clusterService, budget);
+    }
+
+    ReadOnlyRefHolder(final String ref, final Source source, final HashService hashService, final RefLockService clusterService,
+            final CacheBudget budget, final BlobCache blobs) {
+        super(ref, source, hashService, clusterService, budget, blobs);
+    }
+
     @Override
     public CompletableFuture<Either<String, FailedToLock>> addKey(final String key, final ObjectStreamProvider data, final MetaData metaData,
             final CommitMetaData commitMetaData) {
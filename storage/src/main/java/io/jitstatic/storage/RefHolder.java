@@ -22,25 +22,42 @@ package io.jitstatic.storage;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
 
 import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
-import org.cache2k.CacheEntry;
-import org.cache2k.integration.CacheLoader;
-import org.cache2k.integration.CacheLoaderException;
+import org.cache2k.event.CacheEntryCreatedListener;
+import org.cache2k.event.CacheEntryRemovedListener;
+import org.cache2k.event.CacheEntryUpdatedListener;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.slf4j.Logger;
@@ -63,71 +80,459 @@ import io.jitstatic.source.Source;
 import io.jitstatic.source.SourceInfo;
 import io.jitstatic.utils.Functions.ThrowingSupplier;
 import io.jitstatic.utils.Pair;
-import io.jitstatic.utils.ShouldNeverHappenException;
 import io.jitstatic.utils.VersionIsNotSame;
 import io.jitstatic.utils.WrappingAPIException;
 
 @SuppressFBWarnings(value = "NP_OPTIONAL_RETURN_NULL", justification = "Map's returns null and there's a difference from a previous cached 'not found' value and a new 'not found'")
 public class RefHolder implements RefLockHolder, AutoCloseable {
-    private static final int MAX_ENTRIES = 2000;
-    private static final int THRESHOLD = 1_000_000;
     private static final Logger LOG = LoggerFactory.getLogger(RefHolder.class);
-    private final AtomicReference<Cache<String, Either<Optional<StoreInfo>, Pair<String, UserData>>>> refCache;
+    private final AtomicReference<RefSnapshot> snapshot;
+    private final Object snapshotLock = new Object();
+    private final Cache<String, CachedKey> cache;
+    private final CacheWeights weights = new CacheWeights();
+    private final AtomicInteger live = new AtomicInteger();
+    private volatile boolean started;
+    private volatile boolean closed;
+    private volatile long lastAccess = System.nanoTime();
     private final String ref;
     private final Source source;
     final int threshold;
     private final HashService hashService;
     private final LockService lock;
     private final RefLockService refLockService;
+    private final Executor keyLoader;
+    private final CacheBudget budget;
+    private final BlobCache blobs;
+    private final long refMaxBytes;
+    private final AtomicBoolean indexBuilding = new AtomicBoolean();
 
     public RefHolder(final String ref, final Source source, final HashService hashService, final RefLockService refLockService) {
+        this(ref, source, hashService, refLockService, new CacheBudget());
+    }
+
+    public RefHolder(final String ref, final Source source, final HashService hashService, final RefLockService refLockService,
+            final CacheBudget budget) {
+        this(ref, source, hashService, refLockService, budget, new BlobCache());
+    }
+
+    RefHolder(final String ref, final Source source, final HashService hashService, final RefLockService refLockService, final CacheBudget budget,
+            final BlobCache blobs) {
         this.ref = Objects.requireNonNull(ref);
-        this.refCache = new AtomicReference<>(getStorage(MAX_ENTRIES));
+        this.budget = Objects.requireNonNull(budget);
+        this.blobs = Objects.requireNonNull(blobs);
+        this.refMaxBytes = budget.getRefMaxBytes(ref);
         this.refLockService = refLockService;
         this.source = Objects.requireNonNull(source);
-        this.threshold = THRESHOLD;
+        this.cache = newCache();
+        this.snapshot = new AtomicReference<>(newSnapshot(tip(), 0));
+        this.threshold = budget.getThreshold();
         this.hashService = Objects.requireNonNull(hashService);
         this.lock = refLockService.getLockService(ref);
+        this.keyLoader = refLockService.getKeyLoader();
     }
 
     public void start() {
         lock.register(this);
+        started = true;
     }
 
-    private Cache<String, Either<Optional<StoreInfo>, Pair<String, UserData>>> getStorage(final int size) {
-        return new Cache2kBuilder<String, Either<Optional<StoreInfo>, Pair<String, UserData>>>() {
+    /*
+     * cache2k 1.2 can't weigh entries and doesn't report its own evictions, so the cache is unbounded and all evictions are made by trim and
+     * the storage wide budget sweep from the eviction clock, which the listeners keep in step with the cache.
+     */
+    private Cache<String, CachedKey> newCache() {
+        return new Cache2kBuilder<String, CachedKey>() {
         }.name(ref.replaceAll("/", "-") + "-" + UUID.randomUUID())
-                .loader(new CacheLoader<String, Either<Optional<StoreInfo>, Pair<String, UserData>>>() {
-                    @Override
-                    public Either<Optional<StoreInfo>, Pair<String, UserData>> load(final String key) throws Exception {
-                        // TODO Cache2k doesn't have an asynchronous API, yet.
-                        return unwrap(loadFully(key));
-                    }
-                }).entryCapacity(size).build();
+                .entryCapacity(Long.MAX_VALUE)
+                .addListener((CacheEntryCreatedListener<String, CachedKey>) (c, e) -> {
+                    retain(e.getKey(), e.getValue());
+                })
+                .addListener((CacheEntryUpdatedListener<String, CachedKey>) (c, current, updated) -> {
+                    weights.updated(current.getKey(), current.getValue(), updated.getValue());
+                    budget.release(storeInfo(current.getValue().getValue()));
+                    budget.retain(storeInfo(updated.getValue().getValue()));
+                })
+                .addListener((CacheEntryRemovedListener<String, CachedKey>) (c, e) -> {
+                    release(e.getKey(), e.getValue());
+                })
+                .build();
+    }
+
+    private RefSnapshot newSnapshot(@Nullable final String commitId, final long generation) {
+        live.incrementAndGet();
+        return new RefSnapshot(commitId, generation, true, this::disposed);
     }
 
-    private CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>> loadFully(final String key) {
-        // TODO Don't complete on this
-        return CompletableFuture.completedFuture(key.startsWith(JitStaticConstants.USERS) ? loadUserKey(key) : loadKey(key));
+    /*
+     * The cache is closed with the last snapshot of a closed holder, no request can reach it after that.
+     */
+    private void disposed() {
+        if (live.decrementAndGet() == 0 && closed) {
+            cache.removeAll();
+            cache.close();
+        }
     }
 
     @Nullable
-    public Optional<StoreInfo> readKey(final String key) {
-        return unwrapCacheLoaderException(() -> {
-            final Either<Optional<StoreInfo>, Pair<String, UserData>> data = readKeyFull(key);
-            if (data != null && data.isLeft()) {
-                return data.getLeft();
+    private String tip() {
+        try {
+            return source.getTip(ref);
+        } catch (final RefNotFoundException | UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /*
+     * A snapshot is only retired after it has been replaced, so a failed pin finds the successor on the next try. A closed holder has no
+     * successor, a request that still reaches it reads from a snapshot of its own that is disposed when the request is done.
+     */
+    RefSnapshot pin() {
+        for (;;) {
+            final RefSnapshot current = snapshot.get();
+            if (current.pin()) {
+                return current;
+            }
+            if (closed) {
+                final RefSnapshot detached = new RefSnapshot(tip(), 0, false, () -> {
+                });
+                detached.pin();
+                detached.retire();
+                return detached;
+            }
+        }
+    }
+
+    /*
+     * Changes to the current snapshot are made pinned, so it can't be disposed under them. On a closed holder they are dropped.
+     */
+    private <T> T updateCurrent(final Function<RefSnapshot, T> update, final T whenClosed) {
+        synchronized (snapshotLock) {
+            final RefSnapshot current = snapshot.get();
+            if (!current.pin()) {
+                return whenClosed;
+            }
+            try {
+                return update.apply(current);
+            } finally {
+                current.release();
             }
+        }
+    }
+
+    private List<String> publish(final Set<String> keys) {
+        return publish(keys, List.of(), index -> index);
+    }
+
+    /*
+     * Publishes a snapshot at the tip and retires the current one, requests pinned to it keep reading from its commit. The snapshots share
+     * the cache, only the given keys and the keys below the given directories are removed from it, so a write costs what it touched and
+     * not what's cached. The new snapshot gets the current index through reindex, or none if reindex is null. Returns the removed keys that
+     * were cached as present.
+     */
+    private List<String> publish(final Set<String> keys, final List<String> directories, @Nullable final UnaryOperator<PathIndex> reindex) {
+        final List<String> present = new ArrayList<>();
+        final RefSnapshot previous;
+        synchronized (snapshotLock) {
+            if (closed) {
+                return present;
+            }
+            previous = snapshot.get();
+            final RefSnapshot next = newSnapshot(tip(), previous.getGeneration() + 1);
+            final PathIndex index = previous.getIndex();
+            if (index != null && reindex != null) {
+                next.setIndex(reindex.apply(index));
+            }
+            final Predicate<String> isTouched = key -> keys.contains(key) || directories.stream().anyMatch(key::startsWith);
+            keys.forEach(key -> invalidate(key, present));
+            if (!directories.isEmpty()) {
+                StreamSupport.stream(cache.keys().spliterator(), false).filter(isTouched).collect(Collectors.toList())
+                        .forEach(key -> invalidate(key, present));
+            }
+            previous.succeed(next, isTouched);
+            snapshot.set(next);
+        }
+        previous.retire();
+        return present;
+    }
+
+    private void invalidate(final String key, final List<String> present) {
+        final CachedKey removed = cache.peekAndRemove(key);
+        if (removed != null && removed.isPresent()) {
+            present.add(key);
+        }
+    }
+
+    /*
+     * An entry is valid from the generation it was cached at up to the newest snapshot, a snapshot pinned before that only uses it if the key
+     * didn't change in between.
+     */
+    @Nullable
+    private Either<Optional<StoreInfo>, Pair<String, UserData>> cached(final RefSnapshot pinned, final String key) {
+        if (!pinned.isCached()) {
             return null;
-        });
+        }
+        final CachedKey entry = cache.peek(key);
+        if (entry == null || (entry.getGeneration() > pinned.getGeneration() && !pinned.isUnchanged(key, entry.getGeneration()))) {
+            return null;
+        }
+        entry.markReferenced();
+        return entry.getValue();
+    }
+
+    /*
+     * A value loaded at a pinned snapshot is only cached if the key hasn't changed since, otherwise the newer snapshots would see it.
+     */
+    private void cacheLoaded(final RefSnapshot pinned, final String key, final Either<Optional<StoreInfo>, Pair<String, UserData>> value) {
+        synchronized (snapshotLock) {
+            if (!closed && pinned.isCached() && pinned.isUnchanged(key, snapshot.get().getGeneration())) {
+                cache.putIfAbsent(key, new CachedKey(value, pinned.getGeneration(), weigh(value)));
+                trim();
+            }
+        }
+    }
+
+    String getRef() {
+        return ref;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /*
+     * True while writes on this ref are queued or running, the holder is then kept so they are published by it.
+     */
+    boolean isBusy() {
+        return lock.isBusy();
+    }
+
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    private void retain(final String key, final CachedKey entry) {
+        weights.added(key, entry);
+        budget.retain(storeInfo(entry.getValue()));
+    }
+
+    private void release(final String key, final CachedKey entry) {
+        weights.removed(key, entry);
+        budget.release(storeInfo(entry.getValue()));
+    }
+
+    @Nullable
+    private static StoreInfo storeInfo(final Either<Optional<StoreInfo>, Pair<String, UserData>> value) {
+        return value.isLeft() ? value.getLeft().orElse(null) : null;
+    }
+
+    private static long weigh(final Either<Optional<StoreInfo>, Pair<String, UserData>> value) {
+        if (value.isLeft() && value.getLeft().isPresent()) {
+            return CacheBudget.weigh(value.getLeft().get());
+        }
+        return CacheBudget.ENTRY_OVERHEAD;
+    }
+
+    private boolean isOverRefBudget() {
+        return weights.getBytes() > refMaxBytes || weights.getEntries() > budget.getMaxEntries();
+    }
+
+    /*
+     * Keeps the cache within this ref's own limits. Entries are taken from the eviction clock, so keys that are read stay cached and the
+     * weight only decides between keys that aren't. The global budget is left to the storage, which takes from the refs holding the most.
+     */
+    private void trim() {
+        while (isOverRefBudget()) {
+            final String victim = weights.victim();
+            if (victim == null || !cache.containsAndRemove(victim)) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Evicts the next entry of the eviction clock, false if there was nothing to evict.
+     */
+    boolean evict() {
+        return updateCurrent(current -> {
+            final String victim = weights.victim();
+            return victim != null && cache.containsAndRemove(victim);
+        }, false);
+    }
+
+    long getRefBytes() {
+        return weights.getBytes();
+    }
+
+    /*
+     * Plain keys that aren't in the tree of the snapshot's commit are answered without going to the repository, and without caching an empty
+     * entry. Until the snapshot has an index every miss goes to the repository.
+     */
+    private boolean isDefiniteMiss(final RefSnapshot pinned, final String key) {
+        if (key.isEmpty() || key.startsWith("/") || key.endsWith("/") || key.startsWith(JitStaticConstants.USERS)) {
+            return false;
+        }
+        final PathIndex index = getPathIndex(pinned);
+        return index != null && !index.contains(key);
+    }
+
+    /*
+     * Returns null if the snapshot isn't indexed yet, the caller then has to list the keys from the repository.
+     */
+    @Nullable
+    List<String> listKeys(final RefSnapshot pinned, final String directory, final boolean recursive) {
+        final PathIndex index = getPathIndex(pinned);
+        if (index == null) {
+            return null;
+        }
+        return index.list(directory, recursive);
+    }
+
+    @Nullable
+    List<String> listKeys(final String directory, final boolean recursive) {
+        final RefSnapshot pinned = pin();
+        try {
+            return listKeys(pinned, directory, recursive);
+        } finally {
+            pinned.release();
+        }
+    }
+
+    private PathIndex getPathIndex(final RefSnapshot pinned) {
+        final PathIndex index = pinned.getIndex();
+        if (index == null) {
+            buildPathIndex(pinned);
+        }
+        return index;
+    }
+
+    /*
+     * The index is listed at the snapshot's commit. Only one index is built at a time for the ref, once a snapshot has one the snapshots
+     * published after it get theirs from the changed paths.
+     */
+    private void buildPathIndex(final RefSnapshot pinned) {
+        if (!indexBuilding.compareAndSet(false, true)) {
+            return;
+        }
+        if (!pinned.startIndexing()) {
+            indexBuilding.set(false);
+            return;
+        }
+        try {
+            keyLoader.execute(() -> {
+                try {
+                    final PathIndex index = new PathIndex(source.getList("/", ref, pinned.getCommitId(), true));
+                    pinned.setIndex(index);
+                    LOG.info("Indexed {} paths in {}", index.size(), ref);
+                } catch (final RefNotFoundException | IOException | RuntimeException e) {
+                    LOG.warn("Couldn't index {}: {}", ref, e.getMessage());
+                } finally {
+                    indexBuilding.set(false);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            pinned.cancelIndexing();
+            indexBuilding.set(false);
+        }
+    }
+
+    /*
+     * Hits complete inline. Misses are loaded on the key loader and concurrent misses on a key share the same load. A load only caches its
+     * value if no write or reload touched the key while it was running.
+     */
+    private CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>> readKeyFullAsync(final String key) {
+        final RefSnapshot pinned = pin();
+        final CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>> read = readKeyFullAsync(pinned, key);
+        read.whenComplete((value, error) -> pinned.release());
+        return read;
+    }
+
+    private CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>> readKeyFullAsync(final RefSnapshot pinned, final String key) {
+        final Map<String, CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>>> loads = pinned.getLoads();
+        final Either<Optional<StoreInfo>, Pair<String, UserData>> cached = cached(pinned, key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (isDefiniteMiss(pinned, key)) {
+            return CompletableFuture.completedFuture(Either.left(Optional.empty()));
+        }
+        final CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>> load = new CompletableFuture<>();
+        final CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        try {
+            keyLoader.execute(() -> {
+                try {
+                    final Either<Optional<StoreInfo>, Pair<String, UserData>> value = key.startsWith(JitStaticConstants.USERS) ? loadUserKey(key)
+                            : loadKey(key, pinned.getCommitId());
+                    if (loads.remove(key, load)) {
+                        cacheLoaded(pinned, key, value);
+                    }
+                    load.complete(value);
+                } catch (final RuntimeException e) {
+                    loads.remove(key, load);
+                    load.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+        return load;
+    }
+
+    /*
+     * The key if it's cached in the current snapshot, otherwise null. Never loads anything.
+     */
+    @Nullable
+    public StoreInfo peekKey(final String key) {
+        final RefSnapshot pinned = pin();
+        try {
+            final Either<Optional<StoreInfo>, Pair<String, UserData>> cached = cached(pinned, key);
+            return cached != null && cached.isLeft() ? cached.getLeft().orElse(null) : null;
+        } finally {
+            pinned.release();
+        }
+    }
+
+    public CompletableFuture<Optional<StoreInfo>> getKey(final String key) {
+        return readKeyFullAsync(key).thenApply(data -> data.isLeft() ? data.getLeft() : null);
+    }
+
+    /*
+     * Reads the key from a snapshot the caller has pinned, so that all keys of one request come from the same commit.
+     */
+    CompletableFuture<Optional<StoreInfo>> getKey(final RefSnapshot pinned, final String key) {
+        return readKeyFullAsync(pinned, key).thenApply(data -> data.isLeft() ? data.getLeft() : null);
+    }
+
+    @Nullable
+    public Optional<StoreInfo> readKey(final String key) {
+        final Either<Optional<StoreInfo>, Pair<String, UserData>> data = readKeyFull(key);
+        if (data != null && data.isLeft()) {
+            return data.getLeft();
+        }
+        return null;
     }
 
     private Either<Optional<StoreInfo>, Pair<String, UserData>> pollForKey(final String key) {
-        return refCache.get().peek(key);
+        return updateCurrent(current -> cached(current, key), null);
     }
 
     private Either<Optional<StoreInfo>, Pair<String, UserData>> readKeyFull(final String key) {
-        return refCache.get().get(key);
+        try {
+            return readKeyFullAsync(key).join();
+        } catch (final CompletionException ce) {
+            final Throwable cause = ce.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw ce;
+        }
     }
 
     void putKey(final String key, final Optional<StoreInfo> store) {
@@ -135,31 +540,37 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
     }
 
     private void putKeyFull(final String key, final Either<Optional<StoreInfo>, Pair<String, UserData>> data) {
-        refCache.get().put(key, data);
+        updateCurrent(current -> {
+            current.getLoads().remove(key);
+            cache.put(key, new CachedKey(data, current.getGeneration(), weigh(data)));
+            trim();
+            return null;
+        }, null);
     }
 
     public boolean isEmpty() {
-        return StreamSupport.stream(refCache.get().entries().spliterator(), true)
-                .noneMatch(e -> e.getValue().fold(Optional<StoreInfo>::isPresent, u -> true));
+        return updateCurrent(current -> StreamSupport.stream(cache.entries().spliterator(), true)
+                .noneMatch(e -> e.getValue().getValue().fold(Optional<StoreInfo>::isPresent, u -> true)), true);
     }
 
-    private Either<Optional<StoreInfo>, Pair<String, UserData>> loadKey(final String key) {
+    private Either<Optional<StoreInfo>, Pair<String, UserData>> loadKey(final String key, @Nullable final String commitId) {
         try {
-            return Either.left(isStorable(key, load(key)));
+            return Either.left(isStorable(key, load(key, commitId)));
         } catch (RefNotFoundException e) {
             throw new LoadException(e);
         }
     }
 
     @Nullable
-    private StoreInfo load(final String key) throws RefNotFoundException {
-        final SourceInfo sourceInfo = source.getSourceInfo(key, ref);
+    private StoreInfo load(final String key, @Nullable final String commitId) throws RefNotFoundException {
+        final SourceInfo sourceInfo = commitId == null ? source.getSourceInfo(key, ref) : source.getSourceInfo(key, ref, commitId);
         if (sourceInfo != null) {
             try {
-                final MetaData metaData = sourceInfo.readMetaData();
+                final MetaData metaData = blobs.metaData(sourceInfo.getMetaDataVersion(), sourceInfo::readMetaData);
                 if (!metaData.isHidden()) {
                     if (!sourceInfo.isMetaDataSource()) {
-                        return new StoreInfo(sourceInfo.getStreamProvider(), metaData, sourceInfo.getSourceVersion(), sourceInfo.getMetaDataVersion());
+                        return new StoreInfo(blobs.content(sourceInfo.getSourceVersion(), sourceInfo::getStreamProvider), metaData,
+                                sourceInfo.getSourceVersion(), sourceInfo.getMetaDataVersion(), lastModified(key, commitId));
                     } else {
                         return new StoreInfo(metaData, sourceInfo.getMetaDataVersion());
                     }
@@ -172,6 +583,26 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         return null;
     }
 
+    /*
+     * Finding the last commit that changed a key walks the history from the given commit, so loading a key doesn't do it. The StoreInfo
+     * looks it up the first time a request needs it and keeps it. A key written through the API is looked up from its new commit, so the
+     * walk stops at the write. A failed lookup leaves the time unknown rather than failing the read.
+     */
+    private LongSupplier lastModified(final String key, @Nullable final String commitId) {
+        return () -> {
+            try {
+                return source.getLastModified(key, ref, commitId);
+            } catch (final RefNotFoundException | UncheckedIOException e) {
+                LOG.warn("Couldn't find when {} in {} was last modified: {}", key, ref, e.getMessage());
+                return 0;
+            }
+        };
+    }
+
+    private LongSupplier lastModifiedAtTip(final String key) {
+        return lastModified(key, snapshot.get().getCommitId());
+    }
+
     private Optional<StoreInfo> isStorable(final String key, final StoreInfo storeInfo) {
         if (storeInfo != null && (keyRequestedIsMasterMeta(key, storeInfo) || keyRequestedIsNormalKey(key, storeInfo))) {
             return Optional.of(storeInfo);
@@ -196,7 +627,7 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
             final String plainKey = key.substring(0, key.length() - 1);
             Either<Optional<StoreInfo>, Pair<String, UserData>> compute = pollForKey(plainKey);
             if (compute == null) {
-                compute = loadKey(plainKey);
+                compute = loadKey(plainKey, snapshot.get().getCommitId());
             }
             if (compute != null && compute.getLeft().isPresent()) {
                 throw new WrappingAPIException(new KeyAlreadyExist(key, ref));
@@ -224,9 +655,10 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
             }
         }
         final Pair<Pair<ThrowingSupplier<ObjectLoader, IOException>, String>, String> version = source.addKey(key, ref, data, metaData, commitMetaData);
+        publish(Set.of(key), List.of(), index -> index.with(List.of(key), List.of()));
         final Pair<ThrowingSupplier<ObjectLoader, IOException>, String> fileInfo = version.getLeft();
-        final StoreInfo newStoreInfo = new StoreInfo(data.getObjectStreamProvider(fileInfo.getLeft(), threshold), metaData, fileInfo.getRight(),
-                version.getRight());
+        final StoreInfo newStoreInfo = new StoreInfo(blobs.share(fileInfo.getRight(), data.getObjectStreamProvider(fileInfo.getLeft(), threshold)),
+                blobs.share(version.getRight(), metaData), fileInfo.getRight(), version.getRight(), lastModifiedAtTip(key));
         if (newStoreInfo.getMetaData().isHidden()) {
             putKey(key, Optional.empty());
         } else {
@@ -242,6 +674,48 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
 
     String internalModifyKey(final String key, final ObjectStreamProvider data, final String oldVersion,
             final CommitMetaData commitMetaData) {
+        final StoreInfo storeInfo = checkModifiable(key, oldVersion);
+        final Pair<String, ThrowingSupplier<ObjectLoader, IOException>> newVersion = source.modifyKey(key, ref, data, commitMetaData);
+        publish(Set.of(key));
+        putModifiedKey(key, data, storeInfo, newVersion);
+        return newVersion.getLeft();
+    }
+
+    List<Either<String, RuntimeException>> internalModifyKeys(final List<ActionData> batch) {
+        final List<Either<String, RuntimeException>> results = new ArrayList<>(Collections.nCopies(batch.size(), null));
+        final List<Integer> accepted = new ArrayList<>(batch.size());
+        final List<StoreInfo> storeInfos = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            final ActionData data = batch.get(i);
+            try {
+                storeInfos.add(checkModifiable(data.getKey(), data.getOldVersion()));
+                accepted.add(i);
+            } catch (final RuntimeException e) {
+                results.set(i, Either.right(e));
+            }
+        }
+        if (accepted.isEmpty()) {
+            return results;
+        }
+        try {
+            final List<Pair<String, ThrowingSupplier<ObjectLoader, IOException>>> newVersions = source.modifyKeys(
+                    accepted.stream().map(batch::get).map(data -> Pair.of(data.getKey(), data.getData())).collect(Collectors.toList()), ref,
+                    CommitMetaData.combine(accepted.stream().map(batch::get).map(ActionData::getCommitMetaData).collect(Collectors.toList())));
+            final Set<String> written = accepted.stream().map(batch::get).map(ActionData::getKey).collect(Collectors.toSet());
+            publish(written);
+            for (int i = 0; i < accepted.size(); i++) {
+                final ActionData data = batch.get(accepted.get(i));
+                final Pair<String, ThrowingSupplier<ObjectLoader, IOException>> newVersion = newVersions.get(i);
+                putModifiedKey(data.getKey(), data.getData(), storeInfos.get(i), newVersion);
+                results.set(accepted.get(i), Either.left(newVersion.getLeft()));
+            }
+        } catch (final RuntimeException e) {
+            accepted.forEach(i -> results.set(i, Either.right(e)));
+        }
+        return results;
+    }
+
+    private StoreInfo checkModifiable(final String key, final String oldVersion) {
         final Optional<StoreInfo> keyHolder = readKey(key);
         if (storageIsForbidden(keyHolder)) {
             throw new WrappingAPIException(new UnsupportedOperationException("modifyKey " + key));
@@ -250,15 +724,13 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         if (!oldVersion.equals(storeInfo.getVersion())) {
             throw new WrappingAPIException(new VersionIsNotSame(oldVersion, storeInfo.getVersion()));
         }
+        return storeInfo;
+    }
 
-        Pair<StoreInfo, Pair<String, ThrowingSupplier<ObjectLoader, IOException>>> dataPair = Pair.of(storeInfo,
-                source.modifyKey(key, ref, data, commitMetaData));
-        final StoreInfo newStoreInfo = dataPair.getLeft();
-        final Pair<String, ThrowingSupplier<ObjectLoader, IOException>> newVersion = dataPair.getRight();
-        putKeyFull(key,
-                Either.left(Optional.of(new StoreInfo(data.getObjectStreamProvider(newVersion.getRight(), threshold), newStoreInfo.getMetaData(),
-                        newVersion.getLeft(), newStoreInfo.getMetaDataVersion()))));
-        return newVersion.getLeft();
+    private void putModifiedKey(final String key, final ObjectStreamProvider data, final StoreInfo storeInfo,
+            final Pair<String, ThrowingSupplier<ObjectLoader, IOException>> newVersion) {
+        putKeyFull(key, Either.left(Optional.of(new StoreInfo(blobs.share(newVersion.getLeft(), data.getObjectStreamProvider(newVersion.getRight(), threshold)),
+                storeInfo.getMetaData(), newVersion.getLeft(), storeInfo.getMetaDataVersion(), lastModifiedAtTip(key)))));
     }
 
     public CompletableFuture<Either<String, FailedToLock>> deleteKey(final String key, final CommitMetaData commitMetaData) {
@@ -268,6 +740,7 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
     // TODO Should return something more useful?
     String internalDeleteKey(final String key, final CommitMetaData commitMetaData) {
         source.deleteKey(key, ref, commitMetaData);
+        publish(Set.of(key), List.of(), index -> index.with(List.of(), List.of(key)));
         putKey(key, Optional.empty());
         return ObjectId.zeroId().name();
     }
@@ -292,12 +765,14 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         Pair<Optional<StoreInfo>, String> data = Pair.of(storeInfo, source.modifyMetadata(metaData, oldMetaDataVersion, key, ref, commitMetaData));
         final String newMetaDataVersion = data.getRight();
         final StoreInfo si = data.getLeft().get();
+        final MetaData sharedMetaData = blobs.share(newMetaDataVersion, metaData);
         if (si.isMasterMetaData()) {
-            refCache.get().clear();
-            putKey(key, Optional.of(new StoreInfo(metaData, newMetaDataVersion)));
+            publish(Set.of(), List.of(""), index -> index);
+            putKey(key, Optional.of(new StoreInfo(sharedMetaData, newMetaDataVersion)));
         } else {
+            publish(Set.of(key));
             putKey(key, Optional
-                    .of(new StoreInfo(si.getStreamProvider(), metaData, si.getVersion(), newMetaDataVersion)));
+                    .of(new StoreInfo(si.getStreamProvider(), sharedMetaData, si.getVersion(), newMetaDataVersion, lastModifiedAtTip(key))));
         }
         return newMetaDataVersion;
 
@@ -310,13 +785,11 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
     @Nullable
     public Pair<String, UserData> getUser(final String userKeyPath) {
         final String key = createFullUserKeyPath(userKeyPath);
-        return unwrapCacheLoaderException(() -> {
-            final Either<Optional<StoreInfo>, Pair<String, UserData>> computed = readKeyFull(key);
-            if (computed != null) {
-                return computed.getRight();
-            }
-            return null;
-        });
+        final Either<Optional<StoreInfo>, Pair<String, UserData>> computed = readKeyFull(key);
+        if (computed != null) {
+            return computed.getRight();
+        }
+        return null;
     }
 
     private String createFullUserKeyPath(final String userKeyPath) {
@@ -361,6 +834,8 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         try {
             final UserData input = generateUser(data, userKeyData);
             final String newVersion = source.updateUser(key, ref, username, input);
+            publish(Set.of(key));
+            hashService.invalidate(userKeyData.getRight());
             Pair<String, UserData> p = Pair.of(newVersion, input);
             putKeyFull(key, Either.right(p));
             return p.getLeft();
@@ -394,6 +869,7 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         }
         try {
             final String newVersion = source.addUser(key, ref, username, data);
+            publish(Set.of(key));
             Pair<String, UserData> p = Pair.of(newVersion, data);
             putKeyFull(key, Either.right(p));
             return p.getLeft();
@@ -413,83 +889,71 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         final String key = createFullUserKeyPath(userKeyPath);
         try {
             source.deleteUser(key, ref, username);
-            refCache.get().remove(key);
+            final Either<Optional<StoreInfo>, Pair<String, UserData>> deleted = pollForKey(key);
+            publish(Set.of(key));
+            if (deleted != null && deleted.isRight() && deleted.getRight().isPresent()) {
+                hashService.invalidate(deleted.getRight().getRight());
+            }
             return ObjectId.zeroId().name();
         } catch (IOException e) {
             throw new UncheckedIOException("Failed to delete " + key, e);
         }
     }
 
-    @Deprecated
-    static <T> T unwrap(final CompletableFuture<T> future) {
-        try {
-            return future.orTimeout(5, TimeUnit.SECONDS).join();
-        } catch (CompletionException ce) {
-            final Throwable cause = ce.getCause();
-            if (cause instanceof WrappingAPIException) {
-                throw (WrappingAPIException) cause;
-            }
-            if (cause instanceof LoadException) {
-                throw (LoadException) cause;
-            }
-            if (cause instanceof UncheckedIOException) {
-                throw (UncheckedIOException) cause;
-            }
-            if (cause instanceof RuntimeException) {
-                throw (RuntimeException) cause;
-            }
-            throw new ShouldNeverHappenException("Error unwrapping future ", ce);
-        }
+    /*
+     * Everything cached is dropped and the keys that were present are warmed from the new snapshot, which builds its own index. Requests
+     * already reading the old snapshot finish on it.
+     */
+    public void reload() {
+        LOG.info("Reloading {}", ref);
+        final List<String> present = publish(Set.of(), List.of(""), null);
+        CompletableFuture.runAsync(() -> {
+            present.forEach(this::readKeyFullAsync);
+            LOG.info("Reloaded {}", ref);
+        }, keyLoader);
     }
 
-    public void reload() {
-        CompletableFuture.runAsync(((Supplier<Runnable>) () -> {
-            LOG.info("Reloading {}", ref);
-            final Cache<String, Either<Optional<StoreInfo>, Pair<String, UserData>>> oldRefCache = refCache.compareAndExchange(refCache.get(),
-                    getStorage(MAX_ENTRIES));
-            return () -> {
-                StreamSupport.stream(oldRefCache.entries().spliterator(), true).filter(e -> {
-                    final Either<Optional<StoreInfo>, Pair<String, UserData>> value = e.getValue();
-                    return (value.isLeft() && value.getLeft().isPresent());
-                }).map(CacheEntry::getKey)
-                        .forEach(key -> refCache.get().get(key));
-                oldRefCache.close();
-                LOG.info("Reloaded {}", ref);
-            };
-        }).get());
-    }
-
-    private <T> T unwrapCacheLoaderException(final Supplier<T> supplier) {
-        try {
-            return supplier.get();
-        } catch (CacheLoaderException cle) {
-            final Throwable cause = cle.getCause();
-            if (cause != null) {
-                if (cause instanceof LoadException) {
-                    throw (LoadException) cause;
-                }
-                if (cause instanceof UncheckedIOException) {
-                    throw (UncheckedIOException) cause;
-                }
-                if (cause instanceof WrappingAPIException) {
-                    throw (WrappingAPIException) cause;
-                }
-                if (cause instanceof RuntimeException) {
-                    throw (RuntimeException) cause;
-                }
-            }
-            throw cle;
-        }
+    /*
+     * Only the cached keys touched by a changed path are dropped, and those that were present are reloaded from the new commit. The old
+     * snapshot keeps serving reads until the new one is published. A changed directory .metadata touches every key below that directory.
+     */
+    public void reload(final Map<String, ChangeType> changes) {
+        LOG.info("Refreshing {} changed paths in {}", changes.size(), ref);
+        final Map<Boolean, List<String>> indexed = changes.entrySet().stream()
+                .filter(e -> !e.getKey().endsWith(JitStaticConstants.METADATA) && !e.getKey().startsWith(JitStaticConstants.USERS))
+                .collect(Collectors.partitioningBy(e -> e.getValue() == ChangeType.DELETE, Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+        final List<String> metaDataDirectories = changes.keySet().stream()
+                .filter(path -> path.equals(JitStaticConstants.METADATA) || path.endsWith("/" + JitStaticConstants.METADATA))
+                .map(path -> path.substring(0, path.length() - JitStaticConstants.METADATA.length()))
+                .collect(Collectors.toList());
+        final Set<String> keys = changes.keySet().stream()
+                .map(path -> path.endsWith(JitStaticConstants.METADATA) ? path.substring(0, path.length() - JitStaticConstants.METADATA.length()) : path)
+                .collect(Collectors.toCollection(HashSet::new));
+        keys.addAll(changes.keySet());
+        final List<String> touched = publish(keys, metaDataDirectories, index -> index.with(indexed.get(false), indexed.get(true)));
+        touched.forEach(this::readKeyFullAsync);
+        LOG.info("Refreshed {} keys in {}", touched.size(), ref);
     }
 
     @Override
+    /*
+     * The lock goes back to the lock service, so writes still queued on it run on the next holder started for this ref.
+     */
     public void close() {
-        // NOOP
+        final RefSnapshot current;
+        synchronized (snapshotLock) {
+            closed = true;
+            current = snapshot.get();
+        }
+        current.retire();
+        if (started) {
+            lock.close();
+        }
     }
 
     @Override
     public <T> CompletableFuture<Either<T, FailedToLock>> enqueueAndReadBlock(final Supplier<T> supplier) {
-        return CompletableFuture.supplyAsync(() -> Either.left(supplier.get()), refLockService.getRepoWriter());
+        return CompletableFuture.supplyAsync(() -> Either.left(supplier.get()), refLockService.getRepoWriter(ref));
     }
 
     @Override
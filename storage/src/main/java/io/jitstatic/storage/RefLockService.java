@@ -28,6 +28,12 @@ public interface RefLockService extends AutoCloseable {
 
     public void returnLock(LockService keys);
 
+    public void removeLock(String ref);
+
     public ExecutorService getRepoWriter();
 
+    public ExecutorService getRepoWriter(String ref);
+
+    public ExecutorService getKeyLoader();
+
 }
@@ -0,0 +1,165 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import com.spencerwi.either.Either;
+
+import io.jitstatic.auth.UserData;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.utils.Pair;
+
+/*
+ * The view of a ref at one commit. A request pins the snapshot it starts on and every key it loads is read from that commit, so a push
+ * landing in the middle of the request can't mix keys from before and after it. A push or a write publishes a new snapshot and the old one
+ * is disposed when the last request reading from it lets go. Snapshots share the ref's cache, each one links to its successor with the keys
+ * that changed between them, so an entry cached at one generation can be checked against another without copying the cache. The path index
+ * belongs to the snapshot, so a pinned request lists and misses keys as of its commit.
+ */
+final class RefSnapshot {
+    private static final int DISPOSED = -1;
+    private final Map<String, CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>>> loads = new ConcurrentHashMap<>();
+    private final AtomicInteger pins = new AtomicInteger();
+    private final AtomicBoolean indexing = new AtomicBoolean();
+    private final String commitId;
+    private final long generation;
+    private final boolean cached;
+    private final Runnable onDispose;
+    private volatile Predicate<String> touched;
+    private volatile RefSnapshot next;
+    private volatile boolean retired;
+    private volatile PathIndex index;
+
+    RefSnapshot(@Nullable final String commitId, final long generation, final boolean cached, final Runnable onDispose) {
+        this.commitId = commitId;
+        this.generation = generation;
+        this.cached = cached;
+        this.onDispose = onDispose;
+    }
+
+    /*
+     * Null when the commit isn't known, keys are then read from wherever the ref points.
+     */
+    @Nullable
+    String getCommitId() {
+        return commitId;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    /*
+     * False for a snapshot of a closed ref, which reads everything from the repository.
+     */
+    boolean isCached() {
+        return cached;
+    }
+
+    Map<String, CompletableFuture<Either<Optional<StoreInfo>, Pair<String, UserData>>>> getLoads() {
+        return loads;
+    }
+
+    /*
+     * Set before the successor is published.
+     */
+    void succeed(final RefSnapshot next, final Predicate<String> touched) {
+        this.touched = touched;
+        this.next = next;
+    }
+
+    /*
+     * True if no snapshot from this one up to the given generation changed the key.
+     */
+    boolean isUnchanged(final String key, final long until) {
+        RefSnapshot at = this;
+        while (at.generation < until) {
+            final RefSnapshot following = at.next;
+            if (following == null || at.touched.test(key)) {
+                return false;
+            }
+            at = following;
+        }
+        return true;
+    }
+    @Nullable
+    PathIndex getIndex() {
+        return index;
+    }
+
+    void setIndex(final PathIndex index) {
+        this.index = index;
+    }
+
+    /*
+     * An index is built at most once per snapshot, a failed build leaves the snapshot without one.
+     */
+    boolean startIndexing() {
+        return indexing.compareAndSet(false, true);
+    }
+
+    void cancelIndexing() {
+        indexing.set(false);
+    }
+
+    boolean pin() {
+        for (;;) {
+            final int current = pins.get();
+            if (current == DISPOSED) {
+                return false;
+            }
+            if (pins.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (pins.decrementAndGet() == 0 && retired) {
+            dispose();
+        }
+    }
+
+    void retire() {
+        retired = true;
+        dispose();
+    }
+
+    boolean isDisposed() {
+        return pins.get() == DISPOSED;
+    }
+
+    private void dispose() {
+        if (pins.compareAndSet(0, DISPOSED)) {
+            loads.clear();
+            onDispose.run();
+        }
+    }
+}
@@ -20,9 +20,13 @@ package io.jitstatic.storage;
  * #L%
  */
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.annotation.Nullable;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
 
@@ -35,11 +39,20 @@ import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.utils.CheckHealth;
+import io.jitstatic.utils.Functions.ThrowingConsumer;
 import io.jitstatic.utils.Pair;
 
 public interface Storage extends AutoCloseable, CheckHealth {
     public CompletableFuture<Optional<StoreInfo>> getKey(String key, String ref);
 
+    /*
+     * The key if it's already cached, without blocking or loading anything. Null means the caller has to go through getKey.
+     */
+    @Nullable
+    public default StoreInfo peekKey(final String key, final String ref) {
+        return null;
+    }
+
     public void close();
 
     public CompletableFuture<Either<String, FailedToLock>> putKey(String key, String ref, ObjectStreamProvider data, String version,
@@ -56,6 +69,17 @@ public interface Storage extends AutoCloseable, CheckHealth {
 
     public CompletableFuture<List<Pair<List<Pair<String, StoreInfo>>, String>>> getList(List<Pair<List<Pair<String, Boolean>>, String>> input);
 
+    /*
+     * Hands the keys of the listing to the consumer one at a time as they load, in the order their loads complete, with at most maxInFlight
+     * keys loading at once. The consumer runs on the calling thread, which blocks between keys, so a slow consumer holds back further loads.
+     */
+    public default void streamListForRef(final List<Pair<String, Boolean>> keyPairs, final String ref, final int maxInFlight,
+            final ThrowingConsumer<Pair<String, StoreInfo>, IOException> consumer) throws IOException {
+        for (final Pair<String, StoreInfo> key : getListForRefSync(keyPairs, ref)) {
+            consumer.accept(key);
+        }
+    }
+
     public UserData getUser(String username, String defaultRef, String realm) throws RefNotFoundException;
 
     public Pair<String, UserData> getUserData(String username, String defaultRef, String realm) throws RefNotFoundException;
@@ -67,4 +91,67 @@ public interface Storage extends AutoCloseable, CheckHealth {
     public CompletableFuture<String> addUser(String key, String ref, String path, String name, UserData data);
 
     public void deleteUser(String key, String ref, String jitstaticKeyadminRealm, String name);
+
+    /*
+     * Blocking counterparts of the methods above, for callers that already run on a thread that may block, such as a virtual thread. A failed
+     * future is rethrown as its cause.
+     */
+    public default Optional<StoreInfo> getKeySync(final String key, final String ref) {
+        return join(getKey(key, ref));
+    }
+
+    public default Either<String, FailedToLock> putKeySync(final String key, final String ref, final ObjectStreamProvider data, final String version,
+            final CommitMetaData commitMetaData) {
+        return join(putKey(key, ref, data, version, commitMetaData));
+    }
+
+    public default String addKeySync(final String key, final String branch, final ObjectStreamProvider data, final MetaData metaData,
+            final CommitMetaData commitMetaData) {
+        return join(addKey(key, branch, data, metaData, commitMetaData));
+    }
+
+    public default Either<String, FailedToLock> putMetaDataSync(final String key, final String ref, final MetaData metaData, final String metaDataVersion,
+            final CommitMetaData commitMetaData) {
+        return join(putMetaData(key, ref, metaData, metaDataVersion, commitMetaData));
+    }
+
+    public default Either<String, FailedToLock> deleteSync(final String key, final String ref, final CommitMetaData commitMetaData) {
+        return join(delete(key, ref, commitMetaData));
+    }
+
+    public default List<Pair<String, StoreInfo>> getListForRefSync(final List<Pair<String, Boolean>> keyPairs, final String ref) {
+        return join(getListForRef(keyPairs, ref));
+    }
+
+    public default List<Pair<List<Pair<String, StoreInfo>>, String>> getListSync(final List<Pair<List<Pair<String, Boolean>>, String>> input) {
+        return join(getList(input));
+    }
+
+    public default Pair<MetaData, String> getMetaKeySync(final String key, final String ref) {
+        return join(getMetaKey(key, ref));
+    }
+
+    public default Either<String, FailedToLock> updateUserSync(final String key, final String ref, final String path, final String username,
+            final UserData data, final String version) {
+        return join(updateUser(key, ref, path, username, data, version));
+    }
+
+    public default String addUserSync(final String key, final String ref, final String path, final String name, final UserData data) {
+        return join(addUser(key, ref, path, name, data));
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
 }
@@ -20,16 +20,18 @@ package io.jitstatic.storage;
  * #L%
  */
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import io.jitstatic.utils.Pair;
+import io.jitstatic.utils.PathCodec;
 
 public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
     public static final DotFinder DOT_FINDER = new DotFinder();
@@ -40,11 +42,9 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
     private Tree(final List<Pair<String, Boolean>> data) {
         final Node<String, Pair<String, Boolean>> node = new AnchorNode<>(FWD_SLASH);
         for (Pair<String, Boolean> p : data) {
-            String key = p.getLeft().replaceAll("/+", "/");
-            if (key.startsWith("/") && key.length() > 1) {
-                key = key.substring(1);
-            }
-            node.accept(new Inserter(Pair.of(key, p.getRight())));
+            final String key = p.getLeft();
+            final String normalized = PathCodec.normalize(key);
+            node.accept(new Inserter(normalized == key ? p : Pair.of(normalized, p.getRight())));
         }
         this.root = node;
     }
@@ -92,14 +92,6 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
 
         protected abstract Optional<Node<T, X>> findNodeWith(final T value);
 
-        private static <T extends Comparable<T>, X> Optional<Node<T, X>> extractFromTreeSet(final TreeSet<Node<T, X>> children, final T value) {
-            final SortedSet<Node<T, X>> tailSet = children.tailSet(new SearchNode<>(value));
-            if (tailSet.isEmpty()) {
-                return Optional.empty();
-            }
-            final Node<T, X> first = tailSet.first();
-            return first.value.equals(value) ? Optional.of(first) : Optional.empty();
-        }
 
         @Override
         public int hashCode() {
@@ -182,12 +174,126 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
         }
     }
 
+    /*
+     * Children kept sorted by value in a plain array, found by binary search. At most one child per value, like the set it replaces.
+     */
+    static final class Children<T extends Comparable<T>, X> extends AbstractCollection<Node<T, X>> {
+        private Node<T, X>[] nodes;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        Children() {
+            this.nodes = new Node[4];
+        }
+
+        Children(final Collection<Node<T, X>> childrenToCopy) {
+            this();
+            for (Node<T, X> child : childrenToCopy) {
+                add(child);
+            }
+        }
+
+        Optional<Node<T, X>> find(final T value) {
+            final int idx = indexOf(value);
+            return idx < 0 ? Optional.empty() : Optional.of(nodes[idx]);
+        }
+
+        private int indexOf(final T value) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int cmp = nodes[mid].value.compareTo(value);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        @Override
+        public boolean add(final Node<T, X> node) {
+            final int idx = indexOf(node.value);
+            if (idx >= 0) {
+                return false;
+            }
+            final int at = -(idx + 1);
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            System.arraycopy(nodes, at, nodes, at + 1, size - at);
+            nodes[at] = node;
+            size++;
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(final Object o) {
+            if (!(o instanceof Node)) {
+                return false;
+            }
+            final int idx = indexOf(((Node<T, X>) o).value);
+            if (idx < 0) {
+                return false;
+            }
+            removeAt(idx);
+            return true;
+        }
+
+        private void removeAt(final int idx) {
+            System.arraycopy(nodes, idx + 1, nodes, idx, size - idx - 1);
+            nodes[--size] = null;
+        }
+
+        @Override
+        public Iterator<Node<T, X>> iterator() {
+            return new Iterator<>() {
+                private int next;
+                private int last = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Node<T, X> next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    return nodes[next++];
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    removeAt(last);
+                    next = last;
+                    last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
     static class BranchNode<T extends Comparable<T>, X> extends Node<T, X> {
-        private final TreeSet<Node<T, X>> children;
+        private final Children<T, X> children;
 
         BranchNode(final T value, final Node<T, X> parent) {
             super(value, Objects.requireNonNull(parent));
-            children = new TreeSet<>();
+            children = new Children<>();
         }
 
         @Override
@@ -197,7 +303,7 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
 
         @Override
         protected Optional<Node<T, X>> findNodeWith(T value) {
-            return Node.extractFromTreeSet(children, value);
+            return children.find(value);
         }
 
         @Override
@@ -240,9 +346,9 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
     }
 
     static class LevelNode<T extends Comparable<T>, X> extends Node<T, X> {
-        private final TreeSet<Node<T, X>> children;
+        private final Children<T, X> children;
 
-        LevelNode(final T value, final Node<T, X> parent, final TreeSet<Node<T, X>> inheritedChildren) {
+        LevelNode(final T value, final Node<T, X> parent, final Children<T, X> inheritedChildren) {
             super(value, parent);
             children = inheritedChildren;
             final Iterator<Node<T, X>> iterator = inheritedChildren.iterator();
@@ -257,11 +363,11 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
         }
 
         public LevelNode(final T value, final Collection<Node<T, X>> childrenToCopy, final Node<T, X> node) {
-            this(value, node, new TreeSet<>(childrenToCopy));
+            this(value, node, new Children<>(childrenToCopy));
         }
 
         LevelNode(final T value, final Node<T, X> parent) {
-            this(value, parent, new TreeSet<>());
+            this(value, parent, new Children<>());
         }
 
         @Override
@@ -276,7 +382,7 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
 
         @Override
         protected Optional<Node<T, X>> findNodeWith(T value) {
-            return Node.extractFromTreeSet(children, value);
+            return children.find(value);
         }
 
         @Override
@@ -327,11 +433,11 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
     }
 
     static final class RootNode<T extends Comparable<T>, X> extends Node<T, X> {
-        private final TreeSet<Node<T, X>> children;
+        private final Children<T, X> children;
 
         RootNode(final T value, final Node<T, X> parent) {
             super(value, Objects.requireNonNull(parent));
-            children = new TreeSet<>();
+            children = new Children<>();
         }
 
         @Override
@@ -341,7 +447,7 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
 
         @Override
         protected Optional<Node<T, X>> findNodeWith(T value) {
-            return Node.extractFromTreeSet(children, value);
+            return children.find(value);
         }
 
         @Override
@@ -361,8 +467,8 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
 
         public Void visitNode(final Node<String, Pair<String, Boolean>> parent) {
             final String element = p.getLeft();
-            final int firstSlash = element.indexOf(FWD_SLASH);
-            if (firstSlash > -1) {
+            final int firstSlash = PathCodec.elementEnd(element, 0);
+            if (firstSlash < element.length()) {
                 final String head = element.substring(0, firstSlash);
                 if (element.length() != firstSlash + 1) {
                     return parent.createOrGetBranch(head)
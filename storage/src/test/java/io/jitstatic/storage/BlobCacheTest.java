@@ -0,0 +1,109 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.source.DirectObjectStreamProvider;
+import io.jitstatic.source.GzipObjectStreamProvider;
+import io.jitstatic.source.LargeObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
+
+class BlobCacheTest {
+
+    @Test
+    void testContentIsSharedByBlobId() throws IOException {
+        BlobCache blobs = new BlobCache();
+        ObjectStreamProvider first = blobs.content("a", () -> toProvider(new byte[3]));
+        assertSame(first, blobs.content("a", () -> {
+            throw new IOException("Should not inflate again");
+        }));
+        assertSame(first, blobs.share("a", toProvider(new byte[3])));
+        assertNotSame(first, blobs.content("b", () -> toProvider(new byte[3])));
+    }
+
+    @Test
+    void testLargeContentIsNotKept() throws IOException {
+        BlobCache blobs = new BlobCache();
+        ObjectStreamProvider large = new LargeObjectStreamProvider(() -> null, 2_000_000);
+        assertSame(large, blobs.content("a", () -> large));
+        assertEquals(0, blobs.size());
+    }
+
+    @Test
+    void testMetaDataIsSharedByBlobId() throws IOException {
+        BlobCache blobs = new BlobCache();
+        MetaData metaData = mock(MetaData.class);
+        assertSame(metaData, blobs.metaData("a", () -> metaData));
+        assertSame(metaData, blobs.metaData("a", () -> mock(MetaData.class)));
+        assertEquals(1, blobs.size());
+    }
+
+    @Test
+    void testOffHeapContentIsMovedToDirectBuffers() throws IOException {
+        BlobCache blobs = new BlobCache(true);
+        ObjectStreamProvider first = blobs.content("a", () -> toProvider(new byte[] { 1, 2 }));
+        assertTrue(first instanceof DirectObjectStreamProvider);
+        assertArrayEquals(new byte[] { 1, 2 }, first.asByteArray());
+        assertSame(first, blobs.share("a", toProvider(new byte[] { 1, 2 })));
+        ObjectStreamProvider large = new LargeObjectStreamProvider(() -> null, 2_000_000);
+        assertSame(large, blobs.share("b", large));
+    }
+
+    @Test
+    void testGzipVariantIsMadeOncePerBlob() throws IOException {
+        BlobCache blobs = new BlobCache(false, 100);
+        ObjectStreamProvider first = blobs.content("a", () -> toProvider(new byte[1000]));
+        ObjectStreamProvider gzip = first.getEncoded(GzipObjectStreamProvider.GZIP);
+        assertNotNull(gzip);
+        assertTrue(gzip.getSize() < 1000);
+        assertEquals(1000 + gzip.getSize(), first.getRetainedSize());
+        try (InputStream is = new GZIPInputStream(gzip.getInputStream())) {
+            assertArrayEquals(new byte[1000], is.readAllBytes());
+        }
+        assertArrayEquals(new byte[1000], first.asByteArray());
+        assertSame(first, blobs.share("a", toProvider(new byte[1000])));
+        assertNull(blobs.content("b", () -> toProvider(new byte[99])).getEncoded(GzipObjectStreamProvider.GZIP));
+    }
+
+    @Test
+    void testIncompressibleContentHasNoGzipVariant() throws IOException {
+        BlobCache blobs = new BlobCache(true, 1);
+        ObjectStreamProvider stored = blobs.content("a", () -> toProvider(new byte[] { 1, 2 }));
+        assertTrue(stored instanceof DirectObjectStreamProvider);
+        assertNull(stored.getEncoded(GzipObjectStreamProvider.GZIP));
+    }
+}
@@ -0,0 +1,99 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.GzipObjectStreamProvider;
+import io.jitstatic.source.LargeObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
+
+class CacheBudgetTest {
+
+    @Test
+    void testRefOverrides() {
+        Map<String, Long> overrides = new LinkedHashMap<>();
+        overrides.put("refs/heads/master", 500L);
+        overrides.put("refs/heads/feature/.*", 10L);
+        CacheBudget budget = new CacheBudget(1000, 100, overrides, 10, 1_000_000);
+        assertEquals(500, budget.getRefMaxBytes("refs/heads/master"));
+        assertEquals(10, budget.getRefMaxBytes("refs/heads/feature/a"));
+        assertEquals(100, budget.getRefMaxBytes("refs/heads/other"));
+    }
+
+    @Test
+    void testRefBudgetIsCappedByGlobal() {
+        CacheBudget budget = new CacheBudget(1000, 5000, Map.of("refs/heads/master", 2000L), 10, 1_000_000);
+        assertEquals(1000, budget.getRefMaxBytes("refs/heads/master"));
+        assertEquals(1000, budget.getRefMaxBytes("refs/heads/other"));
+    }
+
+    @Test
+    void testWeigh() {
+        MetaData metaData = mock(MetaData.class);
+        assertEquals(CacheBudget.ENTRY_OVERHEAD + 3, CacheBudget.weigh(new StoreInfo(toProvider(new byte[3]), metaData, "1", "1")));
+        assertEquals(CacheBudget.ENTRY_OVERHEAD,
+                CacheBudget.weigh(new StoreInfo(new LargeObjectStreamProvider(() -> null, 2_000_000), metaData, "1", "1")));
+        assertEquals(CacheBudget.ENTRY_OVERHEAD, CacheBudget.weigh(new StoreInfo(metaData, "1")));
+    }
+
+    @Test
+    void testGzipVariantIsWeighed() throws IOException {
+        MetaData metaData = mock(MetaData.class);
+        ObjectStreamProvider withGzip = GzipObjectStreamProvider.of(toProvider(new byte[1000]), false);
+        long gzipSize = withGzip.getEncoded(GzipObjectStreamProvider.GZIP).getSize();
+        assertEquals(CacheBudget.ENTRY_OVERHEAD + 1000 + gzipSize, CacheBudget.weigh(new StoreInfo(withGzip, metaData, "1", "1")));
+    }
+
+    @Test
+    void testSharedPayloadIsCountedOnce() {
+        MetaData metaData = mock(MetaData.class);
+        CacheBudget budget = new CacheBudget();
+        StoreInfo onMaster = new StoreInfo(toProvider(new byte[3]), metaData, "1", "1");
+        StoreInfo onBranch = new StoreInfo(toProvider(new byte[3]), metaData, "1", "1");
+        budget.retain(onMaster);
+        budget.retain(onBranch);
+        budget.retain(null);
+        assertEquals(3 * CacheBudget.ENTRY_OVERHEAD + 3, budget.getUsedBytes());
+        budget.release(onMaster);
+        assertEquals(2 * CacheBudget.ENTRY_OVERHEAD + 3, budget.getUsedBytes());
+        budget.release(onBranch);
+        budget.release(null);
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    void testIllegalBudgets() {
+        assertThrows(IllegalArgumentException.class, () -> new CacheBudget(0, 1, Map.of(), 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CacheBudget(1, 1, Map.of(), 0, 1));
+    }
+}
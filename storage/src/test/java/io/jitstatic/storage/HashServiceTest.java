@@ -47,4 +47,46 @@ class HashServiceTest {
         assertTrue(hash.hasSamePassword(data, "password"));
     }
 
+    @Test
+    void testVerifiedPasswordIsRemembered() {
+        HashService hash = new HashService(null, 5, 60, 10);
+        UserData userData = hash.constructUserData(Set.of(), "password");
+        assertFalse(hash.hasSamePassword(userData, "wrong"));
+        assertFalse(hash.isVerified(userData, "wrong"));
+        assertTrue(hash.hasSamePassword(userData, "password"));
+        assertTrue(hash.isVerified(userData, "password"));
+        assertFalse(hash.isVerified(userData, "wrong"));
+        assertFalse(hash.hasSamePassword(userData, "wrong"));
+        hash.invalidate(userData);
+        assertFalse(hash.isVerified(userData, "password"));
+        assertTrue(hash.hasSamePassword(userData, "password"));
+    }
+
+    @Test
+    void testVerifiedPasswordsCanBeTurnedOff() {
+        HashService hash = new HashService(null, 5, 0, 10);
+        UserData userData = hash.constructUserData(Set.of(), "password");
+        assertTrue(hash.hasSamePassword(userData, "password"));
+        assertFalse(hash.isVerified(userData, "password"));
+        assertFalse(hash.hasSamePassword(userData, "wrong"));
+        hash.invalidate(userData);
+    }
+
+    @Test
+    void testVerifiedPasswordsAreBounded() {
+        HashService hash = new HashService(null, 5, 60, 1);
+        UserData first = hash.constructUserData(Set.of(), "first");
+        UserData second = hash.constructUserData(Set.of(), "second");
+        assertTrue(hash.hasSamePassword(first, "first"));
+        assertTrue(hash.hasSamePassword(second, "second"));
+        assertTrue(hash.isVerified(first, "first"));
+        assertFalse(hash.isVerified(second, "second"));
+        assertFalse(hash.hasSamePassword(second, "first"));
+    }
+
+    @Test
+    void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new HashService(null, 5, -1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new HashService(null, 5, 60, 0));
+    }
 }
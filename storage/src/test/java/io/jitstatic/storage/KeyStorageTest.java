@@ -29,14 +29,19 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
@@ -50,13 +55,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -95,6 +103,12 @@ public class KeyStorageTest {
     private HashService hashService = new HashService();
     private RefLockService clusterService = new LocalRefLockService();
 
+    @BeforeEach
+    public void setup() throws RefNotFoundException, IOException {
+        // The mocked source doesn't model the tree, so the holders run without a key filter
+        when(source.getList(eq("/"), anyString(), any(), eq(true))).thenThrow(new IOException("No tree"));
+    }
+
     @Test
     public void testGetAKey() throws Throwable {
         try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root"); InputStream mtest1 = getMetaData();) {
@@ -112,6 +126,48 @@ public class KeyStorageTest {
         }
     }
 
+    @Test
+    public void testPeekKeyOnlyReturnsCachedKeys() throws Throwable {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root"); InputStream mtest1 = getMetaData();) {
+            SourceInfo si1 = mock(SourceInfo.class);
+            when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+            when(si1.readMetaData()).thenCallRealMethod();
+            when(si1.getMetadataInputStream()).thenReturn(mtest1);
+            when(si1.getSourceVersion()).thenReturn(SHA_1);
+            when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+            when(source.getSourceInfo(eq("key"), anyString())).thenReturn(si1);
+
+            assertNull(ks.peekKey("key", null));
+            StoreInfo loaded = ks.getKey("key", null).get().get();
+            assertSame(loaded, ks.peekKey("key", null));
+            assertNull(ks.peekKey("other", null));
+            assertNull(ks.peekKey("key", "refs/heads/notloaded"));
+            assertNull(ks.peekKey("dir/", null));
+        }
+    }
+
+    @Test
+    public void testLastModifiedIsLookedUpWhenAskedFor() throws Throwable {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root"); InputStream mtest1 = getMetaData();) {
+            SourceInfo si1 = mock(SourceInfo.class);
+            when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+            when(si1.readMetaData()).thenCallRealMethod();
+            when(si1.getMetadataInputStream()).thenReturn(mtest1);
+            when(si1.getSourceVersion()).thenReturn(SHA_1);
+            when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+            when(source.getSourceInfo(eq("key"), anyString())).thenReturn(si1);
+            when(source.getLastModified(eq("key"), anyString(), any())).thenReturn(1_000L);
+
+            StoreInfo loaded = ks.getKey("key", null).get().get();
+            verify(source, never()).getLastModified(eq("key"), anyString(), any());
+            assertEquals(0L, loaded.peekLastModified());
+            assertEquals(1_000L, loaded.getLastModified());
+            assertEquals(1_000L, loaded.peekLastModified());
+            assertEquals(1_000L, ks.getKey("key", null).get().get().getLastModified());
+            verify(source, times(1)).getLastModified(eq("key"), anyString(), any());
+        }
+    }
+
     @Test
     public void testGetARootKey() throws Throwable {
         try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root")) {
@@ -586,6 +642,28 @@ public class KeyStorageTest {
         }
     }
 
+    @Test
+    public void testAddKeySyncWithExistingKeyThrowsCause() throws Exception {
+        String key = "somekey";
+        String branch = "refs/heads/newbranch";
+        byte[] pretty = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(MAPPER.readTree(getByteArray(1)));
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        MetaData metaData = mock(MetaData.class);
+
+        when(sourceInfo.readMetaData()).thenReturn(metaData);
+        when(sourceInfo.getMetaDataVersion()).thenReturn("2");
+        when(sourceInfo.getSourceVersion()).thenReturn("1");
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider(pretty));
+        when(source.getSourceInfo(eq(key), eq(branch))).thenReturn(sourceInfo);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root")) {
+            ks.addRef(branch);
+            assertTrue(ks.getKeySync(key, branch).isPresent());
+            assertSame(KeyAlreadyExist.class, assertThrows(WrappingAPIException.class, () -> ks.addKeySync(key, branch, toProvider(pretty),
+                    new MetaData(new HashSet<>(), null, false, false, List.of(), null, null), new CommitMetaData("user", "mail", "msg", "Test",
+                            JITSTATIC_NOWHERE))).getCause().getClass());
+        }
+    }
+
     @Test
     public void testGetListForRef() throws RefNotFoundException, IOException {
         try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root"); InputStream mtest3 = getMetaData()) {
@@ -599,7 +677,7 @@ public class KeyStorageTest {
             when(si.getSourceVersion()).thenReturn(SHA_1);
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
             when(source.getSourceInfo(eq(dirkey), anyString())).thenReturn(si);
-            when(source.getList(eq(key), anyString(), Mockito.anyBoolean())).thenReturn(List.of(dirkey));
+            when(source.getList(eq(key), anyString(), any(), Mockito.anyBoolean())).thenReturn(List.of(dirkey));
             List<Pair<String, Boolean>> keys = List.of(Pair.of(key, false));
             List<Pair<String, StoreInfo>> list = ks.getListForRef(keys, REF_HEADS_MASTER).orTimeout(5, TimeUnit.SECONDS).join();
             assertEquals(1, list.size());
@@ -608,6 +686,29 @@ public class KeyStorageTest {
         }
     }
 
+    @Test
+    public void testStreamListForRef() throws RefNotFoundException, IOException {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root")) {
+            for (String dirkey : List.of("dir/a", "dir/b", "dir/c")) {
+                SourceInfo si = mock(SourceInfo.class);
+                when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+                when(si.readMetaData()).thenCallRealMethod();
+                when(si.getMetadataInputStream()).thenAnswer(i -> getMetaData());
+                when(si.getSourceVersion()).thenReturn(SHA_1);
+                when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
+                when(source.getSourceInfo(eq(dirkey), anyString())).thenReturn(si);
+            }
+            when(source.getList(eq("dir/"), anyString(), any(), Mockito.anyBoolean())).thenReturn(List.of("dir/a", "dir/b", "dir/c", "dir/missing"));
+            Set<String> streamed = new HashSet<>();
+            ks.streamListForRef(List.of(Pair.of("dir/", false)), REF_HEADS_MASTER, 1, p -> assertTrue(streamed.add(p.getLeft())));
+            assertEquals(Set.of("dir/a", "dir/b", "dir/c"), streamed);
+            streamed.clear();
+            ks.streamListForRef(List.of(Pair.of("dir/", false)), REF_HEADS_MASTER, 16, p -> assertTrue(streamed.add(p.getLeft())));
+            assertEquals(Set.of("dir/a", "dir/b", "dir/c"), streamed);
+            assertThrows(IllegalArgumentException.class, () -> ks.streamListForRef(List.of(Pair.of("dir/", false)), REF_HEADS_MASTER, 0, p -> {}));
+        }
+    }
+
     @Test
     public void testGetList() throws Exception {
         try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root"); InputStream mtest3 = getMetaData()) {
@@ -621,7 +722,7 @@ public class KeyStorageTest {
             when(si.getSourceVersion()).thenReturn(SHA_1);
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
             when(source.getSourceInfo(eq(dirkey), anyString())).thenReturn(si);
-            when(source.getList(eq(key), anyString(), Mockito.anyBoolean())).thenReturn(List.of(dirkey));
+            when(source.getList(eq(key), anyString(), any(), Mockito.anyBoolean())).thenReturn(List.of(dirkey));
             List<Pair<List<Pair<String, Boolean>>, String>> keys = List.of(Pair.of(List.of(Pair.of(key, false)), REF_HEADS_MASTER));
             List<Pair<List<Pair<String, StoreInfo>>, String>> list = ks.getList(keys).orTimeout(5, TimeUnit.SECONDS).join();
             assertEquals(1, list.size());
@@ -665,7 +766,7 @@ public class KeyStorageTest {
 
     @Test
     public void testGetListNoRef() throws RefNotFoundException, IOException {
-        when(source.getList(eq("key/"), eq("refs/heads/master"), Mockito.anyBoolean())).thenThrow(new RefNotFoundException("test"));
+        when(source.getList(eq("key/"), eq("refs/heads/master"), any(), Mockito.anyBoolean())).thenThrow(new RefNotFoundException("test"));
         try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root")) {
             List<Pair<String, StoreInfo>> listForRef = ks.getListForRef(List.of(Pair.of("key/", false)), "refs/heads/master").orTimeout(5, TimeUnit.SECONDS)
                     .join();
@@ -675,7 +776,7 @@ public class KeyStorageTest {
 
     @Test
     public void testGetListIOException() throws RefNotFoundException, IOException {
-        when(source.getList(eq("key/"), eq("refs/heads/master"), Mockito.anyBoolean())).thenThrow(new IOException("test"));
+        when(source.getList(eq("key/"), eq("refs/heads/master"), any(), Mockito.anyBoolean())).thenThrow(new IOException("test"));
         try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root")) {
             List<Pair<String, StoreInfo>> listForRef = ks.getListForRef(List.of(Pair.of("key/", false)), "refs/heads/master").orTimeout(5, TimeUnit.SECONDS)
                     .join();
@@ -832,6 +933,78 @@ public class KeyStorageTest {
         }
     }
 
+    @Test
+    public void testRefHolderIsCreatedOnFirstAccess() throws Exception {
+        String other = "refs/heads/other";
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root")) {
+            ks.addRef(other);
+            verify(source, never()).getTip(eq(other));
+            assertFalse(ks.getKey("key", other).orTimeout(5, TimeUnit.SECONDS).join().isPresent());
+            assertFalse(ks.getKey("key", other).orTimeout(5, TimeUnit.SECONDS).join().isPresent());
+            verify(source, times(1)).getTip(eq(other));
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRefsAreEvicted() throws Exception {
+        String master = "refs/heads/master";
+        String a = "refs/heads/a";
+        String b = "refs/heads/b";
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", new CacheBudget(), 2, 0)) {
+            ks.addRef(a);
+            ks.addRef(b);
+            for (String ref : List.of(master, a, b)) {
+                ks.getKey("key", ref).orTimeout(5, TimeUnit.SECONDS).join();
+            }
+            ks.evictRefs();
+            for (String ref : List.of(master, b, a)) {
+                ks.getKey("key", ref).orTimeout(5, TimeUnit.SECONDS).join();
+            }
+            verify(source, times(1)).getTip(eq(master));
+            verify(source, times(1)).getTip(eq(b));
+            verify(source, times(2)).getTip(eq(a));
+        }
+    }
+
+    @Test
+    public void testIdleRefsAreEvictedButNotTheDefaultRef() throws Exception {
+        String master = "refs/heads/master";
+        String a = "refs/heads/a";
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", new CacheBudget(), 10, 1)) {
+            ks.addRef(a);
+            ks.getKey("key", master).orTimeout(5, TimeUnit.SECONDS).join();
+            ks.getKey("key", a).orTimeout(5, TimeUnit.SECONDS).join();
+            Thread.sleep(100);
+            ks.getKey("key", master).orTimeout(5, TimeUnit.SECONDS).join();
+            ks.getKey("key", a).orTimeout(5, TimeUnit.SECONDS).join();
+            verify(source, times(1)).getTip(eq(master));
+            verify(source, times(2)).getTip(eq(a));
+        }
+    }
+
+    @Test
+    public void testRefWithQueuedWritesIsNotEvicted() throws Exception {
+        String a = "refs/heads/a";
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        doAnswer(i -> {
+            running.countDown();
+            latch.await();
+            return null;
+        }).when(source).deleteKey(eq("key"), eq(a), any());
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", new CacheBudget(), 10, 1)) {
+            ks.addRef(a);
+            CompletableFuture<Either<String, FailedToLock>> delete = ks.delete("key", a, new CommitMetaData("user", "mail", "msg", "Test",
+                    JITSTATIC_NOWHERE));
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            ks.getKey("key", a).orTimeout(5, TimeUnit.SECONDS).join();
+            verify(source, times(1)).getTip(eq(a));
+            latch.countDown();
+            delete.orTimeout(5, TimeUnit.SECONDS).join();
+        }
+    }
+
     private byte[] getByteArray(int c) {
         return ("{\"data\":\"value" + c + "\"}").getBytes(UTF_8);
     }
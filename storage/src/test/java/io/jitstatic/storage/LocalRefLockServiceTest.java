@@ -23,7 +23,11 @@ package io.jitstatic.storage;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.jupiter.api.Test;
@@ -54,6 +58,105 @@ class LocalRefLockServiceTest {
         }
     }
 
+    @Test
+    void testWritesOnDifferentRefsAreNotBlocked() throws Exception {
+        try (LocalRefLockService service = new LocalRefLockService(2);) {
+            String master = "refs/heads/master";
+            String other = findRefInOtherLane(service, master);
+            RefHolder masterHolder = mock(RefHolder.class);
+            RefHolder otherHolder = mock(RefHolder.class);
+            CountDownLatch masterLatch = new CountDownLatch(1);
+            Mockito.when(masterHolder.internalAddKey(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer((a) -> {
+                masterLatch.await();
+                return "master";
+            });
+            Mockito.when(otherHolder.internalAddKey(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("other");
+            LockService masterLock = service.getLockService(master);
+            LockService otherLock = service.getLockService(other);
+            masterLock.register(masterHolder);
+            otherLock.register(otherHolder);
+            CompletableFuture<Either<String, FailedToLock>> masterEvent = masterLock.fireEvent("key", ActionData.addKey("key", null, null, null));
+            CompletableFuture<Either<String, FailedToLock>> otherEvent = otherLock.fireEvent("key", ActionData.addKey("key", null, null, null));
+            assertEquals("other", otherEvent.get(5, TimeUnit.SECONDS).getLeft());
+            assertFalse(masterEvent.isDone());
+            masterLatch.countDown();
+            assertEquals("master", masterEvent.get(5, TimeUnit.SECONDS).getLeft());
+        }
+    }
+
+    @Test
+    void testSameRefUsesSameLane() throws Exception {
+        try (LocalRefLockService service = new LocalRefLockService(4);) {
+            assertSame(service.getRepoWriter("refs/heads/master"), service.getRepoWriter("refs/heads/master"));
+        }
+    }
+
+    @Test
+    void testExecutorsAreBuiltByFactory() throws Exception {
+        final Map<String, Integer> created = new HashMap<>();
+        final ExecutorFactory factory = (name, threads) -> {
+            created.put(name, threads);
+            return ExecutorFactory.DEFAULT.create(name, threads);
+        };
+        try (LocalRefLockService service = new LocalRefLockService(2, 0, 1, 3, factory);) {
+            assertEquals(Map.of("RepoWriter", 1, "KeyLoader", 3, "RepoWriter-lane0", 1, "RepoWriter-lane1", 1), created);
+            assertEquals("KeyLoader-1", service.getKeyLoader().submit(() -> Thread.currentThread().getName()).get());
+        }
+    }
+
+    @Test
+    void testNoKeyLoaderThreads() {
+        assertThrows(IllegalArgumentException.class, () -> new LocalRefLockService(1, 0, 1, 0, ExecutorFactory.DEFAULT));
+    }
+
+    @Test
+    void testNoLanes() {
+        assertThrows(IllegalArgumentException.class, () -> new LocalRefLockService(0));
+    }
+
+    private static String findRefInOtherLane(final LocalRefLockService service, final String ref) {
+        int i = 0;
+        String other;
+        do {
+            other = "refs/heads/branch" + i++;
+        } while (service.getRepoWriter(other) == service.getRepoWriter(ref));
+        return other;
+    }
+
+    @Test
+    void testLockIsHandedOverAfterQueuedWrites() throws Exception {
+        try (LocalRefLockService service = new LocalRefLockService();) {
+            String ref = "refs/heads/master";
+            RefHolder evicted = mock(RefHolder.class);
+            RefHolder next = mock(RefHolder.class);
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch latch = new CountDownLatch(1);
+            Mockito.when(evicted.isClosed()).thenReturn(true);
+            Mockito.when(evicted.internalAddKey(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer((a) -> {
+                running.countDown();
+                latch.await();
+                return "evicted";
+            });
+            Mockito.when(next.internalAddKey(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("next");
+            LockService lockService = service.getLockService(ref);
+            lockService.register(evicted);
+            CompletableFuture<Either<String, FailedToLock>> queued = lockService.fireEvent("key", ActionData.addKey("key", null, null, null));
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            assertTrue(lockService.isBusy());
+            service.removeLock(ref);
+            assertSame(lockService, service.getLockService(ref));
+            lockService.register(next);
+            CompletableFuture<Either<String, FailedToLock>> handedOver = lockService.fireEvent("key", ActionData.addKey("key", null, null, null));
+            latch.countDown();
+            assertEquals("evicted", queued.get(5, TimeUnit.SECONDS).getLeft());
+            assertEquals("next", handedOver.get(5, TimeUnit.SECONDS).getLeft());
+            Mockito.verify(next).reload();
+            assertFalse(lockService.isBusy());
+            service.removeLock(ref);
+            assertNotSame(lockService, service.getLockService(ref));
+        }
+    }
+
     @Test
     void testReturnLockService() throws Exception {
         try (LocalRefLockService service = new LocalRefLockService();) {
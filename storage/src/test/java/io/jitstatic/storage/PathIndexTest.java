@@ -0,0 +1,80 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PathIndexTest {
+
+    private static final List<String> PATHS = List.of("a", "a.txt", "dir/b", "dir/sub/c", "dir/sub/d", "other/e");
+
+    @Test
+    void testMightContain() {
+        PathIndex index = new PathIndex(PATHS);
+        assertTrue(index.contains("a"));
+        assertTrue(index.contains("dir/sub/c"));
+        assertFalse(index.contains("dir"));
+        assertFalse(index.contains("dir/sub/x"));
+        assertFalse(index.contains("missing"));
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    void testList() {
+        PathIndex index = new PathIndex(PATHS);
+        assertEquals(List.of("a", "a.txt"), index.list("/", false));
+        assertEquals(List.of("a", "a.txt", "dir/b", "dir/sub/c", "dir/sub/d", "other/e"), index.list("/", true));
+        assertEquals(List.of("dir/b"), index.list("dir/", false));
+        assertEquals(List.of("dir/b", "dir/sub/c", "dir/sub/d"), index.list("dir/", true));
+        assertEquals(List.of(), index.list("missing/", true));
+    }
+
+    @Test
+    void testWithAddedAndRemoved() {
+        PathIndex index = new PathIndex(PATHS);
+        PathIndex next = index.with(List.of("dir/new", "a"), List.of("dir/b", "missing", "other/e"));
+        assertEquals(List.of("dir/new"), next.list("dir/", false));
+        assertFalse(next.contains("dir/b"));
+        assertTrue(next.contains("dir/new"));
+        assertEquals(List.of("a", "a.txt", "dir/new", "dir/sub/c", "dir/sub/d"), next.list("/", true));
+        assertEquals(5, next.size());
+        assertEquals(List.of("a", "a.txt", "dir/b", "dir/sub/c", "dir/sub/d", "other/e"), index.list("/", true));
+        assertTrue(index.contains("dir/b"));
+        assertFalse(index.contains("dir/new"));
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    void testRemoveLastFileInDirectory() {
+        PathIndex index = new PathIndex(PATHS).with(List.of(), List.of("other/e"));
+        assertEquals(List.of(), index.list("other/", true));
+        assertEquals(5, index.size());
+        index = index.with(List.of("other/f"), List.of());
+        assertEquals(List.of("other/f"), index.list("other/", true));
+        assertEquals(6, index.size());
+    }
+}
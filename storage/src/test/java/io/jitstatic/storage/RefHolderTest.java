@@ -25,6 +25,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -32,22 +33,31 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import com.spencerwi.either.Either;
@@ -59,6 +69,7 @@ import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.LoadException;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.Source;
 import io.jitstatic.source.SourceInfo;
 import io.jitstatic.utils.Functions;
@@ -75,8 +86,10 @@ public class RefHolderTest {
     private RefLockService clusterService = new LocalRefLockService();
 
     @BeforeEach
-    public void setup() {
+    public void setup() throws RefNotFoundException, IOException {
         source = mock(Source.class);
+        // Most tests don't model the tree, so they run without a key filter
+        when(source.getList(eq("/"), anyString(), any(), eq(true))).thenThrow(new IOException("No tree"));
     }
 
     // TODO Fix this with a better name and check that the logic holds
@@ -110,6 +123,28 @@ public class RefHolderTest {
         }
     }
 
+    @Test
+    public void testWrittenKeyIsLastModifiedAtItsCommit() throws IOException, RefNotFoundException {
+        StoreInfo storeInfo = mock(StoreInfo.class);
+        CommitMetaData cmd = mock(CommitMetaData.class);
+        @SuppressWarnings("unchecked")
+        ThrowingSupplier<ObjectLoader, IOException> ts = mock(Functions.ThrowingSupplier.class);
+        when(storeInfo.getMetaData()).thenReturn(mock(MetaData.class));
+        when(storeInfo.getVersion()).thenReturn("1");
+        when(storeInfo.getMetaDataVersion()).thenReturn("1");
+        when(source.getTip(eq(REF))).thenReturn("c1", "c2");
+        when(source.getLastModified(eq("key"), eq(REF), eq("c2"))).thenReturn(2_000L);
+        when(source.modifyKey(eq("key"), eq(REF), any(), eq(cmd))).thenReturn(Pair.of("2", ts));
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            ref.putKey("key", Optional.of(storeInfo));
+            ref.modifyKey("key", toProvider(getData().getBytes(UTF_8)), "1", cmd).orTimeout(5, TimeUnit.SECONDS).join();
+            verify(source, never()).getLastModified(eq("key"), eq(REF), any());
+            assertEquals(2_000L, ref.readKey("key").get().getLastModified());
+            verify(source, times(1)).getLastModified(eq("key"), eq(REF), any());
+        }
+    }
+
     @Test
     public void testRefreshMetaData() throws IOException {
         StoreInfo storeInfo = mock(StoreInfo.class);
@@ -146,6 +181,366 @@ public class RefHolderTest {
         }
     }
 
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
+        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
+        when(sourceInfo.getMetaDataVersion()).thenReturn("2");
+        when(sourceInfo.getSourceVersion()).thenReturn("2");
+        when(source.getSourceInfo(eq("key"), eq(REF))).then(i -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return sourceInfo;
+        });
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            CompletableFuture<Optional<StoreInfo>> first = ref.getKey("key");
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Optional<StoreInfo>> second = ref.getKey("key");
+            assertFalse(second.isDone());
+            release.countDown();
+            assertEquals("2", first.orTimeout(5, TimeUnit.SECONDS).join().get().getVersion());
+            assertEquals("2", second.orTimeout(5, TimeUnit.SECONDS).join().get().getVersion());
+            CompletableFuture<Optional<StoreInfo>> hit = ref.getKey("key");
+            assertTrue(hit.isDone());
+            assertEquals("2", hit.join().get().getVersion());
+            verify(source, times(1)).getSourceInfo(eq("key"), eq(REF));
+        }
+    }
+
+    @Test
+    public void testWriteDuringLoadIsNotOverwritten() throws Exception {
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
+        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
+        when(sourceInfo.getMetaDataVersion()).thenReturn("2");
+        when(sourceInfo.getSourceVersion()).thenReturn("2");
+        when(source.getSourceInfo(eq("key"), eq(REF))).then(i -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return sourceInfo;
+        });
+        StoreInfo written = mock(StoreInfo.class);
+        when(written.getVersion()).thenReturn("3");
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            CompletableFuture<Optional<StoreInfo>> load = ref.getKey("key");
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            ref.putKey("key", Optional.of(written));
+            release.countDown();
+            assertEquals("2", load.orTimeout(5, TimeUnit.SECONDS).join().get().getVersion());
+            assertEquals("3", ref.readKey("key").get().getVersion());
+        }
+    }
+
+    @Test
+    public void testReloadOnlyChangedPaths() throws Exception {
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            for (String key : List.of("a", "b", "c", "dir/d", "dir/")) {
+                StoreInfo storeInfo = mock(StoreInfo.class);
+                when(storeInfo.getVersion()).thenReturn("1");
+                ref.putKey(key, Optional.of(storeInfo));
+            }
+            ref.reload(Map.of("a", ChangeType.MODIFY, "c.metadata", ChangeType.MODIFY, "dir/.metadata", ChangeType.ADD));
+            assertTrue(ref.readKey("b").isPresent());
+            assertTrue(ref.readKey("a").isEmpty());
+            assertTrue(ref.readKey("c").isEmpty());
+            assertTrue(ref.readKey("dir/d").isEmpty());
+            assertTrue(ref.readKey("dir/").isEmpty());
+            verify(source, never()).getSourceInfo(eq("b"), any());
+            verify(source, Mockito.atLeastOnce()).getSourceInfo(eq("a"), eq(REF));
+            verify(source, Mockito.atLeastOnce()).getSourceInfo(eq("dir/d"), eq(REF));
+        }
+    }
+
+    @Test
+    public void testKeyFilterAnswersDefiniteMisses() throws Exception {
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
+        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
+        when(sourceInfo.getMetaDataVersion()).thenReturn("2");
+        when(sourceInfo.getSourceVersion()).thenReturn("2");
+        Mockito.reset(source);
+        CountDownLatch built = new CountDownLatch(1);
+        when(source.getList(eq("/"), eq(REF), any(), eq(true))).then(i -> {
+            built.countDown();
+            return List.of("key", "dir/other");
+        });
+        when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(sourceInfo);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            assertTrue(ref.readKey("missing").isEmpty());
+            assertTrue(built.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertTrue(ref.readKey("absent").isEmpty());
+            assertTrue(ref.readKey("dir/absent").isEmpty());
+            assertTrue(ref.readKey("key").isPresent());
+            verify(source, times(1)).getSourceInfo(eq("missing"), eq(REF));
+            verify(source, never()).getSourceInfo(eq("absent"), any());
+            verify(source, never()).getSourceInfo(eq("dir/absent"), any());
+            verify(source, times(1)).getList(eq("/"), eq(REF), any(), eq(true));
+        }
+    }
+
+    @Test
+    public void testKeyFilterIsPatchedByChangedPaths() throws Exception {
+        Mockito.reset(source);
+        CountDownLatch built = new CountDownLatch(1);
+        when(source.getList(eq("/"), eq(REF), any(), eq(true))).then(i -> {
+            built.countDown();
+            return List.of("key");
+        });
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            assertTrue(ref.readKey("missing").isEmpty());
+            assertTrue(built.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertTrue(ref.readKey("pushed").isEmpty());
+            verify(source, never()).getSourceInfo(eq("pushed"), any());
+            ref.reload(Map.of("pushed", ChangeType.ADD));
+            assertTrue(ref.readKey("pushed").isEmpty());
+            verify(source, times(1)).getSourceInfo(eq("pushed"), eq(REF));
+            ref.reload(Map.of("key", ChangeType.DELETE));
+            assertTrue(ref.readKey("key").isEmpty());
+            verify(source, never()).getSourceInfo(eq("key"), any());
+        }
+    }
+
+    @Test
+    public void testPinnedSnapshotReadsFromItsCommit() throws Exception {
+        SourceInfo before = sourceInfo("1");
+        SourceInfo after = sourceInfo("2");
+        when(source.getTip(eq(REF))).thenReturn("c1", "c2");
+        when(source.getSourceInfo(eq("key"), eq(REF), eq("c1"))).thenReturn(before);
+        when(source.getSourceInfo(eq("key"), eq(REF), eq("c2"))).thenReturn(after);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            RefSnapshot pinned = ref.pin();
+            ref.reload(Map.of("key", ChangeType.MODIFY));
+            assertFalse(pinned.isDisposed());
+            assertEquals("1", ref.getKey(pinned, "key").orTimeout(5, TimeUnit.SECONDS).join().get().getVersion());
+            assertEquals("2", ref.readKey("key").get().getVersion());
+            pinned.release();
+            assertTrue(pinned.isDisposed());
+            verify(source, never()).getSourceInfo(eq("key"), eq(REF));
+        }
+    }
+
+    @Test
+    public void testPinnedSnapshotKeepsItsCommitOverWrites() throws Exception {
+        SourceInfo before = sourceInfo("1");
+        when(source.getTip(eq(REF))).thenReturn("c1", "c2");
+        when(source.getSourceInfo(eq("key"), eq(REF), eq("c1"))).thenReturn(before);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            RefSnapshot pinned = ref.pin();
+            ref.deleteKey("key", mock(CommitMetaData.class)).orTimeout(5, TimeUnit.SECONDS).join();
+            assertEquals("c1", pinned.getCommitId());
+            assertFalse(pinned.isDisposed());
+            assertEquals("1", ref.getKey(pinned, "key").orTimeout(5, TimeUnit.SECONDS).join().get().getVersion());
+            assertTrue(ref.readKey("key").isEmpty());
+            pinned.release();
+            assertTrue(pinned.isDisposed());
+            verify(source, never()).getSourceInfo(eq("key"), eq(REF), eq("c2"));
+        }
+    }
+
+    @Test
+    public void testSnapshotsShareUntouchedEntries() throws Exception {
+        SourceInfo key = sourceInfo("1");
+        SourceInfo other = sourceInfo("2");
+        SourceInfo late = sourceInfo("3");
+        when(source.getTip(eq(REF))).thenReturn("c1", "c2");
+        when(source.getSourceInfo(eq("key"), eq(REF), eq("c1"))).thenReturn(key);
+        when(source.getSourceInfo(eq("other"), eq(REF), eq("c1"))).thenReturn(other);
+        when(source.getSourceInfo(eq("late"), eq(REF), eq("c2"))).thenReturn(late);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            assertEquals("1", ref.readKey("key").get().getVersion());
+            assertEquals("2", ref.readKey("other").get().getVersion());
+            RefSnapshot pinned = ref.pin();
+            ref.deleteKey("other", mock(CommitMetaData.class)).orTimeout(5, TimeUnit.SECONDS).join();
+            assertEquals("1", ref.readKey("key").get().getVersion());
+            assertEquals("3", ref.readKey("late").get().getVersion());
+            assertEquals("3", ref.getKey(pinned, "late").orTimeout(5, TimeUnit.SECONDS).join().get().getVersion());
+            assertEquals("2", ref.getKey(pinned, "other").orTimeout(5, TimeUnit.SECONDS).join().get().getVersion());
+            assertTrue(ref.readKey("other").isEmpty());
+            pinned.release();
+            verify(source, times(1)).getSourceInfo(eq("key"), eq(REF), eq("c1"));
+            verify(source, times(2)).getSourceInfo(eq("other"), eq(REF), eq("c1"));
+            verify(source, times(1)).getSourceInfo(eq("late"), eq(REF), eq("c2"));
+        }
+    }
+
+    @Test
+    public void testReloadKeepsUntouchedKeysAndRetiresOldSnapshot() throws Exception {
+        SourceInfo sourceInfo = sourceInfo("1");
+        when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(sourceInfo);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            assertEquals("1", ref.readKey("key").get().getVersion());
+            RefSnapshot old = ref.pin();
+            old.release();
+            ref.reload(Map.of("other", ChangeType.MODIFY));
+            assertTrue(old.isDisposed());
+            assertEquals("1", ref.readKey("key").get().getVersion());
+            verify(source, times(1)).getSourceInfo(eq("key"), eq(REF));
+        }
+    }
+
+    @Test
+    public void testListKeysFromPathIndex() throws Exception {
+        Mockito.reset(source);
+        CountDownLatch built = new CountDownLatch(1);
+        when(source.getList(eq("/"), eq(REF), any(), eq(true))).then(i -> {
+            built.countDown();
+            return List.of("a", "dir/b", "dir/sub/c");
+        });
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            assertEquals(null, ref.listKeys("dir/", false));
+            assertTrue(built.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(List.of("dir/b", "dir/sub/c"), ref.listKeys("dir/", true));
+            RefSnapshot pinned = ref.pin();
+            ref.reload(Map.of("dir/pushed", ChangeType.ADD, "dir/pushed.metadata", ChangeType.ADD, ".users/git/user", ChangeType.ADD));
+            assertEquals(List.of("dir/b", "dir/pushed"), ref.listKeys("dir/", false));
+            ref.deleteKey("dir/b", mock(CommitMetaData.class)).orTimeout(5, TimeUnit.SECONDS).join();
+            assertEquals(List.of("a", "dir/pushed", "dir/sub/c"), ref.listKeys("/", true));
+            ref.reload(Map.of("a", ChangeType.DELETE, "dir/sub/c", ChangeType.MODIFY));
+            assertEquals(List.of("dir/pushed", "dir/sub/c"), ref.listKeys("/", true));
+            assertEquals(List.of("a", "dir/b", "dir/sub/c"), ref.listKeys(pinned, "/", true));
+            pinned.release();
+            verify(source, times(1)).getList(eq("/"), eq(REF), any(), eq(true));
+        }
+    }
+
+    @Test
+    public void testHeaviestEntriesAreEvictedWhenOverBudget() {
+        CacheBudget budget = new CacheBudget(1_000_000, 3 * CacheBudget.ENTRY_OVERHEAD + 1000, Map.of(), 100, 1_000_000);
+        MetaData metaData = mock(MetaData.class);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, budget);) {
+            ref.start();
+            ref.putKey("small1", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "1", "1")));
+            ref.putKey("small2", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "2", "1")));
+            ref.putKey("large", Optional.of(new StoreInfo(toProvider(new byte[990]), metaData, "3", "1")));
+            assertEquals(2 * CacheBudget.ENTRY_OVERHEAD + 20, ref.getRefBytes());
+            assertTrue(ref.readKey("large").isEmpty());
+            assertEquals(ref.getRefBytes(), budget.getUsedBytes());
+            assertTrue(ref.readKey("small1").isPresent());
+            assertTrue(ref.readKey("small2").isPresent());
+        }
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testReadEntriesAreKeptOverHeavierOnes() {
+        CacheBudget budget = new CacheBudget(1_000_000, 3 * CacheBudget.ENTRY_OVERHEAD + 1020, Map.of(), 100, 1_000_000);
+        MetaData metaData = mock(MetaData.class);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, budget);) {
+            ref.start();
+            ref.putKey("large", Optional.of(new StoreInfo(toProvider(new byte[1000]), metaData, "1", "1")));
+            assertTrue(ref.readKey("large").isPresent());
+            ref.putKey("small1", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "2", "1")));
+            ref.putKey("small2", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "3", "1")));
+            ref.putKey("small3", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "4", "1")));
+            assertEquals(3 * CacheBudget.ENTRY_OVERHEAD + 1020, ref.getRefBytes());
+            assertNotNull(ref.peekKey("large"));
+            assertNull(ref.peekKey("small1"));
+            ref.putKey("small4", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "5", "1")));
+            ref.putKey("small5", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "6", "1")));
+            assertEquals(3 * CacheBudget.ENTRY_OVERHEAD + 30, ref.getRefBytes());
+            assertNull(ref.peekKey("large"));
+        }
+    }
+
+    @Test
+    public void testEntryLimitEvictsUnreadEntries() {
+        CacheBudget budget = new CacheBudget(1_000_000, Long.MAX_VALUE, Map.of(), 2, 1_000_000);
+        MetaData metaData = mock(MetaData.class);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, budget);) {
+            ref.start();
+            ref.putKey("first", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "1", "1")));
+            ref.putKey("second", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "2", "1")));
+            assertNotNull(ref.peekKey("first"));
+            ref.putKey("third", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "3", "1")));
+            assertNotNull(ref.peekKey("first"));
+            assertNull(ref.peekKey("second"));
+            assertNotNull(ref.peekKey("third"));
+        }
+    }
+
+    @Test
+    public void testBudgetIsSharedBetweenRefs() {
+        CacheBudget budget = new CacheBudget(3 * CacheBudget.ENTRY_OVERHEAD + 100, Long.MAX_VALUE, Map.of(), 100, 1_000_000);
+        MetaData metaData = mock(MetaData.class);
+        try (RefHolder master = new RefHolder(REF, source, hashService, clusterService, budget);
+                RefHolder other = new RefHolder("refs/heads/other", source, hashService, clusterService, budget);) {
+            master.start();
+            other.start();
+            master.putKey("a", Optional.of(new StoreInfo(toProvider(new byte[50]), metaData, "1", "1")));
+            master.putKey("b", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "2", "1")));
+            other.putKey("c", Optional.of(new StoreInfo(toProvider(new byte[60]), metaData, "3", "1")));
+            assertTrue(budget.getUsedBytes() > budget.getMaxBytes());
+            assertEquals(CacheBudget.ENTRY_OVERHEAD + 60, other.getRefBytes());
+            KeyStorage.sweep(budget, List.of(other, master));
+            assertTrue(budget.getUsedBytes() <= budget.getMaxBytes());
+            assertEquals(CacheBudget.ENTRY_OVERHEAD + 60, other.getRefBytes());
+            assertEquals(CacheBudget.ENTRY_OVERHEAD + 10, master.getRefBytes());
+        }
+    }
+
+    @Test
+    public void testExceededBudgetIsReported() {
+        CacheBudget budget = new CacheBudget(CacheBudget.ENTRY_OVERHEAD + 100, Long.MAX_VALUE, Map.of(), 100, 1_000_000);
+        AtomicInteger exceeded = new AtomicInteger();
+        budget.onExceeded(exceeded::incrementAndGet);
+        MetaData metaData = mock(MetaData.class);
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, budget);) {
+            ref.start();
+            ref.putKey("a", Optional.of(new StoreInfo(toProvider(new byte[50]), metaData, "1", "1")));
+            assertEquals(0, exceeded.get());
+            ref.putKey("b", Optional.of(new StoreInfo(toProvider(new byte[10]), metaData, "2", "1")));
+            assertEquals(1, exceeded.get());
+            assertEquals(CacheBudget.ENTRY_OVERHEAD + 10, ref.getRefBytes());
+        }
+    }
+
+    @Test
+    public void testBlobsAreSharedBetweenRefs() throws Exception {
+        CacheBudget budget = new CacheBudget();
+        BlobCache blobs = new BlobCache();
+        String other = "refs/heads/other";
+        SourceInfo onMaster = sourceInfo("1");
+        SourceInfo onOther = sourceInfo("1");
+        when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(onMaster);
+        when(source.getSourceInfo(eq("key"), eq(other))).thenReturn(onOther);
+        try (RefHolder master = new RefHolder(REF, source, hashService, clusterService, budget, blobs);
+                RefHolder branch = new RefHolder(other, source, hashService, clusterService, budget, blobs);) {
+            master.start();
+            branch.start();
+            StoreInfo first = master.readKey("key").get();
+            StoreInfo second = branch.readKey("key").get();
+            assertSame(first.getStreamProvider(), second.getStreamProvider());
+            assertSame(first.getMetaData(), second.getMetaData());
+            verify(onOther, never()).getStreamProvider();
+            verify(onOther, never()).readMetaData();
+            long size = first.getStreamProvider().getSize();
+            assertEquals(2 * (CacheBudget.ENTRY_OVERHEAD + size), master.getRefBytes() + branch.getRefBytes());
+            assertEquals(2 * CacheBudget.ENTRY_OVERHEAD + size, budget.getUsedBytes());
+        }
+        assertEquals(0, budget.getUsedBytes());
+    }
+
     @Test
     public void testLoadAndStoreRefNotFound() throws IOException, RefNotFoundException {
         when(source.getSourceInfo(eq("key"), eq(REF))).thenThrow(new RefNotFoundException(REF));
@@ -276,6 +671,65 @@ public class RefHolderTest {
         }
     }
 
+    @Test
+    public void testDeleteUserForgetsVerifiedPassword() throws Exception {
+        UserData userData = hashService.constructUserData(Set.of(new Role("role")), "pass");
+        when(source.getUser(eq(".users/user"), eq(REF))).thenReturn(Pair.of("1", userData));
+        try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService);) {
+            ref.start();
+            assertTrue(hashService.hasSamePassword(ref.getUser("user").getRight(), "pass"));
+            assertTrue(hashService.isVerified(userData, "pass"));
+            ref.deleteUser("user", "asUser").orTimeout(5, TimeUnit.SECONDS).join();
+            assertFalse(hashService.isVerified(userData, "pass"));
+        }
+    }
+
+    @Test
+    public void testGroupCommitModifyKeys() throws Exception {
+        @SuppressWarnings("unchecked")
+        ThrowingSupplier<ObjectLoader, IOException> ts = mock(Functions.ThrowingSupplier.class);
+        when(source.modifyKeys(any(), eq(REF), any())).thenReturn(List.of(Pair.of("2", ts), Pair.of("3", ts)));
+        try (LocalRefLockService groupCommitService = new LocalRefLockService(1, 200, 3);
+                RefHolder ref = new RefHolder(REF, source, hashService, groupCommitService);) {
+            ref.start();
+            for (String key : List.of("a", "b", "c")) {
+                StoreInfo storeInfo = mock(StoreInfo.class);
+                when(storeInfo.getMetaData()).thenReturn(mock(MetaData.class));
+                when(storeInfo.getVersion()).thenReturn("1");
+                when(storeInfo.getMetaDataVersion()).thenReturn("1");
+                ref.putKey(key, Optional.of(storeInfo));
+            }
+            byte[] data = getData().getBytes(UTF_8);
+            CompletableFuture<Either<String, FailedToLock>> a = ref.modifyKey("a", toProvider(data), "1", new CommitMetaData("u1", "m1", "msg1", "p1", null));
+            CompletableFuture<Either<String, FailedToLock>> b = ref.modifyKey("b", toProvider(data), "0", new CommitMetaData("u2", "m2", "msg2", "p2", null));
+            CompletableFuture<Either<String, FailedToLock>> c = ref.modifyKey("c", toProvider(data), "1", new CommitMetaData("u3", "m3", "msg3", "p3", null));
+            assertEquals("2", a.orTimeout(5, TimeUnit.SECONDS).join().getLeft());
+            assertEquals("3", c.orTimeout(5, TimeUnit.SECONDS).join().getLeft());
+            CompletionException ce = assertThrows(CompletionException.class, () -> b.orTimeout(5, TimeUnit.SECONDS).join());
+            assertEquals(VersionIsNotSame.class, ce.getCause().getCause().getClass());
+            assertEquals("2", ref.readKey("a").get().getVersion());
+            assertEquals("3", ref.readKey("c").get().getVersion());
+            @SuppressWarnings("unchecked")
+            ArgumentCaptor<List<Pair<String, ObjectStreamProvider>>> keys = ArgumentCaptor.forClass(List.class);
+            ArgumentCaptor<CommitMetaData> commitMetaData = ArgumentCaptor.forClass(CommitMetaData.class);
+            verify(source, times(1)).modifyKeys(keys.capture(), eq(REF), commitMetaData.capture());
+            verify(source, never()).modifyKey(any(), any(), any(), any());
+            assertEquals(List.of("a", "c"), keys.getValue().stream().map(Pair::getLeft).collect(Collectors.toList()));
+            assertEquals("u1, u3", commitMetaData.getValue().getUserInfo());
+            assertEquals("msg1\nmsg3", commitMetaData.getValue().getMessage());
+        }
+    }
+
+    private SourceInfo sourceInfo(String version) throws IOException {
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
+        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.getMetadataInputStream()).then(i -> asStream(getMetaData()));
+        when(sourceInfo.getMetaDataVersion()).thenReturn(version);
+        when(sourceInfo.getSourceVersion()).thenReturn(version);
+        return sourceInfo;
+    }
+
     private String getMetaDataHidden() {
         int i = 0;
         return "{\"users\":[{\"password\":\"" + i + "234\",\"user\":\"user1\"}],\"hidden\": true}";
@@ -26,12 +26,15 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
 import io.jitstatic.storage.Tree.Node;
 import io.jitstatic.utils.Pair;
+import io.jitstatic.utils.PathCodec;
 
 public class TreeTest {
     private List<Pair<String, Boolean>> data = List.of(
@@ -468,4 +471,25 @@ public class TreeTest {
         assertEquals(n2, n1);
         assertEquals(n1.hashCode(), n2.hashCode());
     }
+
+    @Test
+    public void testHasDotElementMatchesDotFinder() {
+        for (String key : List.of("/", "", ".users/git/blah", "users/.git/blah", "users/git/.blah", "users/git/blah", "users/git/.blah/",
+                "users//.git", "/.users", "us.ers/g.it/bl.ah", "users/git.")) {
+            assertEquals(Tree.of(List.of(Pair.of(key, false))).accept(Tree.DOT_FINDER), PathCodec.hasDotElement(key), key);
+        }
+    }
+
+    @Test
+    public void testManyPaths() {
+        List<Pair<String, Boolean>> keys = new ArrayList<>();
+        for (int i = 9_999; i >= 0; i--) {
+            keys.add(Pair.of(String.format("dir%d/sub%d/file%05d", i % 10, i % 7, i), false));
+        }
+        List<Pair<String, Boolean>> actual = Tree.of(keys).accept(Tree.EXTRACTOR);
+        assertEquals(10_000, actual.size());
+        List<Pair<String, Boolean>> sorted = new ArrayList<>(actual);
+        sorted.sort(Comparator.comparing(Pair::getLeft));
+        assertEquals(sorted, actual);
+    }
 }
@@ -26,6 +26,10 @@ public interface Functions {
         S get() throws E;
     }
 
+    interface ThrowingConsumer<T, E extends Exception> {
+        void accept(T t) throws E;
+    }
+
     interface DoubleThrowingSupplier<S, E extends Exception, F extends Exception> {
         S get() throws E, F;
     }
@@ -20,18 +20,16 @@ package io.jitstatic.utils;
  * #L%
  */
 
-import java.util.Arrays;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 public class Path {
 
-    private final String[] pathElements;
+    private final String path;
     private final boolean isDirectory;
 
     private Path(final String path) {
-        this.pathElements = Objects.requireNonNull(path).split("/");
-        this.isDirectory = path.length() == 0 || (path.charAt(path.length() - 1) == '/');
+        this.path = Objects.requireNonNull(path);
+        this.isDirectory = PathCodec.isDirectory(path);
     }
 
     public static Path of(final String path) {
@@ -43,11 +41,11 @@ public class Path {
     }
 
     public String getLastElement() {
-        return isDirectory ? "" : pathElements[pathElements.length - 1];
+        return isDirectory ? "" : path.substring(PathCodec.lastElementStart(path));
     }
 
     public String getParentElements() {
-        return Arrays.stream(pathElements).limit(pathElements.length - 1L).map(s -> s + "/").collect(Collectors.joining(""));
+        return PathCodec.parentElements(path);
     }
 
 }
@@ -0,0 +1,148 @@
+package io.jitstatic.utils;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/*
+ * Key path operations on strings and on UTF-8 byte slices as git hands them out. '/' and '.' are single bytes in UTF-8 and never part of a
+ * multi byte sequence, so the byte and char variants agree. Nothing here allocates unless a new string has to be returned.
+ */
+public final class PathCodec {
+
+    private static final byte SLASH = '/';
+    private static final byte DOT = '.';
+
+    private PathCodec() {
+    }
+
+    /*
+     * Collapses repeated slashes and drops a leading one, unless the path is the root. Clean paths are returned as they are.
+     */
+    public static String normalize(final String path) {
+        final int length = path.length();
+        boolean clean = length < 2 || path.charAt(0) != SLASH;
+        for (int i = 1; clean && i < length; i++) {
+            clean = path.charAt(i) != SLASH || path.charAt(i - 1) != SLASH;
+        }
+        if (clean) {
+            return path;
+        }
+        final char[] chars = path.toCharArray();
+        int end = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = chars[i];
+            if (c != SLASH || end == 0 || chars[end - 1] != SLASH) {
+                chars[end++] = c;
+            }
+        }
+        final int start = end > 1 && chars[0] == SLASH ? 1 : 0;
+        return new String(chars, start, end - start);
+    }
+
+    /*
+     * Same as normalize on the slice between from and to, in place. Returns the new end of the slice, which starts at from.
+     */
+    public static int normalize(final byte[] path, final int from, final int to) {
+        int end = from;
+        for (int i = from; i < to; i++) {
+            final byte b = path[i];
+            if (b != SLASH || end == from || path[end - 1] != SLASH) {
+                path[end++] = b;
+            }
+        }
+        if (end - from > 1 && path[from] == SLASH) {
+            System.arraycopy(path, from + 1, path, from, end - from - 1);
+            end--;
+        }
+        return end;
+    }
+
+    public static boolean isDirectory(final CharSequence path) {
+        return path.length() == 0 || path.charAt(path.length() - 1) == SLASH;
+    }
+
+    /*
+     * True if any element of the path starts with a dot.
+     */
+    public static boolean hasDotElement(final CharSequence path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == DOT && (i == 0 || path.charAt(i - 1) == SLASH)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean hasDotElement(final byte[] path, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (path[i] == DOT && (i == from || path[i - 1] == SLASH)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Index where the element at or after from ends, which is the next slash or the end of the path.
+     */
+    public static int elementEnd(final CharSequence path, final int from) {
+        int i = from;
+        while (i < path.length() && path.charAt(i) != SLASH) {
+            i++;
+        }
+        return i;
+    }
+
+    /*
+     * Start of the last element. Trailing slashes are skipped, so for a directory this is where its own name starts.
+     */
+    public static int lastElementStart(final CharSequence path) {
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == SLASH) {
+            end--;
+        }
+        int i = end;
+        while (i > 0 && path.charAt(i - 1) != SLASH) {
+            i--;
+        }
+        return i;
+    }
+
+    public static String parentElements(final String path) {
+        return path.substring(0, lastElementStart(path));
+    }
+
+    /*
+     * The file with the given name in the same directory as the path, like the parent's .metadata for a key.
+     */
+    public static String sibling(final String path, final String name) {
+        final int start = lastElementStart(path);
+        return new StringBuilder(start + name.length()).append(path, 0, start).append(name).toString();
+    }
+
+    /*
+     * True if the directory slice is a proper ancestor of path, so that path continues with a slash right after it.
+     */
+    public static boolean isDirectoryOf(final byte[] directory, final int length, final byte[] path) {
+        return path.length > length && path[length] == SLASH && Arrays.equals(directory, 0, length, path, 0, length);
+    }
+}
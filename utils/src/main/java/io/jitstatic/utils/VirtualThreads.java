@@ -0,0 +1,113 @@
+package io.jitstatic.utils;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Virtual threads are looked up reflectively so the code still compiles and runs on Java 11. They are only used on JDK 21 and later.
+ */
+public final class VirtualThreads {
+
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle FACTORY;
+    private static final MethodHandle IS_VIRTUAL;
+    private static final MethodHandle PER_TASK;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        MethodHandle isVirtual = null;
+        MethodHandle perTask = null;
+        if (Runtime.version().feature() >= 21) {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                final Class<?> ofVirtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+                ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualBuilder));
+                name = lookup.findVirtual(ofVirtualBuilder, "name", MethodType.methodType(ofVirtualBuilder, String.class, long.class));
+                factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+                isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+                perTask = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            } catch (final ReflectiveOperationException e) {
+                ofVirtual = null;
+                isVirtual = null;
+                perTask = null;
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        IS_VIRTUAL = isVirtual;
+        PER_TASK = perTask;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return PER_TASK != null;
+    }
+
+    public static boolean isVirtual(final Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (final Throwable e) {
+            throw new ShouldNeverHappenException("isVirtual", e);
+        }
+    }
+
+    /*
+     * Threads are named name-0, name-1 and so on.
+     */
+    public static ThreadFactory factory(final String name) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads need JDK 21 or later, running on " + Runtime.version());
+        }
+        try {
+            return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(), name + "-", 0L));
+        } catch (final Throwable e) {
+            throw new ShouldNeverHappenException("factory " + name, e);
+        }
+    }
+
+    /*
+     * Every task gets a new virtual thread, nothing is pooled.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(final String name) {
+        final ThreadFactory factory = factory(name);
+        try {
+            return (ExecutorService) PER_TASK.invokeExact(factory);
+        } catch (final Throwable e) {
+            throw new ShouldNeverHappenException("newThreadPerTaskExecutor " + name, e);
+        }
+    }
+}
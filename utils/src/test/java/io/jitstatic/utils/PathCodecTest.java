@@ -0,0 +1,88 @@
+package io.jitstatic.utils;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class PathCodecTest {
+
+    @Test
+    public void testNormalize() {
+        String clean = "dir0/dir1/file";
+        assertSame(clean, PathCodec.normalize(clean));
+        assertEquals("/", PathCodec.normalize("/"));
+        assertEquals("/", PathCodec.normalize("///"));
+        assertEquals("dir0/dir1/file", PathCodec.normalize("//dir0///dir1//file"));
+        assertEquals("dir0/", PathCodec.normalize("/dir0//"));
+    }
+
+    @Test
+    public void testNormalizeBytesInPlace() {
+        for (String path : List.of("dir0/dir1/file", "/", "///", "//dir0///dir1//file", "/dir0//", "", "å//ä/ö")) {
+            byte[] framed = ("xx" + path + "yy").getBytes(UTF_8);
+            int to = framed.length - 2;
+            int end = PathCodec.normalize(framed, 2, to);
+            assertEquals(PathCodec.normalize(path), new String(framed, 2, end - 2, UTF_8), path);
+        }
+    }
+
+    @Test
+    public void testHasDotElement() {
+        assertTrue(PathCodec.hasDotElement(".users/git"));
+        assertTrue(PathCodec.hasDotElement("users/.git/blah"));
+        assertTrue(PathCodec.hasDotElement("users/git/.blah/"));
+        assertFalse(PathCodec.hasDotElement("us.ers/git./blah"));
+        assertFalse(PathCodec.hasDotElement("/"));
+        byte[] bytes = "x/.git".getBytes(UTF_8);
+        assertTrue(PathCodec.hasDotElement(bytes, 0, bytes.length));
+        assertTrue(PathCodec.hasDotElement(bytes, 2, bytes.length));
+        assertFalse(PathCodec.hasDotElement(bytes, 3, bytes.length));
+    }
+
+    @Test
+    public void testElements() {
+        assertEquals(3, PathCodec.elementEnd("dir/file", 0));
+        assertEquals(8, PathCodec.elementEnd("dir/file", 4));
+        assertEquals(4, PathCodec.lastElementStart("dir/file"));
+        assertEquals(4, PathCodec.lastElementStart("dir/sub/"));
+        assertEquals(0, PathCodec.lastElementStart("file"));
+        assertEquals("dir/", PathCodec.parentElements("dir/file"));
+        assertEquals("dir/.metadata", PathCodec.sibling("dir/file", ".metadata"));
+        assertEquals(".metadata", PathCodec.sibling("file", ".metadata"));
+    }
+
+    @Test
+    public void testIsDirectoryOf() {
+        byte[] key = "dir/sub/file".getBytes(UTF_8);
+        assertTrue(PathCodec.isDirectoryOf("dir".getBytes(UTF_8), 3, key));
+        assertTrue(PathCodec.isDirectoryOf("dir/sub".getBytes(UTF_8), 7, key));
+        assertFalse(PathCodec.isDirectoryOf("di".getBytes(UTF_8), 2, key));
+        assertFalse(PathCodec.isDirectoryOf("dir/sub/file".getBytes(UTF_8), 12, key));
+    }
+}
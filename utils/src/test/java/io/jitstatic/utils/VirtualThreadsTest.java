@@ -0,0 +1,85 @@
+package io.jitstatic.utils;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void testUnsupportedBeforeJdk21() {
+        assumeFalse(Runtime.version().feature() >= 21);
+        assertFalse(VirtualThreads.isSupported());
+        assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+        assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.newThreadPerTaskExecutor("test"));
+    }
+
+    @Test
+    public void testThreadPerTaskExecutor() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test");
+        try {
+            assertTrue(executor.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get());
+            assertTrue(executor.submit(() -> Thread.currentThread().getName()).get().startsWith("test-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPlatformCallerIsHandedToDelegate() throws Exception {
+        final ExecutorService delegate = Executors.newSingleThreadExecutor(r -> new Thread(r, "delegate"));
+        final VirtualThreadExecutor executor = new VirtualThreadExecutor(delegate);
+        try {
+            assertEquals("delegate", executor.submit(() -> Thread.currentThread().getName()).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(delegate.isShutdown());
+    }
+
+    @Test
+    public void testVirtualCallerRunsInline() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        final ExecutorService delegate = VirtualThreads.newThreadPerTaskExecutor("test");
+        final VirtualThreadExecutor executor = new VirtualThreadExecutor(delegate);
+        try {
+            assertTrue(delegate.submit(() -> {
+                final Thread caller = Thread.currentThread();
+                return executor.submit(() -> Thread.currentThread() == caller).get();
+            }).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}